@@ -0,0 +1,84 @@
+/**
+ * VectorThresholdKernel implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution.vector;
+
+import cp2024.solution.ThresholdKernel;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * ThresholdKernel on SIMD registers (jdk.incubator.vector). Every lane holds
+ * a word, i.e. 64 rows, so a vector of the preferred species (4 longs with
+ * AVX2, 8 with AVX-512, 2 with NEON) counts the true children of 256 to 512
+ * rows at once. Counter planes and the comparison with the threshold stay in
+ * vector operations; the tail of a block uses masked lanes.
+ * Needs --add-modules jdk.incubator.vector, both to build and to run, so it
+ * is kept out of src and ThresholdKernel.best() only loads it by name, see
+ * ThresholdKernel.VECTOR_KERNEL for the compile step. Same words as
+ * ScalarThresholdKernel.
+ */
+public final class VectorThresholdKernel implements ThresholdKernel {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    public VectorThresholdKernel() {
+        if (SPECIES.length() < 2) {
+            // A single lane is just slower scalar code.
+            throw new UnsupportedOperationException("No vector support.");
+        }
+    }
+
+    @Override
+    public void evaluate(boolean gt, int threshold, int[] children, int from, int to,
+                         long[] values, int node, int block, int words, long[] counter) {
+        int out = node * block;
+        int count = to - from;
+        int lanes = SPECIES.length();
+        // Counts go up to count, thresholds outside of 0 .. count are decided by arity.
+        if ((gt ? threshold >= count : threshold > count) || (!gt && threshold <= 0)) {
+            LongVector decided = LongVector.broadcast(SPECIES, !gt && threshold > count ? -1L : 0L);
+            for (int w = 0; w < words; w += lanes) {
+                decided.intoArray(values, out + w, SPECIES.indexInRange(w, words));
+            }
+            return;
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(count);
+        LongVector zero = LongVector.zero(SPECIES);
+        for (int w = 0; w < words; w += lanes) {
+            VectorMask<Long> lanesInRange = SPECIES.indexInRange(w, words);
+            for (int b = 0; b < bits; b++) {
+                zero.intoArray(counter, b * block + w, lanesInRange);
+            }
+            for (int i = from; i < to; i++) {
+                // Adds 1 in the rows where the child is true.
+                LongVector carry = LongVector.fromArray(SPECIES, values, children[i] * block + w, lanesInRange);
+                for (int b = 0; b < bits; b++) {
+                    LongVector plane = LongVector.fromArray(SPECIES, counter, b * block + w, lanesInRange);
+                    plane.lanewise(VectorOperators.XOR, carry)
+                            .intoArray(counter, b * block + w, lanesInRange);
+                    carry = plane.and(carry);
+                }
+            }
+            // From the most significant bit: rows whose count is already greater, and those equal so far.
+            LongVector greater = zero;
+            LongVector equal = LongVector.broadcast(SPECIES, -1L);
+            for (int b = bits - 1; b >= 0; b--) {
+                LongVector plane = LongVector.fromArray(SPECIES, counter, b * block + w, lanesInRange);
+                if ((threshold >>> b & 1) == 0) {
+                    greater = greater.or(equal.and(plane));
+                    equal = equal.and(plane.not());
+                } else {
+                    equal = equal.and(plane);
+                }
+            }
+            LongVector result = gt ? greater : greater.or(equal).not();
+            result.intoArray(values, out + w, lanesInRange);
+        }
+    }
+}
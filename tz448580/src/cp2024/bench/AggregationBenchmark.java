@@ -0,0 +1,147 @@
+package cp2024.bench;
+
+import cp2024.circuit.NodeType;
+import cp2024.solution.ChildCounter;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the cost of passing child values to an AND node: the former
+ * LinkedBlockingQueue per node against the lock-free ChildCounter.
+ * Producer threads play the children, the main thread plays the node worker.
+ * Usage: AggregationBenchmark [arity] [rounds] [producers]
+ */
+public class AggregationBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // One round of aggregation into a fresh node.
+    private interface Design {
+        void newNode(int arity);
+
+        void offer() throws InterruptedException;
+
+        void awaitValue() throws InterruptedException;
+    }
+
+    // Every child value goes through a blocking queue, taken by the node worker.
+    private static class QueueDesign implements Design {
+        private volatile BlockingQueue<Boolean> queue;
+        private int arity;
+
+        @Override
+        public void newNode(int arity) {
+            this.arity = arity;
+            this.queue = new LinkedBlockingQueue<>();
+        }
+
+        @Override
+        public void offer() throws InterruptedException {
+            queue.put(true);
+        }
+
+        @Override
+        public void awaitValue() throws InterruptedException {
+            boolean value = true;
+            for (int i = 0; i < arity; i++) {
+                value = value && queue.take();
+            }
+            if (!value) {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    // Child values are counted atomically, the deciding child wakes up the node worker.
+    private static class CounterDesign implements Design {
+        private volatile ChildCounter counter;
+        private volatile Thread nodeThread;
+
+        @Override
+        public void newNode(int arity) {
+            this.nodeThread = Thread.currentThread();
+            this.counter = new ChildCounter(NodeType.AND, 0, arity);
+        }
+
+        @Override
+        public void offer() {
+            if (counter.offer(true) != null) {
+                LockSupport.unpark(nodeThread);
+            }
+        }
+
+        @Override
+        public void awaitValue() {
+            while (!counter.isDecided()) {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private static void run(String name, Design design, int arity, int rounds, int producers)
+            throws InterruptedException, BrokenBarrierException {
+        CyclicBarrier start = new CyclicBarrier(producers + 1);
+        CyclicBarrier end = new CyclicBarrier(producers + 1);
+        AtomicLong allocated = new AtomicLong(0);
+        int share = arity / producers;
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                long before = THREADS.getCurrentThreadAllocatedBytes();
+                try {
+                    for (int round = 0; round < rounds; round++) {
+                        start.await();
+                        for (int i = 0; i < share; i++) {
+                            design.offer();
+                        }
+                        end.await();
+                    }
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    return;
+                }
+                allocated.addAndGet(THREADS.getCurrentThreadAllocatedBytes() - before);
+            });
+            threads[p].start();
+        }
+
+        long nodeAllocated = 0;
+        long elapsed = 0;
+        for (int round = 0; round < rounds; round++) {
+            design.newNode(share * producers);
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            long roundStart = System.nanoTime();
+            start.await();
+            design.awaitValue();
+            elapsed += System.nanoTime() - roundStart;
+            nodeAllocated += THREADS.getCurrentThreadAllocatedBytes() - before;
+            end.await();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long edges = (long) rounds * share * producers;
+        System.out.printf("%-8s per-edge latency: %8.1f ns  allocation: %8.1f B/edge%n",
+                name, (double) elapsed / edges, (double) (allocated.get() + nodeAllocated) / edges);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int arity = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int producers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        System.out.println("Arity: " + arity + ", rounds: " + rounds + ", producer threads: " + producers);
+        // The first pass warms up both designs.
+        for (int pass = 0; pass < 2; pass++) {
+            run("queue", new QueueDesign(), arity, rounds, producers);
+            run("counter", new CounterDesign(), arity, rounds, producers);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package cp2024.bench;
+
+import cp2024.circuit.*;
+import cp2024.solution.BitSlicedCircuit;
+import cp2024.solution.BytecodeCircuit;
+import cp2024.solution.CompiledCircuit;
+import cp2024.solution.ParallelCircuitSolver;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Compares bit-sliced evaluation of many rows with evaluating the rows one
+ * by one, each with its own leaves: with a solve() per row (on a sample of
+ * the rows) and with the fastest single-row evaluator, BytecodeCircuit,
+ * which short-circuits. Bit-sliced evaluation is timed from leaf words and
+ * from boolean rows, which includes their transposition. Reports time per row.
+ * Usage: BitSlicedBenchmark [nodes] [rows] [rounds]
+ */
+public class BitSlicedBenchmark {
+
+    private static final class RowLeaf extends LeafNode {
+        private final boolean value;
+
+        private RowLeaf(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean getValue() {
+            return value;
+        }
+    }
+
+    // The subcircuit of the node, with the given leaves.
+    private static CircuitNode rebuild(CompiledCircuit compiled, int node, CircuitNode[] leaves) {
+        if (compiled.getTypeCode(node) == CompiledCircuit.LEAF) {
+            return leaves[compiled.getLeafIndex(node)];
+        }
+        CircuitNode[] args = new CircuitNode[compiled.getChildCount(node)];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = rebuild(compiled, compiled.getChild(node, i), leaves);
+        }
+        NodeType type = compiled.getType(node);
+        return type == NodeType.GT || type == NodeType.LT
+                ? CircuitNode.mk(type, compiled.getThreshold(node), args)
+                : CircuitNode.mk(type, args);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 16 * 1024;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        CompiledCircuit compiled = CompiledCircuit.compile(new RandomCircuits(31).generate(nodes, 8));
+        BitSlicedCircuit sliced = BitSlicedCircuit.compile(compiled);
+        BytecodeCircuit bytecode = BytecodeCircuit.compile(compiled);
+
+        LeafNode[] constants = {new RowLeaf(false), new RowLeaf(true)};
+        Random random = new Random(37);
+        boolean[][] assignments = new boolean[rows][compiled.getLeafCount()];
+        LeafNode[][] rowLeaves = new LeafNode[rows][compiled.getLeafCount()];
+        for (int row = 0; row < rows; row++) {
+            for (int leaf = 0; leaf < compiled.getLeafCount(); leaf++) {
+                assignments[row][leaf] = random.nextBoolean();
+                rowLeaves[row][leaf] = constants[assignments[row][leaf] ? 1 : 0];
+            }
+        }
+        System.out.println("Circuit: " + compiled.size() + " nodes, " + compiled.getLeafCount()
+                + " leaves, " + rows + " rows");
+
+        // A fresh circuit per row, as with solve() today.
+        int sample = Math.min(rows, 256);
+        ParallelCircuitSolver solver = new ParallelCircuitSolver(4);
+        long start = System.nanoTime();
+        for (int row = 0; row < sample; row++) {
+            CircuitNode[] leaves = new CircuitNode[compiled.getLeafCount()];
+            for (int leaf = 0; leaf < leaves.length; leaf++) {
+                leaves[leaf] = CircuitNode.mk(assignments[row][leaf]);
+            }
+            solver.solve(new Circuit(rebuild(compiled, 0, leaves))).getValue();
+        }
+        System.out.printf("solve() per row: %8.1f ns/row%n", (double) (System.nanoTime() - start) / sample);
+        solver.stop();
+
+        long[][] leafWords = new long[compiled.getLeafCount()][(rows + 63) / 64];
+        for (int row = 0; row < rows; row++) {
+            for (int leaf = 0; leaf < compiled.getLeafCount(); leaf++) {
+                if (assignments[row][leaf]) {
+                    leafWords[leaf][row / 64] |= 1L << (row % 64);
+                }
+            }
+        }
+
+        // The first pass warms up all evaluations.
+        for (int pass = 0; pass < 2; pass++) {
+            BitSet expected = new BitSet(rows);
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (int row = 0; row < rows; row++) {
+                    expected.set(row, bytecode.evaluate(rowLeaves[row]));
+                }
+            }
+            long perRow = System.nanoTime() - start;
+
+            BitSet words = null;
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                words = sliced.evaluate(leafWords, rows);
+            }
+            long fromWords = System.nanoTime() - start;
+
+            BitSet booleans = null;
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                booleans = sliced.evaluate(assignments);
+            }
+            long fromBooleans = System.nanoTime() - start;
+            if (!words.equals(expected) || !booleans.equals(expected)) {
+                throw new IllegalStateException("Bit-sliced results differ.");
+            }
+
+            double ops = (double) rounds * rows;
+            System.out.printf("row by row: %8.1f ns/row   bit-sliced words: %8.1f ns/row   "
+                    + "bit-sliced booleans: %8.1f ns/row   (%d rows true)%n",
+                    perRow / ops, fromWords / ops, fromBooleans / ops, expected.cardinality());
+        }
+    }
+}
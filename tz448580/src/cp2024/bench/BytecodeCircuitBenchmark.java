@@ -0,0 +1,139 @@
+package cp2024.bench;
+
+import cp2024.circuit.*;
+import cp2024.demo.SequentialSolver;
+import cp2024.solution.BytecodeCircuit;
+import cp2024.solution.CompiledCircuit;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares evaluation of a BytecodeCircuit with the tree walk of
+ * SequentialSolver and with CompiledCircuit, in a single thread, on circuits
+ * whose leaves just return a field (SleepyLeafNode would measure
+ * Thread.sleep(0) instead). Reports time and allocated bytes per
+ * evaluation (B/op), as measured by the thread allocation counter.
+ * Class generation is timed separately. The last run evaluates the
+ * generated classes against a second set of leaves, of another class.
+ * Few circuits evaluated many times: a generated class pays off only once
+ * the JIT has compiled it, after some ten thousand evaluations.
+ * Usage: BytecodeCircuitBenchmark [nodes] [circuits] [rounds]
+ */
+public class BytecodeCircuitBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final class ConstantLeaf extends LeafNode {
+        private final boolean value;
+
+        private ConstantLeaf(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean getValue() {
+            return value;
+        }
+    }
+
+    private static final class OtherLeaf extends LeafNode {
+        private final boolean value;
+
+        private OtherLeaf(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean getValue() {
+            return value;
+        }
+    }
+
+    // Copy of the tree with ConstantLeaf leaves.
+    private static CircuitNode withConstantLeaves(CircuitNode node) throws InterruptedException {
+        if (node.getType() == NodeType.LEAF) {
+            return new ConstantLeaf(((LeafNode) node).getValue());
+        }
+        CircuitNode[] args = node.getArgs();
+        CircuitNode[] copies = new CircuitNode[args.length];
+        for (int i = 0; i < args.length; i++) {
+            copies[i] = withConstantLeaves(args[i]);
+        }
+        return node instanceof ThresholdNode
+                ? CircuitNode.mk(node.getType(), ((ThresholdNode) node).getThreshold(), copies)
+                : CircuitNode.mk(node.getType(), copies);
+    }
+
+    // One evaluation of the i-th circuit.
+    private interface Evaluation {
+        boolean evaluate(int i) throws InterruptedException;
+    }
+
+    private static void run(String name, Evaluation evaluation, boolean[] expected, int rounds)
+            throws InterruptedException {
+        // Warm-up rounds, not measured.
+        for (int round = 0; round < Math.max(1, rounds / 5); round++) {
+            for (int i = 0; i < expected.length; i++) {
+                evaluation.evaluate(i);
+            }
+        }
+
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < expected.length; i++) {
+                if (evaluation.evaluate(i) != expected[i]) {
+                    throw new IllegalStateException(name + ": wrong value of circuit " + i);
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        long ops = (long) rounds * expected.length;
+        System.out.printf("%-10s time: %10.1f ns/op  allocation: %8.1f B/op%n",
+                name, (double) elapsed / ops, (double) allocated / ops);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+
+        RandomCircuits generator = new RandomCircuits(13);
+        Circuit[] circuits = new Circuit[count];
+        CompiledCircuit[] compiled = new CompiledCircuit[count];
+        BytecodeCircuit[] bytecode = new BytecodeCircuit[count];
+        LeafNode[][] otherLeaves = new LeafNode[count][];
+        boolean[] expected = new boolean[count];
+        SequentialSolver sequential = new SequentialSolver();
+        for (int i = 0; i < count; i++) {
+            circuits[i] = new Circuit(withConstantLeaves(generator.generate(nodes, 8).getRoot()));
+            expected[i] = sequential.solve(circuits[i]).getValue();
+            compiled[i] = CompiledCircuit.compile(circuits[i]);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            bytecode[i] = BytecodeCircuit.compile(compiled[i]);
+        }
+        System.out.println("Circuits: " + count + " x ~" + nodes + " nodes, classes generated in "
+                + (System.nanoTime() - start) / 1_000 + " us");
+
+        // Equal leaves of another class, so that the same values are expected.
+        for (int i = 0; i < count; i++) {
+            otherLeaves[i] = new LeafNode[bytecode[i].getLeafCount()];
+            for (int j = 0; j < otherLeaves[i].length; j++) {
+                otherLeaves[i][j] = new OtherLeaf(bytecode[i].getLeaf(j).getValue());
+            }
+        }
+
+        // The first pass warms up all evaluations.
+        for (int pass = 0; pass < 2; pass++) {
+            run("tree", i -> sequential.solve(circuits[i]).getValue(), expected, rounds);
+            run("compiled", i -> compiled[i].evaluate(), expected, rounds);
+            run("bytecode", i -> bytecode[i].evaluate(), expected, rounds);
+            run("rebound", i -> bytecode[i].evaluate(otherLeaves[i]), expected, rounds);
+        }
+    }
+}
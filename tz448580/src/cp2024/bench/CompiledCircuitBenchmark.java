@@ -0,0 +1,79 @@
+package cp2024.bench;
+
+import cp2024.circuit.*;
+import cp2024.demo.SequentialSolver;
+import cp2024.solution.CompiledCircuit;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares evaluation of a CompiledCircuit with the tree walk of
+ * SequentialSolver, on circuits with immediate leaves, in a single thread.
+ * Reports time and allocated bytes per evaluation (B/op), as measured by
+ * the thread allocation counter. Compilation is timed separately.
+ * Usage: CompiledCircuitBenchmark [nodes] [circuits] [rounds]
+ */
+public class CompiledCircuitBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // One evaluation of the i-th circuit.
+    private interface Evaluation {
+        boolean evaluate(int i) throws InterruptedException;
+    }
+
+    private static void run(String name, Evaluation evaluation, boolean[] expected, int rounds)
+            throws InterruptedException {
+        // Warm-up rounds, not measured.
+        for (int round = 0; round < Math.max(1, rounds / 5); round++) {
+            for (int i = 0; i < expected.length; i++) {
+                evaluation.evaluate(i);
+            }
+        }
+
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < expected.length; i++) {
+                if (evaluation.evaluate(i) != expected[i]) {
+                    throw new IllegalStateException(name + ": wrong value of circuit " + i);
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        long ops = (long) rounds * expected.length;
+        System.out.printf("%-10s time: %10.1f ns/op  allocation: %8.1f B/op%n",
+                name, (double) elapsed / ops, (double) allocated / ops);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+
+        RandomCircuits generator = new RandomCircuits(13);
+        Circuit[] circuits = new Circuit[count];
+        CompiledCircuit[] compiled = new CompiledCircuit[count];
+        boolean[] expected = new boolean[count];
+        SequentialSolver sequential = new SequentialSolver();
+        for (int i = 0; i < count; i++) {
+            circuits[i] = generator.generate(nodes, 8);
+            expected[i] = sequential.solve(circuits[i]).getValue();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            compiled[i] = CompiledCircuit.compile(circuits[i]);
+        }
+        System.out.println("Circuits: " + count + " x ~" + nodes + " nodes, compiled in "
+                + (System.nanoTime() - start) / 1_000 + " us");
+
+        // The first pass warms up both evaluations.
+        for (int pass = 0; pass < 2; pass++) {
+            run("tree", i -> sequential.solve(circuits[i]).getValue(), expected, rounds);
+            run("compiled", i -> compiled[i].evaluate(), expected, rounds);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package cp2024.bench;
+
+import cp2024.circuit.*;
+import cp2024.demo.SequentialSolver;
+import cp2024.solution.ForkJoinCircuitSolver;
+import cp2024.solution.ParallelCircuitSolver;
+
+/**
+ * Compares ForkJoinCircuitSolver with SequentialSolver and the pooled
+ * ParallelCircuitSolver on deep, wide circuits with immediate leaves.
+ * Usage: ForkJoinSolverBenchmark [nodes] [circuits] [rounds]
+ */
+public class ForkJoinSolverBenchmark {
+
+    private static void run(String name, CircuitSolver solver, Circuit[] circuits,
+                            boolean[] expected, int rounds) throws InterruptedException {
+        // Warm-up round, not measured.
+        for (int i = 0; i < circuits.length; i++) {
+            solver.solve(circuits[i]).getValue();
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < circuits.length; i++) {
+                if (solver.solve(circuits[i]).getValue() != expected[i]) {
+                    throw new IllegalStateException(name + ": wrong value of circuit " + i);
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        solver.stop();
+
+        double seconds = elapsed / 1_000_000_000.0;
+        System.out.printf("%-12s time: %8.3f s  circuits/s: %10.1f%n",
+                name, seconds, rounds * circuits.length / seconds);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        RandomCircuits generator = new RandomCircuits(7);
+        Circuit[] circuits = new Circuit[count];
+        boolean[] expected = new boolean[count];
+        CircuitSolver sequential = new SequentialSolver();
+        for (int i = 0; i < count; i++) {
+            circuits[i] = generator.generate(nodes, 16);
+            expected[i] = sequential.solve(circuits[i]).getValue();
+        }
+
+        System.out.println("Circuits: " + count + " x ~" + nodes + " nodes, cores: " + cores);
+        run("sequential", new SequentialSolver(), circuits, expected, rounds);
+        run("fork-join", new ForkJoinCircuitSolver(cores), circuits, expected, rounds);
+        run("pooled", new ParallelCircuitSolver(cores), circuits, expected, rounds);
+    }
+}
@@ -0,0 +1,98 @@
+package cp2024.bench;
+
+import cp2024.circuit.*;
+import cp2024.solution.LeafStatistics;
+import cp2024.solution.ParallelCircuitSolver;
+import cp2024.solution.SolverOptions;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Latency of circuits whose nodes have more leaves than there are pool
+ * threads, on the pooled engine: children started in the circuit's order
+ * against children ordered by LeafStatistics. Leaves are lookups with their
+ * own latency and bias, reused by all circuits, as in a service that asks
+ * the same sources over and over.
+ * Usage: LeafOrderBenchmark [poolSize] [samples]
+ */
+public class LeafOrderBenchmark {
+
+    // Lookup that takes its time and is true with its own probability.
+    private static class LookupLeaf extends LeafNode {
+        private final long millis;
+        private final double trueProbability;
+        private final Random random;
+
+        public LookupLeaf(long millis, double trueProbability, long seed) {
+            this.millis = millis;
+            this.trueProbability = trueProbability;
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public boolean getValue() throws InterruptedException {
+            Thread.sleep(millis);
+            synchronized (random) {
+                return random.nextDouble() < trueProbability;
+            }
+        }
+    }
+
+    private static void run(String name, SolverOptions options, Circuit[] circuits, int warmUp)
+            throws InterruptedException {
+        ParallelCircuitSolver solver = new ParallelCircuitSolver(options);
+        for (int i = 0; i < warmUp; i++) {
+            solver.solve(circuits[i % circuits.length]).getValue();
+        }
+        long[] latencies = new long[circuits.length];
+        for (int i = 0; i < circuits.length; i++) {
+            long start = System.nanoTime();
+            solver.solve(circuits[i]).getValue();
+            latencies[i] = System.nanoTime() - start;
+        }
+        solver.stop();
+
+        long total = 0;
+        for (long latency : latencies) {
+            total += latency;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%-20s mean: %7.2f ms  p50: %7.2f ms  p99: %7.2f ms%n", name,
+                total / 1e6 / latencies.length,
+                latencies[latencies.length / 2] / 1e6,
+                latencies[(int) Math.ceil(latencies.length * 0.99) - 1] / 1e6);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int poolSize = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int samples = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        // Slow lookups that rarely decide an OR, and fast ones that often do.
+        Random random = new Random(67);
+        LeafNode[] lookups = new LeafNode[24];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = i % 3 == 0
+                    ? new LookupLeaf(1, 0.8, i)
+                    : new LookupLeaf(5 + random.nextInt(10), 0.1, i);
+        }
+
+        // AND of ORs, each over 8 lookups in random order.
+        Circuit[] circuits = new Circuit[samples];
+        for (int s = 0; s < samples; s++) {
+            CircuitNode[] groups = new CircuitNode[3];
+            for (int g = 0; g < groups.length; g++) {
+                CircuitNode[] group = new CircuitNode[8];
+                for (int i = 0; i < group.length; i++) {
+                    group[i] = lookups[random.nextInt(lookups.length)];
+                }
+                groups[g] = CircuitNode.mk(NodeType.OR, group);
+            }
+            circuits[s] = new Circuit(CircuitNode.mk(NodeType.AND, groups));
+        }
+
+        System.out.println(samples + " circuits, pool of " + poolSize);
+        run("circuit order", SolverOptions.builder().poolSize(poolSize).build(), circuits, 0);
+        run("leaf statistics", SolverOptions.builder().poolSize(poolSize)
+                .leafStatistics(new LeafStatistics()).build(), circuits, 20);
+    }
+}
@@ -0,0 +1,72 @@
+package cp2024.bench;
+
+import cp2024.circuit.*;
+import cp2024.demo.SequentialSolver;
+import cp2024.solution.ParallelCircuitSolver;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.Supplier;
+
+/**
+ * Compares the thread-per-node ParallelCircuitSolver with the pooled engine.
+ * Reports threads started, peak live threads and throughput.
+ * Usage: PooledSolverBenchmark [nodes] [circuits] [poolSize]
+ */
+public class PooledSolverBenchmark {
+
+    private static void run(String name, Supplier<CircuitSolver> solverFactory,
+                            Circuit[] circuits, boolean[] expected) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        // Warm-up round, not measured.
+        CircuitSolver warmUp = solverFactory.get();
+        for (Circuit c : circuits) {
+            warmUp.solve(c).getValue();
+        }
+        warmUp.stop();
+
+        CircuitSolver solver = solverFactory.get();
+        threads.resetPeakThreadCount();
+        long startedBefore = threads.getTotalStartedThreadCount();
+        long start = System.nanoTime();
+
+        // All circuits are in flight at the same time.
+        CircuitValue[] values = new CircuitValue[circuits.length];
+        for (int i = 0; i < circuits.length; i++) {
+            values[i] = solver.solve(circuits[i]);
+        }
+        for (int i = 0; i < circuits.length; i++) {
+            if (values[i].getValue() != expected[i]) {
+                throw new IllegalStateException(name + ": wrong value of circuit " + i);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        long started = threads.getTotalStartedThreadCount() - startedBefore;
+        int peak = threads.getPeakThreadCount();
+        solver.stop();
+
+        double seconds = elapsed / 1_000_000_000.0;
+        System.out.printf("%-16s threads started: %8d  peak live threads: %6d  time: %8.3f s  circuits/s: %10.1f%n",
+                name, started, peak, seconds, circuits.length / seconds);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int poolSize = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        RandomCircuits generator = new RandomCircuits(42);
+        Circuit[] circuits = new Circuit[count];
+        boolean[] expected = new boolean[count];
+        CircuitSolver sequential = new SequentialSolver();
+        for (int i = 0; i < count; i++) {
+            circuits[i] = generator.generate(nodes, 8);
+            expected[i] = sequential.solve(circuits[i]).getValue();
+        }
+
+        System.out.println("Circuits: " + count + " x ~" + nodes + " nodes, pool size: " + poolSize);
+        run("thread-per-node", ParallelCircuitSolver::new, circuits, expected);
+        run("pooled", () -> new ParallelCircuitSolver(poolSize), circuits, expected);
+    }
+}
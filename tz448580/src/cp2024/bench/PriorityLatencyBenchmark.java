@@ -0,0 +1,94 @@
+package cp2024.bench;
+
+import cp2024.circuit.*;
+import cp2024.solution.ParallelCircuitSolver;
+import cp2024.solution.Priority;
+import cp2024.solution.SolveRequest;
+import cp2024.solution.SolverOptions;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Latency of small interactive circuits under a saturating load of large
+ * batch circuits, on the pooled engine. Compares both classes submitted with
+ * the same priority against interactive HIGH over batch LOW.
+ * Usage: PriorityLatencyBenchmark [poolSize] [samples]
+ */
+public class PriorityLatencyBenchmark {
+
+    // Keeps a window of batch circuits in flight until the solver is stopped.
+    private static class BatchLoad implements Runnable {
+
+        private final ParallelCircuitSolver solver;
+        private final Circuit[] circuits;
+        private final SolveRequest request;
+
+        public BatchLoad(ParallelCircuitSolver solver, Circuit[] circuits, Priority priority) {
+            this.solver = solver;
+            this.circuits = circuits;
+            this.request = SolveRequest.builder().priority(priority).build();
+        }
+
+        @Override
+        public void run() {
+            ArrayDeque<CircuitValue> window = new ArrayDeque<>();
+            try {
+                for (int i = 0; ; i++) {
+                    window.add(solver.solve(circuits[i % circuits.length], request));
+                    if (window.size() >= 8) {
+                        window.poll().getValue();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Solver stopped.
+            }
+        }
+    }
+
+    private static void run(String name, int poolSize, Circuit[] batch, Circuit[] interactive,
+                            Priority batchPriority, Priority interactivePriority) throws InterruptedException {
+        ParallelCircuitSolver solver = new ParallelCircuitSolver(SolverOptions.builder().poolSize(poolSize).build());
+        Thread load = new Thread(new BatchLoad(solver, batch, batchPriority));
+        load.start();
+        // Let the load fill the pool queue.
+        Thread.sleep(300);
+
+        SolveRequest request = SolveRequest.builder().priority(interactivePriority).build();
+        long[] latencies = new long[interactive.length];
+        for (int i = 0; i < interactive.length; i++) {
+            long start = System.nanoTime();
+            solver.solve(interactive[i], request).getValue();
+            latencies[i] = System.nanoTime() - start;
+            Thread.sleep(2);
+        }
+        solver.stop();
+        load.join();
+
+        Arrays.sort(latencies);
+        System.out.printf("%-24s p50: %8.2f ms  p99: %8.2f ms  max: %8.2f ms%n", name,
+                latencies[latencies.length / 2] / 1e6,
+                latencies[(int) Math.ceil(latencies.length * 0.99) - 1] / 1e6,
+                latencies[latencies.length - 1] / 1e6);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int poolSize = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int samples = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        RandomCircuits batchGenerator = new RandomCircuits(42, Duration.ofMillis(1));
+        Circuit[] batch = new Circuit[16];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = batchGenerator.generate(500, 8);
+        }
+        RandomCircuits interactiveGenerator = new RandomCircuits(7, Duration.ofMillis(1));
+        Circuit[] interactive = new Circuit[samples];
+        for (int i = 0; i < interactive.length; i++) {
+            interactive[i] = interactiveGenerator.generate(10, 3);
+        }
+
+        System.out.println("Pool size: " + poolSize + ", interactive samples: " + samples);
+        run("same priority", poolSize, batch, interactive, Priority.NORMAL, Priority.NORMAL);
+        run("HIGH over LOW batch", poolSize, batch, interactive, Priority.LOW, Priority.HIGH);
+    }
+}
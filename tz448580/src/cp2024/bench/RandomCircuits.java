@@ -0,0 +1,63 @@
+package cp2024.bench;
+
+import cp2024.circuit.*;
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Generator of random circuits used by the benchmarks.
+ * The same seed always gives the same circuit.
+ */
+public class RandomCircuits {
+
+    private final Random random;
+    private final Duration leafDelay;
+
+    public RandomCircuits(long seed) {
+        this(seed, Duration.ZERO);
+    }
+
+    public RandomCircuits(long seed, Duration leafDelay) {
+        this.random = new Random(seed);
+        this.leafDelay = leafDelay;
+    }
+
+    // Returns a circuit with approximately the given number of nodes.
+    public Circuit generate(int nodes, int maxArity) {
+        return new Circuit(generateNode(nodes, maxArity));
+    }
+
+    private CircuitNode generateNode(int nodes, int maxArity) {
+        if (nodes <= 1) {
+            return CircuitNode.mk(random.nextBoolean(), leafDelay);
+        }
+        // The node itself takes one of the available nodes.
+        int left = nodes - 1;
+        int type = random.nextInt(6);
+        if (type == 0) {
+            return CircuitNode.mk(NodeType.NOT, generateNode(left, maxArity));
+        }
+        if (type == 1) {
+            return CircuitNode.mk(NodeType.IF, generateChildren(3, left, maxArity));
+        }
+        int arity = Math.max(2, Math.min(maxArity, left));
+        arity = 2 + random.nextInt(arity - 1);
+        CircuitNode[] children = generateChildren(arity, left, maxArity);
+        return switch (type) {
+            case 2 -> CircuitNode.mk(NodeType.AND, children);
+            case 3 -> CircuitNode.mk(NodeType.OR, children);
+            case 4 -> CircuitNode.mk(NodeType.GT, random.nextInt(arity), children);
+            default -> CircuitNode.mk(NodeType.LT, 1 + random.nextInt(arity), children);
+        };
+    }
+
+    private CircuitNode[] generateChildren(int arity, int nodes, int maxArity) {
+        CircuitNode[] children = new CircuitNode[arity];
+        for (int i = 0; i < arity; i++) {
+            // Split the remaining nodes evenly between the children.
+            int share = nodes / arity + (i < nodes % arity ? 1 : 0);
+            children[i] = generateNode(share, maxArity);
+        }
+        return children;
+    }
+}
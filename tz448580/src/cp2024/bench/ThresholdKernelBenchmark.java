@@ -0,0 +1,73 @@
+package cp2024.bench;
+
+import cp2024.circuit.*;
+import cp2024.solution.BitSlicedCircuit;
+import cp2024.solution.CompiledCircuit;
+import cp2024.solution.ScalarThresholdKernel;
+import cp2024.solution.ThresholdKernel;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Compares ThresholdKernel.best() with the scalar kernel on bit-sliced
+ * circuits dominated by wide GTx / LTx nodes. Compile the vector kernel
+ * (see ThresholdKernel.VECTOR_KERNEL) and run with
+ * --add-modules jdk.incubator.vector, otherwise both are scalar.
+ * Usage: ThresholdKernelBenchmark [width] [rows] [rounds]
+ */
+public class ThresholdKernelBenchmark {
+
+    private static long time(BitSlicedCircuit circuit, long[][] leafWords, int rows, int rounds, BitSet expected) {
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            if (!circuit.evaluate(leafWords, rows).equals(expected)) {
+                throw new IllegalStateException("Kernels differ.");
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 64 * 1024;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        // Majority votes over overlapping groups of leaves.
+        Random random = new Random(43);
+        CircuitNode[] leaves = new CircuitNode[width];
+        for (int i = 0; i < width; i++) {
+            leaves[i] = CircuitNode.mk(false);
+        }
+        CircuitNode[] votes = new CircuitNode[8];
+        for (int v = 0; v < votes.length; v++) {
+            CircuitNode[] group = new CircuitNode[width];
+            for (int i = 0; i < width; i++) {
+                group[i] = leaves[(i + v * 7) % width];
+            }
+            votes[v] = CircuitNode.mk(v % 2 == 0 ? NodeType.GT : NodeType.LT, width / 2, group);
+        }
+        CompiledCircuit compiled = CompiledCircuit.compile(new Circuit(CircuitNode.mk(NodeType.GT, 3, votes)));
+
+        long[][] leafWords = new long[compiled.getLeafCount()][(rows + 63) / 64];
+        for (long[] leaf : leafWords) {
+            for (int w = 0; w < leaf.length; w++) {
+                leaf[w] = random.nextLong();
+            }
+        }
+
+        ThresholdKernel best = ThresholdKernel.best();
+        BitSlicedCircuit scalar = BitSlicedCircuit.compile(compiled, ScalarThresholdKernel.INSTANCE);
+        BitSlicedCircuit vector = BitSlicedCircuit.compile(compiled, best);
+        BitSet expected = scalar.evaluate(leafWords, rows);
+        System.out.println("8 nodes of width " + width + ", " + rows + " rows, best kernel: "
+                + best.getClass().getSimpleName());
+
+        // The first pass warms up both kernels.
+        for (int pass = 0; pass < 2; pass++) {
+            long scalarTime = time(scalar, leafWords, rows, rounds, expected);
+            long vectorTime = time(vector, leafWords, rows, rounds, expected);
+            double ops = (double) rounds * rows;
+            System.out.printf("scalar: %8.2f ns/row   best: %8.2f ns/row%n", scalarTime / ops, vectorTime / ops);
+        }
+    }
+}
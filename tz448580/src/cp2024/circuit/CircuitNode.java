@@ -45,4 +45,9 @@ public abstract sealed class CircuitNode permits SimpleNode, LeafNode, Threshold
     public static CircuitNode mk(boolean value, Duration duration) {
         return new SleepyLeafNode(value, duration);
     }
+
+    /** Leaf bound to bindings[index] when the circuit is evaluated. See VariableLeaf. */
+    public static CircuitNode var(int index) {
+        return new VariableLeaf(index);
+    }
 }
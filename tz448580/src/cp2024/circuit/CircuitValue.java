@@ -1,5 +1,8 @@
 package cp2024.circuit;
 
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
 /** 
  * Interface for a deferred (future) value returned by a CircuitSolver.
  * Important: tests will intentionally interrupt only threads blocked
@@ -7,4 +10,22 @@ package cp2024.circuit;
  */
 public interface CircuitValue {
     public boolean getValue() throws InterruptedException;
+
+    /**
+     * Waits at most timeout for the value. Throws TimeoutException if it isn't
+     * known by then; the computation goes on. Values whose getValue() may
+     * block override this, by default it is the same as getValue().
+     */
+    public default boolean getValue(Duration timeout) throws InterruptedException, TimeoutException {
+        return getValue();
+    }
+
+    /**
+     * Stops the computation of this value only, other circuits of the solver
+     * are not affected. Threads waiting in getValue() get InterruptedException.
+     * Returns false if the value was already computed or can't be cancelled.
+     */
+    public default boolean cancel() {
+        return false;
+    }
 }
@@ -6,4 +6,22 @@ public abstract non-sealed class LeafNode extends CircuitNode {
     }
 
     abstract public boolean getValue() throws InterruptedException;
+
+    /**
+     * Returns false if getValue() is known to return without blocking, so that
+     * a solver may evaluate the leaf in place. Leaves that can't tell keep the default.
+     */
+    public boolean mayBlock() {
+        return true;
+    }
+
+    /**
+     * Returns an object that identifies the value of a deterministic leaf:
+     * leaves with equal keys always return the same value, so subcircuits
+     * over them may be cached across solves. Null (the default) if the value
+     * may change, then no subcircuit containing the leaf is ever cached.
+     */
+    public Object getCacheKey() {
+        return null;
+    }
 }
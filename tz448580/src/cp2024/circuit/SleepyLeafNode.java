@@ -21,4 +21,14 @@ public class SleepyLeafNode extends LeafNode {
         Thread.sleep(this.delay.toMillis());
         return this.value;
     }
+
+    @Override
+    public boolean mayBlock() {
+        return this.delay.toMillis() > 0;
+    }
+
+    @Override
+    public Object getCacheKey() {
+        return this.value;
+    }
 }
@@ -0,0 +1,33 @@
+package cp2024.circuit;
+
+/**
+ * Leaf whose value is not part of the circuit: it is the variable with the
+ * given index, bound when the circuit is evaluated with an array of values
+ * (see CompiledCircuit.evaluate(boolean[])). One circuit can thus be built
+ * and compiled once and evaluated with different inputs, also concurrently.
+ * getValue() of an unbound variable throws IllegalStateException.
+ */
+public final class VariableLeaf extends LeafNode {
+    private final int index;
+
+    public VariableLeaf(int index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Negative variable index " + index);
+        }
+        this.index = index;
+    }
+
+    public int getIndex() {
+        return this.index;
+    }
+
+    @Override
+    public boolean getValue() {
+        throw new IllegalStateException("Variable " + index + " is not bound.");
+    }
+
+    @Override
+    public boolean mayBlock() {
+        return false;
+    }
+}
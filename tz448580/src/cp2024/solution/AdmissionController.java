@@ -0,0 +1,342 @@
+/**
+ * AdmissionController implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when circuits passed to solve() are started.
+ * A circuit is started right away if the solver is below its limits of
+ * in-flight circuits and nodes and no circuit of the same or higher priority
+ * is waiting; otherwise it waits in the queue of its Priority and is started
+ * when a circuit or a node finishes. Queues are served from the highest
+ * priority, FIFO within a priority. When the queues are full, the
+ * OverflowPolicy decides what happens.
+ * The node limit is checked only when circuits are admitted: nodes of
+ * a circuit that is already running are never held back, so a circuit
+ * can't deadlock waiting for its own children.
+ */
+class AdmissionController {
+
+    private final SolverOptions options;
+
+    // Nodes being evaluated, updated by every node without taking the lock.
+    private final AtomicInteger inFlightNodes;
+
+    // Copy of queuedCount, so that finishing nodes can check it without the lock.
+    private volatile int queueDepth;
+
+    // Updated under the monitor, unless the solver has no limits and the monitor is skipped.
+    private final AtomicInteger inFlightCircuits;
+    private final AtomicLong admitted;
+
+    // All fields below are protected by the controller's monitor.
+    private final List<ArrayDeque<Admission>> queues;   // Indexed by Priority.ordinal().
+    private int queuedCount;
+    private boolean shutdown;
+    private long queued;
+    private long rejected;
+    private long shed;
+
+    AdmissionController(SolverOptions options) {
+        this.options = options;
+        this.inFlightNodes = new AtomicInteger(0);
+        this.queueDepth = 0;
+        this.inFlightCircuits = new AtomicInteger(0);
+        this.admitted = new AtomicLong(0);
+        this.queues = new ArrayList<>();
+        for (int i = 0; i < Priority.values().length; i++) {
+            queues.add(new ArrayDeque<>());
+        }
+        this.queuedCount = 0;
+        this.shutdown = false;
+    }
+
+    /**
+     * Admission:
+     * A circuit passed to solve(). start() begins its evaluation,
+     * the value reports back through finished() once it is done.
+     */
+    final class Admission {
+
+        private final ParallelCircuitValue circuitValue;
+        private final Runnable start;
+        private final Priority priority;
+        private final AtomicBoolean running;  // Counted in inFlightCircuits.
+        private final AtomicInteger decision; // UNDECIDED, then ADMITTED by admit() or CLOSED by finished().
+
+        private Admission(ParallelCircuitValue circuitValue, Runnable start, Priority priority) {
+            this.circuitValue = circuitValue;
+            this.start = start;
+            this.priority = priority;
+            this.running = new AtomicBoolean(false);
+            this.decision = new AtomicInteger(UNDECIDED);
+        }
+
+        /**
+         * Returns true if the circuit was started or queued. Final once admit()
+         * has returned or finished() was called: a circuit stopped before it
+         * was admitted, or rejected, never is.
+         */
+        boolean wasAdmitted() {
+            return decision.get() == ADMITTED;
+        }
+
+        // Returns false if finished() came first, then the circuit must not be admitted.
+        private boolean markAdmitted() {
+            return decision.compareAndSet(UNDECIDED, ADMITTED);
+        }
+
+        private void close() {
+            decision.compareAndSet(UNDECIDED, CLOSED);
+        }
+    }
+
+    // Decisions of an Admission:
+    private static final int UNDECIDED = 0;
+    private static final int ADMITTED = 1;
+    private static final int CLOSED = 2;
+
+    // Prepares the admission of a circuit. finished() must be called once its value completes.
+    Admission register(ParallelCircuitValue circuitValue, Runnable start, Priority priority) {
+        return new Admission(circuitValue, start, priority);
+    }
+
+    /**
+     * Starts the circuit or queues it. Returns false if it was rejected,
+     * the circuit is then never evaluated. With OverflowPolicy.BLOCK the
+     * caller waits for room in the queue; an interrupted caller is rejected.
+     */
+    boolean admit(Admission admission) {
+        if (!options.isBounded()) {
+            // Without limits nothing is ever queued, so the monitor isn't needed.
+            if (!admission.markAdmitted()) {
+                // Stopped meanwhile, finished() was already called.
+                return true;
+            }
+            markRunning(admission);
+            if (admission.circuitValue.isDone()) {
+                // Broken by stop() before it was counted, finished() might have missed it.
+                release(admission);
+            } else {
+                admission.start.run();
+            }
+            return true;
+        }
+
+        List<Admission> toStart = new ArrayList<>();
+        Admission toShed = null;
+        synchronized (this) {
+            while (true) {
+                // finished() closes admissions under the monitor, so markAdmitted() below succeeds.
+                if (shutdown || admission.circuitValue.isDone() || admission.decision.get() == CLOSED) {
+                    // Stopped meanwhile, the value is already broken.
+                    return true;
+                }
+                if (!hasQueuedAtOrAbove(admission.priority) && hasRoom()) {
+                    admission.markAdmitted();
+                    markRunning(admission);
+                    toStart.add(admission);
+                    break;
+                }
+                if (queuedCount < options.getMaxQueuedSolves()) {
+                    admission.markAdmitted();
+                    enqueue(admission);
+                    // A node might have finished before it could see the new queue depth.
+                    pollAdmissible(toStart);
+                    break;
+                }
+
+                OverflowPolicy policy = options.getOverflowPolicy();
+                if (policy == OverflowPolicy.BLOCK) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        rejected++;
+                        return false;
+                    }
+                } else if (policy == OverflowPolicy.SHED_OLDEST) {
+                    toShed = pollShed(admission.priority);
+                    if (toShed == null) {
+                        // Only circuits of higher priority are waiting.
+                        rejected++;
+                        return false;
+                    }
+                    shed++;
+                    admission.markAdmitted();
+                    enqueue(admission);
+                    break;
+                } else {
+                    rejected++;
+                    return false;
+                }
+            }
+        }
+
+        if (toShed != null) {
+            // Threads waiting for the shed value get InterruptedException.
+            toShed.circuitValue.stopComputation();
+        }
+        startAll(toStart);
+        return true;
+    }
+
+    /**
+     * Called when the value of the circuit is computed or broken, also if it
+     * was never admitted (then it only makes sure it never will be).
+     */
+    void finished(Admission admission) {
+        if (!options.isBounded()) {
+            admission.close();
+            release(admission);
+            return;
+        }
+
+        List<Admission> toStart = new ArrayList<>();
+        synchronized (this) {
+            admission.close();
+            // A circuit that wasn't running may still be waiting in the queue.
+            if (!release(admission) && queues.get(admission.priority.ordinal()).remove(admission)) {
+                queuedCount--;
+                queueDepth = queuedCount;
+            }
+            pollAdmissible(toStart);
+            // There may be room in the queue for blocked callers now.
+            notifyAll();
+        }
+        startAll(toStart);
+    }
+
+    // Called by a node thread (or a pool thread) before it evaluates a node.
+    void nodeStarted() {
+        inFlightNodes.incrementAndGet();
+    }
+
+    // Called by a node thread (or a pool thread) when it's done with a node.
+    void nodeFinished() {
+        int nodes = inFlightNodes.decrementAndGet();
+        if (nodes < options.getMaxInFlightNodes() && queueDepth > 0) {
+            List<Admission> toStart = new ArrayList<>();
+            synchronized (this) {
+                pollAdmissible(toStart);
+            }
+            startAll(toStart);
+        }
+    }
+
+    // Creates a thread for a node, counted as in flight until the node is done.
+    Thread newNodeThread(Runnable worker) {
+        nodeStarted();
+        return new Thread(() -> {
+            try {
+                worker.run();
+            } finally {
+                nodeFinished();
+            }
+        });
+    }
+
+    // No more circuits are started, blocked callers of solve() are released.
+    synchronized void shutdown() {
+        shutdown = true;
+        notifyAll();
+    }
+
+    synchronized AdmissionMetrics getMetrics() {
+        return new AdmissionMetrics(queuedCount, inFlightCircuits.get(), inFlightNodes.get(),
+                admitted.get(), queued, rejected, shed);
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    // Must be called with the monitor held.
+    private boolean hasRoom() {
+        return inFlightCircuits.get() < options.getMaxInFlightCircuits()
+                && inFlightNodes.get() < options.getMaxInFlightNodes();
+    }
+
+    // Must be called with the monitor held.
+    private boolean hasQueuedAtOrAbove(Priority priority) {
+        for (int i = 0; i <= priority.ordinal(); i++) {
+            if (!queues.get(i).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Must be called with the monitor held.
+    private void enqueue(Admission admission) {
+        queues.get(admission.priority.ordinal()).add(admission);
+        queuedCount++;
+        queueDepth = queuedCount;
+        queued++;
+    }
+
+    /**
+     * Takes the oldest circuit of the lowest priority that is not higher than
+     * the given one, so that a newer circuit can take its place in the queue.
+     * Returns null if there is none. Must be called with the monitor held.
+     */
+    private Admission pollShed(Priority priority) {
+        for (int i = queues.size() - 1; i >= priority.ordinal(); i--) {
+            Admission oldest = queues.get(i).poll();
+            if (oldest != null) {
+                queuedCount--;
+                queueDepth = queuedCount;
+                return oldest;
+            }
+        }
+        return null;
+    }
+
+    // Must be called with the monitor held, if the solver has limits.
+    private void markRunning(Admission admission) {
+        admission.running.set(true);
+        inFlightCircuits.incrementAndGet();
+        admitted.incrementAndGet();
+    }
+
+    // Frees the slot of a running circuit. Returns false if it wasn't running.
+    private boolean release(Admission admission) {
+        if (admission.running.compareAndSet(true, false)) {
+            inFlightCircuits.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    // Takes queued circuits that can be started now, highest priority first. Must be called with the monitor held.
+    private void pollAdmissible(List<Admission> toStart) {
+        boolean polled = false;
+        for (ArrayDeque<Admission> queue : queues) {
+            while (!shutdown && !queue.isEmpty() && hasRoom()) {
+                Admission admission = queue.poll();
+                queuedCount--;
+                markRunning(admission);
+                toStart.add(admission);
+                polled = true;
+            }
+        }
+        if (polled) {
+            queueDepth = queuedCount;
+            notifyAll();
+        }
+    }
+
+    // Starts admitted circuits, outside of the monitor.
+    private static void startAll(List<Admission> toStart) {
+        for (Admission admission : toStart) {
+            admission.start.run();
+        }
+    }
+}
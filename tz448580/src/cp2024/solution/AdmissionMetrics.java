@@ -0,0 +1,86 @@
+/**
+ * AdmissionMetrics implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+/**
+ * Snapshot of the admission state of a ParallelCircuitSolver.
+ * Gauges (queue depth, in-flight circuits and nodes) are taken at the time
+ * of the snapshot, counters are totals since the solver was created.
+ */
+public final class AdmissionMetrics {
+
+    private final int queueDepth;
+    private final int inFlightCircuits;
+    private final int inFlightNodes;
+    private final long admitted;
+    private final long queued;
+    private final long rejected;
+    private final long shed;
+
+    AdmissionMetrics(
+        int queueDepth,
+        int inFlightCircuits,
+        int inFlightNodes,
+        long admitted,
+        long queued,
+        long rejected,
+        long shed
+    ) {
+        this.queueDepth = queueDepth;
+        this.inFlightCircuits = inFlightCircuits;
+        this.inFlightNodes = inFlightNodes;
+        this.admitted = admitted;
+        this.queued = queued;
+        this.rejected = rejected;
+        this.shed = shed;
+    }
+
+    // Circuits waiting for admission.
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    // Circuits started and not yet finished.
+    public int getInFlightCircuits() {
+        return inFlightCircuits;
+    }
+
+    // Nodes whose evaluation is running (node threads, or busy pool threads).
+    public int getInFlightNodes() {
+        return inFlightNodes;
+    }
+
+    // Circuits started so far, right away or after waiting in the queue.
+    public long getAdmitted() {
+        return admitted;
+    }
+
+    // Circuits that had to wait in the queue.
+    public long getQueued() {
+        return queued;
+    }
+
+    // Circuits refused with a RejectedCircuitValue.
+    public long getRejected() {
+        return rejected;
+    }
+
+    // Queued circuits dropped to make room for newer ones.
+    public long getShed() {
+        return shed;
+    }
+
+    @Override
+    public String toString() {
+        return "queueDepth=" + queueDepth
+                + " inFlightCircuits=" + inFlightCircuits
+                + " inFlightNodes=" + inFlightNodes
+                + " admitted=" + admitted
+                + " queued=" + queued
+                + " rejected=" + rejected
+                + " shed=" + shed;
+    }
+}
@@ -0,0 +1,456 @@
+/**
+ * BddCircuit implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.Circuit;
+
+import java.util.Arrays;
+
+/**
+ * Circuit compiled into a reduced ordered binary decision diagram (ROBDD).
+ * Every leaf object is a variable (leaves are numbered as in CompiledCircuit),
+ * tested in a configurable order. Nodes are hash-consed in a unique table,
+ * so equal subfunctions share a node and no node has equal children;
+ * AND, OR, NOT and IF are built with the if-then-else operator, whose results
+ * are kept in a computed table, and GTx / LTx with the usual
+ * "at least j of children i .. n" recurrence.
+ * Evaluating an assignment then follows a single path, at most one test per
+ * variable, however large the circuit is; evaluate() calls only the leaves
+ * tested on that path. The size of a diagram depends heavily on the order
+ * and may grow exponentially: compilation gives up past the node limit (or
+ * after 64 if-then-else steps per allowed node), and the BddCircuit then
+ * evaluates the circuit tree instead (usesDiagram() is false).
+ * Compiled circuits are immutable and may be evaluated concurrently.
+ */
+public final class BddCircuit {
+
+    public static final int DEFAULT_NODE_LIMIT = 1 << 20;
+
+    // Terminal nodes:
+    private static final int FALSE = 0;
+    private static final int TRUE = 1;
+
+    private final CompiledCircuit compiled;
+
+    // Node i > 1 tests the leaf leafAtLevel[levels[i]] and goes to highs[i]
+    // if it's true, to lows[i] otherwise. Null if there is no diagram.
+    private final int[] levels;
+    private final int[] lows;
+    private final int[] highs;
+    private final int root;
+    private final int[] leafAtLevel;
+
+    private BddCircuit(CompiledCircuit compiled, Manager manager, int root, int[] leafAtLevel) {
+        this.compiled = compiled;
+        this.leafAtLevel = leafAtLevel;
+        if (manager == null) {
+            this.levels = null;
+            this.lows = null;
+            this.highs = null;
+            this.root = FALSE;
+            return;
+        }
+        // Keeps only the nodes reachable from the root; children were made
+        // before their parents, so renumbering in order keeps them below.
+        boolean[] reachable = new boolean[manager.count];
+        reachable[FALSE] = true;
+        reachable[TRUE] = true;
+        reachable[root] = true;
+        for (int node = root; node > TRUE; node--) {
+            if (reachable[node]) {
+                reachable[manager.lows[node]] = true;
+                reachable[manager.highs[node]] = true;
+            }
+        }
+        int[] renumbered = new int[manager.count];
+        int size = 0;
+        for (int node = 0; node <= root || node <= TRUE; node++) {
+            if (reachable[node]) {
+                renumbered[node] = size++;
+            }
+        }
+        this.levels = new int[size];
+        this.lows = new int[size];
+        this.highs = new int[size];
+        for (int node = 0; node <= root || node <= TRUE; node++) {
+            if (reachable[node]) {
+                int to = renumbered[node];
+                levels[to] = manager.levels[node];
+                lows[to] = renumbered[manager.lows[node]];
+                highs[to] = renumbered[manager.highs[node]];
+            }
+        }
+        this.root = renumbered[root];
+    }
+
+    // Compiles the circuit with leaves in their CompiledCircuit order and the default node limit.
+    public static BddCircuit compile(Circuit circuit) throws InterruptedException {
+        return compile(CompiledCircuit.compile(circuit), null, DEFAULT_NODE_LIMIT);
+    }
+
+    /**
+     * Compiles the circuit, testing leaf order[0] first, then order[1] and so on
+     * (null means 0, 1, 2, ...). If the diagram would have more than nodeLimit
+     * nodes, the circuit is evaluated as a tree instead.
+     * Throws InterruptedException if the thread is interrupted meanwhile.
+     */
+    public static BddCircuit compile(CompiledCircuit compiled, int[] order, int nodeLimit)
+            throws InterruptedException {
+        int leafCount = compiled.getLeafCount();
+        int[] leafAtLevel = order == null ? identity(leafCount) : order.clone();
+        int[] levelOfLeaf = new int[leafCount];
+        Arrays.fill(levelOfLeaf, -1);
+        if (leafAtLevel.length != leafCount) {
+            throw new IllegalArgumentException("Expected an order of " + leafCount + " leaves.");
+        }
+        for (int level = 0; level < leafCount; level++) {
+            int leaf = leafAtLevel[level];
+            if (leaf < 0 || leaf >= leafCount || levelOfLeaf[leaf] != -1) {
+                throw new IllegalArgumentException("The order is not a permutation of leaves.");
+            }
+            levelOfLeaf[leaf] = level;
+        }
+        if (nodeLimit < 2) {
+            throw new IllegalArgumentException("Node limit must allow the terminals.");
+        }
+
+        Manager manager = new Manager(nodeLimit);
+        int[] bdds = new int[compiled.size()];
+        try {
+            for (int node : compiled.postOrder()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                bdds[node] = manager.build(compiled, node, bdds, levelOfLeaf);
+            }
+        } catch (NodeLimitExceeded e) {
+            return new BddCircuit(compiled, null, FALSE, leafAtLevel);
+        }
+        return new BddCircuit(compiled, manager, bdds[0], leafAtLevel);
+    }
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    // Returns false if the node limit was exceeded and the circuit is evaluated as a tree.
+    public boolean usesDiagram() {
+        return levels != null;
+    }
+
+    // Number of nodes of the diagram, terminals included; 0 without a diagram.
+    public int size() {
+        return levels == null ? 0 : levels.length;
+    }
+
+    public int getLeafCount() {
+        return compiled.getLeafCount();
+    }
+
+    // Evaluates the circuit with its own leaves, calling only the leaves on the path.
+    public boolean evaluate() throws InterruptedException {
+        if (levels == null) {
+            return compiled.evaluate();
+        }
+        int node = root;
+        while (node > TRUE) {
+            node = compiled.getLeaf(leafAtLevel[levels[node]]).getValue() ? highs[node] : lows[node];
+        }
+        return node == TRUE;
+    }
+
+    // Evaluates the circuit with assignment[i] as the value of the i-th leaf.
+    public boolean evaluate(boolean[] assignment) {
+        if (assignment.length != compiled.getLeafCount()) {
+            throw new IllegalArgumentException(
+                    "Expected " + compiled.getLeafCount() + " leaves, got " + assignment.length);
+        }
+        if (levels == null) {
+            return evaluateTree(0, assignment);
+        }
+        int node = root;
+        while (node > TRUE) {
+            node = assignment[leafAtLevel[levels[node]]] ? highs[node] : lows[node];
+        }
+        return node == TRUE;
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    private static int[] identity(int size) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    // The fallback: the tree with short-circuiting, as in CompiledCircuit.evaluate().
+    private boolean evaluateTree(int node, boolean[] assignment) {
+        int count = compiled.getChildCount(node);
+        switch (compiled.getTypeCode(node)) {
+            case CompiledCircuit.LEAF:
+                return assignment[compiled.getLeafIndex(node)];
+            case CompiledCircuit.NOT:
+                return !evaluateTree(compiled.getChild(node, 0), assignment);
+            case CompiledCircuit.AND:
+                for (int i = 0; i < count; i++) {
+                    if (!evaluateTree(compiled.getChild(node, i), assignment)) {
+                        return false;
+                    }
+                }
+                return true;
+            case CompiledCircuit.OR:
+                for (int i = 0; i < count; i++) {
+                    if (evaluateTree(compiled.getChild(node, i), assignment)) {
+                        return true;
+                    }
+                }
+                return false;
+            case CompiledCircuit.IF:
+                return evaluateTree(compiled.getChild(node, 0), assignment)
+                        ? evaluateTree(compiled.getChild(node, 1), assignment)
+                        : evaluateTree(compiled.getChild(node, 2), assignment);
+            case CompiledCircuit.GT:
+            case CompiledCircuit.LT:
+                boolean gt = compiled.getTypeCode(node) == CompiledCircuit.GT;
+                int threshold = compiled.getThreshold(node);
+                int gotTrue = 0;
+                for (int i = 0; i < count; i++) {
+                    int reachable = gotTrue + (count - i);
+                    if (gt ? gotTrue > threshold || reachable <= threshold
+                           : gotTrue >= threshold || reachable < threshold) {
+                        break;
+                    }
+                    if (evaluateTree(compiled.getChild(node, i), assignment)) {
+                        gotTrue++;
+                    }
+                }
+                return gt ? gotTrue > threshold : gotTrue < threshold;
+            default:
+                throw new IllegalStateException("Illegal type code " + compiled.getTypeCode(node));
+        }
+    }
+
+    // Thrown by the manager past the node limit.
+    private static final class NodeLimitExceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private NodeLimitExceeded() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Manager:
+     * Nodes of the diagram under construction, with the unique table
+     * (open addressing over node numbers) and the computed table of
+     * if-then-else (direct-mapped, a newer result replaces an older one).
+     */
+    private static final class Manager {
+
+        private final int nodeLimit;
+
+        private int[] levels = new int[1024];
+        private int[] lows = new int[1024];
+        private int[] highs = new int[1024];
+        private int count;
+
+        private int[] unique = new int[2048];    // 0 marks an empty slot, terminals are never stored.
+
+        // Grows with the unique table: a computed table much smaller than
+        // the diagram makes ite() recompute the same cofactors exponentially often.
+        private static final int MAX_COMPUTED_SIZE = 1 << 22;
+        private int[] computedF = new int[2048];
+        private int[] computedG = new int[2048];
+        private int[] computedH = new int[2048];
+        private int[] computedResult = new int[2048];
+
+        // Recursive ite() calls left; even with a large computed table some
+        // circuits take far longer to build than their diagrams are large.
+        private static final long STEPS_PER_NODE = 64;
+        private long steps;
+
+        private Manager(int nodeLimit) {
+            this.nodeLimit = nodeLimit;
+            this.steps = STEPS_PER_NODE * nodeLimit;
+            // Terminals are below every variable.
+            levels[FALSE] = Integer.MAX_VALUE;
+            levels[TRUE] = Integer.MAX_VALUE;
+            count = 2;
+            Arrays.fill(computedF, -1);
+        }
+
+
+        // The diagram of the node, from the diagrams of its children.
+        private int build(CompiledCircuit compiled, int node, int[] bdds, int[] levelOfLeaf) {
+            int count = compiled.getChildCount(node);
+            switch (compiled.getTypeCode(node)) {
+                case CompiledCircuit.LEAF:
+                    return mk(levelOfLeaf[compiled.getLeafIndex(node)], FALSE, TRUE);
+                case CompiledCircuit.NOT:
+                    return ite(bdds[compiled.getChild(node, 0)], FALSE, TRUE);
+                case CompiledCircuit.AND:
+                    int and = TRUE;
+                    for (int i = 0; i < count; i++) {
+                        and = ite(and, bdds[compiled.getChild(node, i)], FALSE);
+                    }
+                    return and;
+                case CompiledCircuit.OR:
+                    int or = FALSE;
+                    for (int i = 0; i < count; i++) {
+                        or = ite(or, TRUE, bdds[compiled.getChild(node, i)]);
+                    }
+                    return or;
+                case CompiledCircuit.IF:
+                    return ite(bdds[compiled.getChild(node, 0)],
+                            bdds[compiled.getChild(node, 1)],
+                            bdds[compiled.getChild(node, 2)]);
+                case CompiledCircuit.GT:
+                    // More than x <=> at least x + 1.
+                    return atLeast(compiled, node, bdds, compiled.getThreshold(node) + 1);
+                case CompiledCircuit.LT:
+                    // Fewer than x <=> not at least x.
+                    return ite(atLeast(compiled, node, bdds, compiled.getThreshold(node)), FALSE, TRUE);
+                default:
+                    throw new IllegalStateException("Illegal type code " + compiled.getTypeCode(node));
+            }
+        }
+
+        // At least needed children of the node are true.
+        private int atLeast(CompiledCircuit compiled, int node, int[] bdds, int needed) {
+            int n = compiled.getChildCount(node);
+            if (needed <= 0) {
+                return TRUE;
+            } else if (needed > n) {
+                return FALSE;
+            }
+            // next[j]: at least j of children i + 1 .. n - 1 are true.
+            int[] next = new int[needed + 1];
+            int[] current = new int[needed + 1];
+            next[0] = TRUE;
+            for (int j = 1; j <= needed; j++) {
+                next[j] = FALSE;
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                int child = bdds[compiled.getChild(node, i)];
+                current[0] = TRUE;
+                for (int j = 1; j <= needed; j++) {
+                    current[j] = j > n - i ? FALSE : ite(child, next[j - 1], next[j]);
+                }
+                int[] swap = next;
+                next = current;
+                current = swap;
+            }
+            return next[needed];
+        }
+
+        // If f then g else h.
+        private int ite(int f, int g, int h) {
+            if (f == TRUE) {
+                return g;
+            } else if (f == FALSE || g == h) {
+                return h;
+            } else if (g == TRUE && h == FALSE) {
+                return f;
+            }
+            int slot = hash(f, g, h) & (computedF.length - 1);
+            if (computedF[slot] == f && computedG[slot] == g && computedH[slot] == h) {
+                return computedResult[slot];
+            }
+            if (--steps < 0) {
+                throw new NodeLimitExceeded();
+            }
+            int top = Math.min(levels[f], Math.min(levels[g], levels[h]));
+            int low = ite(cofactor(f, top, false), cofactor(g, top, false), cofactor(h, top, false));
+            int high = ite(cofactor(f, top, true), cofactor(g, top, true), cofactor(h, top, true));
+            int result = mk(top, low, high);
+            remember(f, g, h, result);
+            return result;
+        }
+
+        private void remember(int f, int g, int h, int result) {
+            // The table may have grown meanwhile, so the slot is computed again.
+            int slot = hash(f, g, h) & (computedF.length - 1);
+            computedF[slot] = f;
+            computedG[slot] = g;
+            computedH[slot] = h;
+            computedResult[slot] = result;
+        }
+
+        // The diagram with the variable at level fixed to value; the level is at or above the node's.
+        private int cofactor(int node, int level, boolean value) {
+            if (levels[node] != level) {
+                return node;
+            }
+            return value ? highs[node] : lows[node];
+        }
+
+        // The node testing the level, reduced and unique.
+        private int mk(int level, int low, int high) {
+            if (low == high) {
+                return low;
+            }
+            int mask = unique.length - 1;
+            int slot = hash(level, low, high) & mask;
+            while (unique[slot] != 0) {
+                int node = unique[slot];
+                if (levels[node] == level && lows[node] == low && highs[node] == high) {
+                    return node;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (count == nodeLimit) {
+                throw new NodeLimitExceeded();
+            }
+            if (count == levels.length) {
+                levels = Arrays.copyOf(levels, 2 * count);
+                lows = Arrays.copyOf(lows, 2 * count);
+                highs = Arrays.copyOf(highs, 2 * count);
+            }
+            int node = count++;
+            levels[node] = level;
+            lows[node] = low;
+            highs[node] = high;
+            unique[slot] = node;
+            if (2 * count > unique.length) {
+                rehash();
+            }
+            return node;
+        }
+
+        private void rehash() {
+            unique = new int[2 * unique.length];
+            int mask = unique.length - 1;
+            for (int node = 2; node < count; node++) {
+                int slot = hash(levels[node], lows[node], highs[node]) & mask;
+                while (unique[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                unique[slot] = node;
+            }
+            if (computedF.length < Math.min(unique.length, MAX_COMPUTED_SIZE)) {
+                int[] f = computedF;
+                int[] g = computedG;
+                int[] h = computedH;
+                int[] result = computedResult;
+                computedF = new int[2 * f.length];
+                computedG = new int[2 * f.length];
+                computedH = new int[2 * f.length];
+                computedResult = new int[2 * f.length];
+                Arrays.fill(computedF, -1);
+                for (int i = 0; i < f.length; i++) {
+                    if (f[i] != -1) {
+                        remember(f[i], g[i], h[i], result[i]);
+                    }
+                }
+            }
+        }
+
+        private static int hash(int level, int low, int high) {
+            long h = (level * 0x9E3779B97F4A7C15L + low) * 0x9E3779B97F4A7C15L + high;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * BitSlicedCircuit implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.Circuit;
+
+import java.util.BitSet;
+
+/**
+ * Evaluates one circuit shape over many rows of leaf values at once, 64 rows
+ * per long: bit r of a word holds the value of a node in row r. AND, OR, NOT
+ * and IF become bitwise operations on words. GTx and LTx count the true
+ * children of all 64 rows in a bit-parallel counter and compare the counts
+ * with x bit by bit, see ThresholdKernel.
+ * The leaves of the compiled circuit are never called: row values of the
+ * i-th leaf (see CompiledCircuit.getLeaf()) come from the caller, so the
+ * same shape may score any number of input rows. There is no
+ * short-circuiting, every node is computed for all rows of a word.
+ */
+public final class BitSlicedCircuit {
+
+    // Words evaluated together, 1024 rows.
+    private static final int BLOCK = 16;
+
+    private static final ThresholdKernel BEST_KERNEL = ThresholdKernel.best();
+
+    private final int leafCount;
+
+    // Nodes renumbered so that children come before their parents and the root is last.
+    // The layout is that of CompiledCircuit, but with these numbers:
+    private final byte[] types;
+    private final int[] childOffsets;
+    private final int[] children;
+    private final int[] thresholds;
+    private final int[] leafIndices;
+
+    // Bits of the largest count of true children of a GTx or LTx node:
+    private final int counterBits;
+
+    private final ThresholdKernel kernel;
+
+    private BitSlicedCircuit(CompiledCircuit compiled, ThresholdKernel kernel) {
+        this.kernel = kernel;
+        this.leafCount = compiled.getLeafCount();
+        int[] order = compiled.postOrder();
+        int size = order.length;
+        int[] position = new int[compiled.size()];
+        for (int i = 0; i < size; i++) {
+            position[order[i]] = i;
+        }
+        this.types = new byte[size];
+        this.childOffsets = new int[size + 1];
+        this.thresholds = new int[size];
+        this.leafIndices = new int[size];
+        int childCount = 0;
+        for (int node = 0; node < compiled.size(); node++) {
+            childCount += compiled.getChildCount(node);
+        }
+        this.children = new int[childCount];
+        int maxChildren = 0;
+        childCount = 0;
+        for (int i = 0; i < size; i++) {
+            int node = order[i];
+            types[i] = compiled.getTypeCode(node);
+            thresholds[i] = compiled.getThreshold(node);
+            leafIndices[i] = compiled.getLeafIndex(node);
+            childOffsets[i] = childCount;
+            for (int c = 0; c < compiled.getChildCount(node); c++) {
+                children[childCount++] = position[compiled.getChild(node, c)];
+            }
+            maxChildren = Math.max(maxChildren, compiled.getChildCount(node));
+        }
+        childOffsets[size] = childCount;
+        this.counterBits = 32 - Integer.numberOfLeadingZeros(maxChildren);
+    }
+
+    // Flattens the circuit. getArgs() may block, hence the InterruptedException.
+    public static BitSlicedCircuit compile(Circuit circuit) throws InterruptedException {
+        return compile(CompiledCircuit.compile(circuit));
+    }
+
+    // Threshold nodes are evaluated by ThresholdKernel.best().
+    public static BitSlicedCircuit compile(CompiledCircuit compiled) {
+        return new BitSlicedCircuit(compiled, BEST_KERNEL);
+    }
+
+    public static BitSlicedCircuit compile(CompiledCircuit compiled, ThresholdKernel kernel) {
+        return new BitSlicedCircuit(compiled, kernel);
+    }
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * Evaluates the circuit for rows 0 .. rows - 1. Bit r % 64 of
+     * leafWords[i][r / 64] is the value of the i-th leaf in row r.
+     * Returns the rows in which the circuit is true.
+     */
+    public BitSet evaluate(long[][] leafWords, int rows) {
+        if (leafWords.length != leafCount) {
+            throw new IllegalArgumentException("Expected " + leafCount + " leaves, got " + leafWords.length);
+        }
+        int words = (rows + 63) / 64;
+        for (long[] leaf : leafWords) {
+            if (leaf.length < words) {
+                throw new IllegalArgumentException("Expected " + words + " words per leaf.");
+            }
+        }
+        long[] values = new long[types.length * BLOCK];
+        long[] counter = new long[counterBits * BLOCK];
+        long[] result = new long[words];
+        for (int word = 0; word < words; word += BLOCK) {
+            evaluateBlock(leafWords, word, Math.min(BLOCK, words - word), values, counter, result);
+        }
+        if (rows % 64 != 0) {
+            result[words - 1] &= (1L << (rows % 64)) - 1;
+        }
+        return BitSet.valueOf(result);
+    }
+
+    // Evaluates the circuit for every row, assignments[r][i] being the value of the i-th leaf in row r.
+    public BitSet evaluate(boolean[][] assignments) {
+        int rows = assignments.length;
+        for (boolean[] row : assignments) {
+            if (row.length != leafCount) {
+                throw new IllegalArgumentException("Expected " + leafCount + " leaves, got " + row.length);
+            }
+        }
+        // Transposed a word at a time, reading each row once and in order.
+        long[][] leafWords = new long[leafCount][(rows + 63) / 64];
+        long[] bits = new long[leafCount];
+        for (int word = 0; word < leafWords[0].length; word++) {
+            int from = 64 * word;
+            int to = Math.min(rows, from + 64);
+            for (int row = from; row < to; row++) {
+                boolean[] assignment = assignments[row];
+                int shift = row - from;
+                for (int leaf = 0; leaf < leafCount; leaf++) {
+                    bits[leaf] |= (assignment[leaf] ? 1L : 0L) << shift;
+                }
+            }
+            for (int leaf = 0; leaf < leafCount; leaf++) {
+                leafWords[leaf][word] = bits[leaf];
+                bits[leaf] = 0L;
+            }
+        }
+        return evaluate(leafWords, rows);
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    /**
+     * Words first .. first + count - 1, node by node: a block of words of a leaf
+     * is read at once, and the type of a node is looked at once per block.
+     * Values of node i are in values[i * BLOCK .. i * BLOCK + count).
+     */
+    private void evaluateBlock(long[][] leafWords, int first, int count, long[] values, long[] counter,
+                               long[] result) {
+        for (int node = 0; node < types.length; node++) {
+            int from = childOffsets[node];
+            int to = childOffsets[node + 1];
+            int base = node * BLOCK;
+            switch (types[node]) {
+                case CompiledCircuit.LEAF:
+                    System.arraycopy(leafWords[leafIndices[node]], first, values, base, count);
+                    break;
+                case CompiledCircuit.NOT:
+                    int child = children[from] * BLOCK;
+                    for (int w = 0; w < count; w++) {
+                        values[base + w] = ~values[child + w];
+                    }
+                    break;
+                case CompiledCircuit.AND:
+                case CompiledCircuit.OR:
+                    boolean and = types[node] == CompiledCircuit.AND;
+                    System.arraycopy(values, children[from] * BLOCK, values, base, count);
+                    for (int i = from + 1; i < to; i++) {
+                        int other = children[i] * BLOCK;
+                        for (int w = 0; w < count; w++) {
+                            values[base + w] = and ? values[base + w] & values[other + w]
+                                                   : values[base + w] | values[other + w];
+                        }
+                    }
+                    break;
+                case CompiledCircuit.IF:
+                    int condition = children[from] * BLOCK;
+                    int ifTrue = children[from + 1] * BLOCK;
+                    int ifFalse = children[from + 2] * BLOCK;
+                    for (int w = 0; w < count; w++) {
+                        values[base + w] = (values[condition + w] & values[ifTrue + w])
+                                | (~values[condition + w] & values[ifFalse + w]);
+                    }
+                    break;
+                case CompiledCircuit.GT:
+                case CompiledCircuit.LT:
+                    kernel.evaluate(types[node] == CompiledCircuit.GT, thresholds[node], children, from, to,
+                            values, node, BLOCK, count, counter);
+                    break;
+                default:
+                    throw new IllegalStateException("Illegal type code " + types[node]);
+            }
+        }
+        System.arraycopy(values, (types.length - 1) * BLOCK, result, first, count);
+    }
+}
@@ -0,0 +1,370 @@
+/**
+ * BytecodeCircuit implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.Circuit;
+import cp2024.circuit.LeafNode;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Circuit compiled to JVM bytecode: a hidden class (see
+ * MethodHandles.Lookup.defineHiddenClass()) whose code evaluates the circuit
+ * sequentially, with the same short-circuiting as CompiledCircuit.evaluate(),
+ * but with the structure of the circuit in its jumps instead of in arrays.
+ * Every leaf is called from a call site of its own, which the JIT can inline
+ * when it always sees the same leaf class.
+ *
+ * The shape is fixed at compile time, the leaves are not: evaluate(leaves)
+ * takes leaves in the order of CompiledCircuit.getLeaf(), so a compiled
+ * circuit can be evaluated millions of times against different leaf
+ * implementations, also concurrently. Subcircuits are split into methods
+ * small enough for the JIT (HotSpot doesn't compile methods over 8000 bytes
+ * of bytecode); a node object under several parents gets a method of its
+ * own, called by every parent, and is evaluated once per reference.
+ * The class is not kept alive by its defining loader, so it is unloaded
+ * with the last reference to the BytecodeCircuit.
+ * Like CompiledCircuit, meant for leaves that don't block; BytecodeCircuitSolver
+ * hands circuits with blocking leaves to the parallel engine instead.
+ */
+public final class BytecodeCircuit {
+
+    /**
+     * Evaluator:
+     * Implemented by the generated class. Package-private, so only
+     * BytecodeCircuit can call it.
+     */
+    interface Evaluator {
+        boolean evaluate(LeafNode[] leaves) throws InterruptedException;
+    }
+
+    // Nodes inlined into one generated method, about 20 bytes of bytecode each.
+    private static final int METHOD_NODES = 300;
+
+    // Nested threshold nodes inlined into one generated method, each needs a local variable.
+    private static final int METHOD_COUNTERS = 200;
+
+    private static final String LEAF_NODE = "cp2024/circuit/LeafNode";
+    private static final String METHOD_DESCRIPTOR = "([L" + LEAF_NODE + ";)Z";
+
+    private final Evaluator evaluator;
+    private final LeafNode[] leaves;
+    private final boolean mayBlock;
+    private final int methods;
+
+    private BytecodeCircuit(Evaluator evaluator, LeafNode[] leaves, int methods) {
+        this.evaluator = evaluator;
+        this.leaves = leaves;
+        this.methods = methods;
+        boolean mayBlock = false;
+        for (LeafNode leaf : leaves) {
+            mayBlock |= leaf.mayBlock();
+        }
+        this.mayBlock = mayBlock;
+    }
+
+    // Compiles the circuit. getArgs() may block, hence the InterruptedException.
+    public static BytecodeCircuit compile(Circuit circuit) throws InterruptedException {
+        return compile(CompiledCircuit.compile(circuit));
+    }
+
+    /**
+     * Generates and loads the class for the compiled circuit.
+     * Throws IllegalArgumentException if the circuit doesn't fit in the limits
+     * of a class file, e.g. a node with more than about a thousand children.
+     */
+    public static BytecodeCircuit compile(CompiledCircuit compiled) {
+        Generator generator = new Generator(compiled);
+        byte[] bytes = generator.generate();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            Evaluator evaluator = (Evaluator) lookup
+                    .findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+            LeafNode[] leaves = new LeafNode[compiled.getLeafCount()];
+            for (int i = 0; i < leaves.length; i++) {
+                leaves[i] = compiled.getLeaf(i);
+            }
+            return new BytecodeCircuit(evaluator, leaves, generator.methodCount);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Generated class can't be loaded.", e);
+        }
+    }
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    // Evaluates the circuit with its own leaves.
+    public boolean evaluate() throws InterruptedException {
+        return evaluator.evaluate(leaves);
+    }
+
+    /**
+     * Evaluates the circuit with other leaves, leaves[i] taking the place of
+     * the i-th leaf of the compiled circuit. The array is not copied.
+     */
+    public boolean evaluate(LeafNode[] leaves) throws InterruptedException {
+        if (leaves.length != this.leaves.length) {
+            throw new IllegalArgumentException("Expected " + this.leaves.length + " leaves, got " + leaves.length);
+        }
+        return evaluator.evaluate(leaves);
+    }
+
+    public int getLeafCount() {
+        return leaves.length;
+    }
+
+    public LeafNode getLeaf(int leafIndex) {
+        return leaves[leafIndex];
+    }
+
+    // Returns true if some of the compiled leaves may block.
+    public boolean mayBlock() {
+        return mayBlock;
+    }
+
+    // Number of generated methods, besides evaluate().
+    public int getMethodCount() {
+        return methods;
+    }
+
+    // Called on entry to every generated method, like CompiledCircuit checks interrupts at inner nodes.
+    static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Generator:
+     * Writes the class. Method mN evaluates node N of the compiled circuit:
+     *   static boolean mN(LeafNode[] leaves)
+     * and the whole tree below it, except for children that get methods of
+     * their own. Every node is emitted as jumps to a true and a false label.
+     */
+    private static final class Generator {
+
+        private static final String OWNER = "cp2024/solution/BytecodeCircuit$Generated";
+
+        private final CompiledCircuit compiled;
+        private final ClassFileWriter writer = new ClassFileWriter();
+
+        // Number of parents of each node, and of nodes inlined below it (itself included).
+        private final int[] parents;
+        private final int[] weights;
+
+        private final boolean[] hasMethod;
+        private final Deque<Integer> pending = new ArrayDeque<>();
+        private int methodCount = 0;
+
+        private Generator(CompiledCircuit compiled) {
+            this.compiled = compiled;
+            int size = compiled.size();
+            this.parents = new int[size];
+            this.weights = new int[size];
+            this.hasMethod = new boolean[size];
+            for (int node = 0; node < size; node++) {
+                for (int i = 0; i < compiled.getChildCount(node); i++) {
+                    parents[compiled.getChild(node, i)]++;
+                }
+            }
+            // Children have higher numbers than their parents, unless shared.
+            for (int node = size - 1; node >= 0; node--) {
+                weights[node] = 1;
+                for (int i = 0; i < compiled.getChildCount(node); i++) {
+                    int child = compiled.getChild(node, i);
+                    weights[node] += isShared(child) || compiled.getChildCount(child) == 0 ? 1 : weights[child];
+                }
+            }
+        }
+
+        private byte[] generate() {
+            ClassFileWriter.Code constructor = writer.new Code(1, 1);
+            constructor.local(ClassFileWriter.ALOAD, 0);
+            constructor.invoke(ClassFileWriter.INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+            constructor.op(ClassFileWriter.RETURN);
+            writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", constructor);
+
+            ClassFileWriter.Code evaluate = writer.new Code(1, 2);
+            evaluate.local(ClassFileWriter.ALOAD, 1);
+            evaluate.invoke(ClassFileWriter.INVOKESTATIC, OWNER, methodName(0), METHOD_DESCRIPTOR);
+            evaluate.op(ClassFileWriter.IRETURN);
+            writer.addMethod(ClassFileWriter.ACC_PUBLIC, "evaluate", METHOD_DESCRIPTOR, evaluate);
+
+            requestMethod(0);
+            while (!pending.isEmpty()) {
+                generateMethod(pending.poll());
+            }
+            return writer.toByteArray(ClassFileWriter.ACC_FINAL | ClassFileWriter.ACC_SUPER, OWNER,
+                    "java/lang/Object", "cp2024/solution/BytecodeCircuit$Evaluator");
+        }
+
+        private boolean isShared(int node) {
+            return parents[node] > 1 && compiled.getTypeCode(node) != CompiledCircuit.LEAF;
+        }
+
+        private static String methodName(int node) {
+            return "m" + node;
+        }
+
+        private void requestMethod(int node) {
+            if (!hasMethod[node]) {
+                hasMethod[node] = true;
+                pending.add(node);
+            }
+        }
+
+        private void generateMethod(int node) {
+            // Two stack slots at most: array and index, or two ints.
+            ClassFileWriter.Code code = writer.new Code(2, 1);
+            code.invoke(ClassFileWriter.INVOKESTATIC, "cp2024/solution/BytecodeCircuit", "checkInterrupted", "()V");
+            ClassFileWriter.Label ifTrue = new ClassFileWriter.Label();
+            ClassFileWriter.Label ifFalse = new ClassFileWriter.Label();
+            new Method(code).emit(node, ifTrue, ifFalse);
+            code.place(ifTrue);
+            code.pushInt(1);
+            code.op(ClassFileWriter.IRETURN);
+            code.place(ifFalse);
+            code.pushInt(0);
+            code.op(ClassFileWriter.IRETURN);
+            writer.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC,
+                    methodName(node), METHOD_DESCRIPTOR, code);
+            methodCount++;
+        }
+
+        /**
+         * Method:
+         * Code of one generated method and the number of nodes inlined so far.
+         */
+        private final class Method {
+
+            private final ClassFileWriter.Code code;
+            private int inlined = 0;
+            private int counters = 0;   // Threshold nodes being emitted, their counters are in use.
+
+            private Method(ClassFileWriter.Code code) {
+                this.code = code;
+            }
+
+            // Jumps to ifTrue or ifFalse, depending on the value of the node.
+            private void emit(int node, ClassFileWriter.Label ifTrue, ClassFileWriter.Label ifFalse) {
+                inlined++;
+                int count = compiled.getChildCount(node);
+                switch (compiled.getTypeCode(node)) {
+                    case CompiledCircuit.LEAF:
+                        code.local(ClassFileWriter.ALOAD, 0);
+                        code.pushInt(compiled.getLeafIndex(node));
+                        code.op(ClassFileWriter.AALOAD);
+                        code.invoke(ClassFileWriter.INVOKEVIRTUAL, LEAF_NODE, "getValue", "()Z");
+                        branch(ifTrue, ifFalse);
+                        break;
+                    case CompiledCircuit.NOT:
+                        emitChild(compiled.getChild(node, 0), ifFalse, ifTrue);
+                        break;
+                    case CompiledCircuit.AND:
+                        for (int i = 0; i < count; i++) {
+                            ClassFileWriter.Label next = new ClassFileWriter.Label();
+                            emitChild(compiled.getChild(node, i), next, ifFalse);
+                            code.place(next);
+                        }
+                        code.jump(ClassFileWriter.GOTO, ifTrue);
+                        break;
+                    case CompiledCircuit.OR:
+                        for (int i = 0; i < count; i++) {
+                            ClassFileWriter.Label next = new ClassFileWriter.Label();
+                            emitChild(compiled.getChild(node, i), ifTrue, next);
+                            code.place(next);
+                        }
+                        code.jump(ClassFileWriter.GOTO, ifFalse);
+                        break;
+                    case CompiledCircuit.IF:
+                        ClassFileWriter.Label chosenTrue = new ClassFileWriter.Label();
+                        ClassFileWriter.Label chosenFalse = new ClassFileWriter.Label();
+                        emitChild(compiled.getChild(node, 0), chosenTrue, chosenFalse);
+                        code.place(chosenTrue);
+                        emitChild(compiled.getChild(node, 1), ifTrue, ifFalse);
+                        code.place(chosenFalse);
+                        emitChild(compiled.getChild(node, 2), ifTrue, ifFalse);
+                        break;
+                    case CompiledCircuit.GT:
+                    case CompiledCircuit.LT:
+                        emitThreshold(node, ifTrue, ifFalse);
+                        break;
+                    default:
+                        throw new IllegalStateException("Illegal type code " + compiled.getTypeCode(node));
+                }
+            }
+
+            // Inlines the child, or calls its method if it's shared or too big for this one.
+            private void emitChild(int child, ClassFileWriter.Label ifTrue, ClassFileWriter.Label ifFalse) {
+                boolean leaf = compiled.getTypeCode(child) == CompiledCircuit.LEAF;
+                if (!leaf && (isShared(child) || inlined + weights[child] > METHOD_NODES
+                        || counters == METHOD_COUNTERS)) {
+                    requestMethod(child);
+                    code.local(ClassFileWriter.ALOAD, 0);
+                    code.invoke(ClassFileWriter.INVOKESTATIC, OWNER, methodName(child), METHOD_DESCRIPTOR);
+                    branch(ifTrue, ifFalse);
+                } else {
+                    emit(child, ifTrue, ifFalse);
+                }
+            }
+
+            // Consumes a boolean from the stack.
+            private void branch(ClassFileWriter.Label ifTrue, ClassFileWriter.Label ifFalse) {
+                code.jump(ClassFileWriter.IFNE, ifTrue);
+                code.jump(ClassFileWriter.GOTO, ifFalse);
+            }
+
+            // GTx (more than x true children) or LTx (fewer than x), stops once the count decides it.
+            private void emitThreshold(int node, ClassFileWriter.Label ifTrue, ClassFileWriter.Label ifFalse) {
+                boolean gt = compiled.getTypeCode(node) == CompiledCircuit.GT;
+                int threshold = compiled.getThreshold(node);
+                int count = compiled.getChildCount(node);
+                // Decided before any child is evaluated.
+                if (gt ? threshold < 0 : threshold > count) {
+                    code.jump(ClassFileWriter.GOTO, ifTrue);
+                    return;
+                }
+                if (gt ? threshold >= count : threshold <= 0) {
+                    code.jump(ClassFileWriter.GOTO, ifFalse);
+                    return;
+                }
+                // Once the node is decided, the counter is never read again.
+                int gotTrue = 1 + counters++;
+                code.useLocal(gotTrue);
+                code.pushInt(0);
+                code.local(ClassFileWriter.ISTORE, gotTrue);
+                for (int i = 0; i < count; i++) {
+                    ClassFileWriter.Label yes = new ClassFileWriter.Label();
+                    ClassFileWriter.Label no = new ClassFileWriter.Label();
+                    emitChild(compiled.getChild(node, i), yes, no);
+                    code.place(yes);
+                    code.iinc(gotTrue, 1);
+                    code.place(no);
+                    int remaining = count - 1 - i;
+                    // Decided by the children so far: GT by more than threshold true ones,
+                    // LT by threshold true ones.
+                    code.local(ClassFileWriter.ILOAD, gotTrue);
+                    code.pushInt(threshold);
+                    code.jump(gt ? ClassFileWriter.IF_ICMPGT : ClassFileWriter.IF_ICMPGE, gt ? ifTrue : ifFalse);
+                    if (remaining == 0) {
+                        code.jump(ClassFileWriter.GOTO, gt ? ifFalse : ifTrue);
+                    } else {
+                        // Decided even if all remaining children are true.
+                        code.local(ClassFileWriter.ILOAD, gotTrue);
+                        code.pushInt(threshold - remaining);
+                        code.jump(gt ? ClassFileWriter.IF_ICMPLE : ClassFileWriter.IF_ICMPLT, gt ? ifFalse : ifTrue);
+                    }
+                }
+                counters--;
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * BytecodeCircuitSolver implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.Circuit;
+import cp2024.circuit.CircuitSolver;
+import cp2024.circuit.CircuitValue;
+import cp2024.circuit.LeafNode;
+
+import cp2024.demo.BrokenCircuitValue;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Solver that evaluates circuits in their BytecodeCircuit form, each on a
+ * thread of its own. Generating a class costs far more than one evaluation,
+ * so circuits solved many times should be compiled up front and passed to
+ * solve(BytecodeCircuit) or solve(BytecodeCircuit, LeafNode[]).
+ * solve(Circuit) compiles the circuit only if none of its leaves may block
+ * (see LeafNode.mayBlock()); circuits with slow leaves are handed to
+ * a ParallelCircuitSolver, so that their leaves still run in parallel.
+ * Circuits too large for a class file are evaluated as a CompiledCircuit.
+ */
+public class BytecodeCircuitSolver implements CircuitSolver {
+
+    // One thread per circuit being evaluated:
+    private final ExecutorService executor;
+
+    // Solves circuits with leaves that may block:
+    private final ParallelCircuitSolver fallback;
+
+    // Computations that haven't finished yet, so that stop() can cancel them:
+    private final Set<FutureTask<Boolean>> inFlight = ConcurrentHashMap.newKeySet();
+
+    // Solver state:
+    private volatile boolean acceptComputations = true;
+
+    public BytecodeCircuitSolver() {
+        this(SolverOptions.defaults());
+    }
+
+    // Options of the solver of circuits with leaves that may block.
+    public BytecodeCircuitSolver(SolverOptions fallbackOptions) {
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.fallback = new ParallelCircuitSolver(fallbackOptions);
+    }
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    @Override
+    public CircuitValue solve(Circuit c) {
+        return submit(() -> {
+            CompiledCircuit compiled = CompiledCircuit.compile(c);
+            for (int i = 0; i < compiled.getLeafCount(); i++) {
+                if (compiled.getLeaf(i).mayBlock()) {
+                    // Stopping the solver or cancelling the value interrupts this thread,
+                    // which passes it on to the circuit in the fallback solver.
+                    CircuitValue value = fallback.solve(c);
+                    try {
+                        return value.getValue();
+                    } catch (InterruptedException e) {
+                        value.cancel();
+                        throw e;
+                    }
+                }
+            }
+            BytecodeCircuit bytecode;
+            try {
+                bytecode = BytecodeCircuit.compile(compiled);
+            } catch (IllegalArgumentException e) {
+                return compiled.evaluate();
+            }
+            return bytecode.evaluate();
+        });
+    }
+
+    // Evaluates an already compiled circuit with its own leaves, sequentially.
+    public CircuitValue solve(BytecodeCircuit circuit) {
+        return submit(circuit::evaluate);
+    }
+
+    // Evaluates an already compiled circuit with other leaves, see BytecodeCircuit.evaluate(LeafNode[]).
+    public CircuitValue solve(BytecodeCircuit circuit, LeafNode[] leaves) {
+        return submit(() -> circuit.evaluate(leaves));
+    }
+
+    @Override
+    public void stop() {
+        acceptComputations = false;
+        for (FutureTask<Boolean> computation : inFlight) {
+            computation.cancel(true);
+        }
+        executor.shutdownNow();
+        fallback.stop();
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    private CircuitValue submit(Callable<Boolean> evaluation) {
+        if (!acceptComputations) {
+            return new BrokenCircuitValue();
+        }
+
+        FutureTask<Boolean> computation = new FutureTask<>(evaluation) {
+            @Override
+            protected void done() {
+                inFlight.remove(this);
+            }
+        };
+        inFlight.add(computation);
+        try {
+            executor.execute(computation);
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(computation);
+            return new BrokenCircuitValue();
+        }
+
+        // stop() might have missed the computation.
+        if (!acceptComputations) {
+            computation.cancel(true);
+        }
+        return new FutureCircuitValue(computation);
+    }
+}
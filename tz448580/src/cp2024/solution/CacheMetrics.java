@@ -0,0 +1,69 @@
+/**
+ * CacheMetrics implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+/**
+ * Snapshot of the state of a cache of the solvers.
+ * The size and weight are taken at the time of the snapshot, counters are
+ * totals since the cache was created.
+ */
+public final class CacheMetrics {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    private final long weight;
+
+    CacheMetrics(long hits, long misses, long evictions, int size, long weight) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    // Lookups answered from the cache.
+    public long getHits() {
+        return hits;
+    }
+
+    // Lookups that had to compute the value.
+    public long getMisses() {
+        return misses;
+    }
+
+    // Fraction of lookups answered from the cache, 0 if there were none.
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    // Entries removed to stay within the budget.
+    public long getEvictions() {
+        return evictions;
+    }
+
+    // Entries in the cache.
+    public int getSize() {
+        return size;
+    }
+
+    // Estimated memory taken by the entries, in bytes.
+    public long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits
+                + " misses=" + misses
+                + " hitRate=" + String.format("%.3f", getHitRate())
+                + " evictions=" + evictions
+                + " size=" + size
+                + " weight=" + weight + "B";
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * CachingLeafNode implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.LeafNode;
+
+import java.time.Duration;
+
+/**
+ * Leaf that takes the value of another leaf from a LeafValueCache, with
+ * its own time to live. Works with every solver, unlike the solver-wide
+ * SolverOptions.leafCache(), which uses the default time to live of the cache.
+ */
+public class CachingLeafNode extends LeafNode {
+
+    private final LeafNode leaf;
+    private final Duration ttl;
+    private final LeafValueCache cache;
+
+    public CachingLeafNode(LeafNode leaf, Duration ttl, LeafValueCache cache) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Time to live must be positive.");
+        }
+        this.leaf = leaf;
+        this.ttl = ttl;
+        this.cache = cache;
+    }
+
+    @Override
+    public boolean getValue() throws InterruptedException {
+        return cache.getValue(leaf, ttl);
+    }
+
+    // A cached value doesn't block, but a load might.
+    @Override
+    public boolean mayBlock() {
+        return leaf.mayBlock();
+    }
+
+    @Override
+    public Object getCacheKey() {
+        return leaf.getCacheKey();
+    }
+
+    public LeafNode getLeaf() {
+        return leaf;
+    }
+}
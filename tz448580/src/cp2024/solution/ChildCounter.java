@@ -0,0 +1,121 @@
+/**
+ * ChildCounter implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.CircuitNode;
+import cp2024.circuit.NodeType;
+import cp2024.circuit.ThresholdNode;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free aggregation of the values of children of a NOT, AND, OR, GTx
+ * or LTx node. Both counts live in one atomic long (true values in the upper
+ * half, false values in the lower half), so a child value costs a single
+ * atomic addition and no allocation. The child whose value decides the node
+ * wins the decided flag and is the only caller that gets the value of the
+ * node back; it is responsible for publishing it to the parent.
+ */
+public class ChildCounter implements NodeAggregator {
+
+    private static final long ONE_TRUE = 1L << 32;
+    private static final long ONE_FALSE = 1L;
+
+    private final NodeType type;
+    private final int threshold;
+    private final int numChildren;
+    private final AtomicLong counts;
+    private final AtomicBoolean decided;
+
+    public ChildCounter(NodeType type, int threshold, int numChildren) {
+        if (type == NodeType.LEAF || type == NodeType.IF) {
+            throw new IllegalArgumentException("Illegal type " + type);
+        }
+        this.type = type;
+        this.threshold = threshold;
+        this.numChildren = numChildren;
+        this.counts = new AtomicLong(0);
+        this.decided = new AtomicBoolean(false);
+    }
+
+    // Creates a counter for the node, whose children are already known.
+    public static ChildCounter forNode(CircuitNode node, int numChildren) {
+        int threshold = node instanceof ThresholdNode ? ((ThresholdNode) node).getThreshold() : 0;
+        return new ChildCounter(node.getType(), threshold, numChildren);
+    }
+
+    /**
+     * Returns the value of the node if it follows from the number of children
+     * alone (GTx with at most x children, LTx with fewer than x), null otherwise.
+     */
+    @Override
+    public Boolean valueWithoutChildren() {
+        if (type == NodeType.GT && numChildren <= threshold) {
+            return false;
+        } else if (type == NodeType.LT && numChildren < threshold) {
+            return true;
+        }
+        return null;
+    }
+
+    /**
+     * Counts the value of a child. Returns the value of the node if this call
+     * decided it, null otherwise (also if the node was decided before).
+     */
+    public Boolean offer(boolean value) {
+        long after = counts.addAndGet(value ? ONE_TRUE : ONE_FALSE);
+        Boolean result = decide((int) (after >>> 32), (int) after);
+        if (result == null || decided.get() || !decided.compareAndSet(false, true)) {
+            return null;
+        }
+        return result;
+    }
+
+    @Override
+    public Boolean offer(int childIndex, boolean value) {
+        return offer(value);
+    }
+
+    @Override
+    public boolean isDecided() {
+        return decided.get();
+    }
+
+    // Once a decision is possible, every later snapshot of the counts gives the same one.
+    private Boolean decide(int gotTrue, int gotFalse) {
+        switch (type) {
+            case NOT:
+                return gotFalse > 0;
+            case AND:
+                if (gotFalse > 0) {
+                    return false;
+                }
+                return gotTrue == numChildren ? true : null;
+            case OR:
+                if (gotTrue > 0) {
+                    return true;
+                }
+                return gotFalse == numChildren ? false : null;
+            case GT:
+                if (gotTrue > threshold) {
+                    return true;
+                } else if (gotFalse >= numChildren - threshold) {
+                    return false;
+                }
+                return null;
+            case LT:
+                if (gotTrue >= threshold) {
+                    return false;
+                } else if (gotFalse > numChildren - threshold) {
+                    return true;
+                }
+                return null;
+            default:
+                throw new RuntimeException("Illegal type " + type);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * CircuitSimplifier implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.Circuit;
+import cp2024.circuit.CircuitNode;
+import cp2024.circuit.LeafNode;
+import cp2024.circuit.NodeType;
+import cp2024.circuit.ThresholdNode;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rewrites a circuit into an equivalent one with fewer nodes, before it is solved:
+ * - constant leaves (deterministic and non-blocking, see LeafNode.getCacheKey()
+ *   and LeafNode.mayBlock()) are evaluated and folded into their parents,
+ * - NOT(NOT(x)) becomes x, NOT(GTx) becomes LT(x+1) and NOT(LTx) becomes GT(x-1),
+ * - AND/OR children of the same type are flattened into their parent,
+ * - GTx and LTx nodes decided by the number of children become constants,
+ * - IF with a constant condition becomes the chosen branch, IF(c, x, x) becomes x,
+ *   IF(c, true, false) becomes c and IF(c, false, true) becomes NOT(c).
+ * Leaves that may block are never called, so the pass is cheap; nodes shared by
+ * several parents are simplified once. A CircuitSimplifier keeps the total
+ * number of nodes removed by all its simplify() calls, and may be used by many threads.
+ */
+public class CircuitSimplifier {
+
+    // Constant leaves of simplified circuits:
+    private static final CircuitNode TRUE = CircuitNode.mk(true);
+    private static final CircuitNode FALSE = CircuitNode.mk(false);
+
+    /**
+     * Result:
+     * The simplified circuit and the number of distinct nodes before and after.
+     */
+    public static final class Result {
+
+        private final Circuit circuit;
+        private final int nodesBefore;
+        private final int nodesAfter;
+
+        private Result(Circuit circuit, int nodesBefore, int nodesAfter) {
+            this.circuit = circuit;
+            this.nodesBefore = nodesBefore;
+            this.nodesAfter = nodesAfter;
+        }
+
+        public Circuit getCircuit() {
+            return circuit;
+        }
+
+        public int getNodesBefore() {
+            return nodesBefore;
+        }
+
+        public int getNodesAfter() {
+            return nodesAfter;
+        }
+
+        public int getRemovedNodes() {
+            return nodesBefore - nodesAfter;
+        }
+    }
+
+    // Statistics of all simplify() calls:
+    private final LongAdder circuits = new LongAdder();
+    private final LongAdder removedNodes = new LongAdder();
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    public Result simplify(Circuit circuit) throws InterruptedException {
+        Pass pass = new Pass();
+        CircuitNode root = pass.simplify(circuit.getRoot());
+        Result result = new Result(new Circuit(root), pass.simplified.size(), countNodes(root));
+        circuits.increment();
+        removedNodes.add(result.getRemovedNodes());
+        return result;
+    }
+
+    // Number of circuits simplified so far.
+    public long getSimplifiedCircuits() {
+        return circuits.sum();
+    }
+
+    // Number of nodes removed from all circuits so far.
+    public long getRemovedNodes() {
+        return removedNodes.sum();
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    // Number of distinct nodes of the circuit.
+    private static int countNodes(CircuitNode root) throws InterruptedException {
+        Map<CircuitNode, Boolean> seen = new IdentityHashMap<>();
+        List<CircuitNode> stack = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            CircuitNode node = stack.remove(stack.size() - 1);
+            if (seen.put(node, Boolean.TRUE) == null) {
+                for (CircuitNode arg : node.getArgs()) {
+                    stack.add(arg);
+                }
+            }
+        }
+        return seen.size();
+    }
+
+    private static boolean isConstant(CircuitNode node) {
+        return node == TRUE || node == FALSE;
+    }
+
+    private static CircuitNode constant(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    private static int threshold(CircuitNode node) {
+        return ((ThresholdNode) node).getThreshold();
+    }
+
+    /**
+     * Pass:
+     * A single simplify() call, which remembers the result for every node of
+     * the original circuit.
+     */
+    private static final class Pass {
+
+        private final Map<CircuitNode, CircuitNode> simplified = new IdentityHashMap<>();
+
+        private CircuitNode simplify(CircuitNode node) throws InterruptedException {
+            CircuitNode known = simplified.get(node);
+            if (known != null) {
+                return known;
+            }
+            CircuitNode result;
+            if (node.getType() == NodeType.LEAF) {
+                result = simplifyLeaf((LeafNode) node);
+            } else {
+                CircuitNode[] args = node.getArgs();
+                CircuitNode[] children = new CircuitNode[args.length];
+                for (int i = 0; i < args.length; i++) {
+                    children[i] = simplify(args[i]);
+                }
+                result = switch (node.getType()) {
+                    case NOT -> simplifyNot(children[0]);
+                    case AND, OR -> simplifyAndOr(node.getType(), children);
+                    case GT, LT -> simplifyThreshold(node.getType(), threshold(node), children);
+                    case IF -> simplifyIf(children[0], children[1], children[2]);
+                    default -> throw new RuntimeException("Illegal type " + node.getType());
+                };
+            }
+            simplified.put(node, result);
+            return result;
+        }
+
+        private CircuitNode simplifyLeaf(LeafNode leaf) throws InterruptedException {
+            if (leaf.mayBlock() || leaf.getCacheKey() == null) {
+                return leaf;
+            }
+            return constant(leaf.getValue());
+        }
+
+        private CircuitNode simplifyNot(CircuitNode child) throws InterruptedException {
+            if (isConstant(child)) {
+                return constant(child == FALSE);
+            }
+            switch (child.getType()) {
+                case NOT:
+                    return child.getArgs()[0];
+                case GT:
+                    // Not more than x <=> fewer than x + 1.
+                    return CircuitNode.mk(NodeType.LT, threshold(child) + 1, child.getArgs());
+                case LT:
+                    // Simplified LTx has x > 0. Not fewer than x <=> more than x - 1.
+                    return CircuitNode.mk(NodeType.GT, threshold(child) - 1, child.getArgs());
+                default:
+                    return CircuitNode.mk(NodeType.NOT, child);
+            }
+        }
+
+        private CircuitNode simplifyAndOr(NodeType type, CircuitNode[] children) throws InterruptedException {
+            // The value that decides the node, and the one that doesn't matter.
+            CircuitNode deciding = constant(type == NodeType.OR);
+            CircuitNode neutral = constant(type == NodeType.AND);
+            List<CircuitNode> kept = new ArrayList<>(children.length);
+            for (CircuitNode child : children) {
+                if (child == deciding) {
+                    return deciding;
+                } else if (child == neutral) {
+                    continue;
+                }
+                if (child.getType() == type) {
+                    // Already simplified, so its children are not of the same type.
+                    for (CircuitNode grandchild : child.getArgs()) {
+                        kept.add(grandchild);
+                    }
+                } else {
+                    kept.add(child);
+                }
+            }
+            if (kept.isEmpty()) {
+                return neutral;
+            } else if (kept.size() == 1) {
+                return kept.get(0);
+            }
+            return CircuitNode.mk(type, kept.toArray(new CircuitNode[0]));
+        }
+
+        private CircuitNode simplifyThreshold(NodeType type, int threshold, CircuitNode[] children) {
+            List<CircuitNode> kept = new ArrayList<>(children.length);
+            for (CircuitNode child : children) {
+                if (child == TRUE) {
+                    // One true child less to count, and one less needed.
+                    threshold--;
+                } else if (child != FALSE) {
+                    kept.add(child);
+                }
+            }
+            int arity = kept.size();
+            if (type == NodeType.GT) {
+                if (threshold < 0) {
+                    return TRUE;
+                } else if (threshold >= arity) {
+                    return FALSE;
+                }
+            } else {
+                if (threshold <= 0) {
+                    return FALSE;
+                } else if (threshold > arity) {
+                    return TRUE;
+                }
+            }
+            return CircuitNode.mk(type, threshold, kept.toArray(new CircuitNode[0]));
+        }
+
+        private CircuitNode simplifyIf(CircuitNode condition, CircuitNode ifTrue, CircuitNode ifFalse)
+                throws InterruptedException {
+            if (isConstant(condition)) {
+                return condition == TRUE ? ifTrue : ifFalse;
+            }
+            if (ifTrue == ifFalse) {
+                return ifTrue;
+            }
+            if (ifTrue == TRUE && ifFalse == FALSE) {
+                return condition;
+            }
+            if (ifTrue == FALSE && ifFalse == TRUE) {
+                return simplifyNot(condition);
+            }
+            return CircuitNode.mk(NodeType.IF, condition, ifTrue, ifFalse);
+        }
+    }
+}
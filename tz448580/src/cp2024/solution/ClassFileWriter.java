@@ -0,0 +1,375 @@
+/**
+ * ClassFileWriter implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal writer of class files, just enough for BytecodeCircuit: a constant
+ * pool, methods with code, and forward jumps through labels. Classes are
+ * written in version 49 (Java 5), which the JVM verifies by type inference,
+ * so no stack map frames have to be computed.
+ * Methods that don't fit in the limits of the format (64 KiB of code, jumps
+ * of at most 32 KiB) are rejected with IllegalArgumentException.
+ */
+final class ClassFileWriter {
+
+    // Access flags:
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    // Opcodes:
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ISTORE = 0x36;
+    static final int IINC = 0x84;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IF_ICMPLT = 0xa1;
+    static final int IF_ICMPGE = 0xa2;
+    static final int IF_ICMPGT = 0xa3;
+    static final int IF_ICMPLE = 0xa4;
+    static final int GOTO = 0xa7;
+    static final int IRETURN = 0xac;
+    static final int RETURN = 0xb1;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+
+    private static final int VERSION = 49;
+
+    // Constant pool tags:
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+    private int poolCount = 1;
+
+    private final List<byte[]> methods = new ArrayList<>();
+
+    // ------------------------------------ Constant pool ------------------------------------
+
+    int utf8(String value) {
+        return entry("U" + value, out -> {
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(value);
+        });
+    }
+
+    int integer(int value) {
+        return entry("I" + value, out -> {
+            out.writeByte(CONSTANT_INTEGER);
+            out.writeInt(value);
+        });
+    }
+
+    // Internal name, e.g. java/lang/Object.
+    int classRef(String name) {
+        int nameIndex = utf8(name);
+        return entry("C" + name, out -> {
+            out.writeByte(CONSTANT_CLASS);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        int classIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + " " + descriptor, out -> {
+            out.writeByte(CONSTANT_NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return entry("M" + owner + "." + name + descriptor, out -> {
+            out.writeByte(CONSTANT_METHODREF);
+            out.writeShort(classIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int entry(String key, EntryWriter writer) {
+        Integer known = poolIndices.get(key);
+        if (known != null) {
+            return known;
+        }
+        if (poolCount == 0xffff) {
+            throw new IllegalArgumentException("Constant pool too large.");
+        }
+        try {
+            writer.write(poolOut);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolIndices.put(key, poolCount);
+        return poolCount++;
+    }
+
+    // --------------------------------------- Methods ---------------------------------------
+
+    void addMethod(int access, String name, String descriptor, Code code) {
+        byte[] bytes = code.resolve();
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int codeIndex = utf8("Code");
+        ByteArrayOutputStream method = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(method);
+        try {
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            out.writeShort(1);                          // Attributes: Code.
+            out.writeShort(codeIndex);
+            out.writeInt(12 + bytes.length);
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0);                          // Exception table.
+            out.writeShort(0);                          // Attributes of the code.
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methods.add(method.toByteArray());
+    }
+
+    byte[] toByteArray(int access, String name, String superName, String... interfaces) {
+        int thisIndex = classRef(name);
+        int superIndex = classRef(superName);
+        int[] interfaceIndices = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceIndices[i] = classRef(interfaces[i]);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(access);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(interfaceIndices.length);
+            for (int index : interfaceIndices) {
+                out.writeShort(index);
+            }
+            out.writeShort(0);                          // Fields.
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);                          // Attributes of the class.
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // ----------------------------------------- Code -----------------------------------------
+
+    /**
+     * Label:
+     * Position in the code, jumps to it may come before it is placed.
+     */
+    static final class Label {
+
+        private int position = -1;
+        private final List<int[]> jumps = new ArrayList<>();  // {opcode position, operand position}
+        private boolean used = false;                          // Known to the code.
+    }
+
+    /**
+     * Code:
+     * Instructions of a single method. maxStack is given by the caller,
+     * maxLocals grows with useLocal().
+     */
+    final class Code {
+
+        private byte[] bytes = new byte[256];
+        private int length = 0;
+        private final List<Label> labels = new ArrayList<>();
+        private final int maxStack;
+        private int maxLocals;
+
+        // The last two instructions if they are jumps, {opcode position, operand position},
+        // for place() to remove jumps to the next instruction:
+        private int[] lastJump = null;
+        private Label lastTarget = null;
+        private int[] previousJump = null;
+        private Label previousTarget = null;
+
+        Code(int maxStack, int parameterSlots) {
+            this.maxStack = maxStack;
+            this.maxLocals = parameterSlots;
+        }
+
+        // Makes room for a local variable in the slot.
+        void useLocal(int slot) {
+            maxLocals = Math.max(maxLocals, slot + 1);
+        }
+
+        void op(int opcode) {
+            instruction();
+            u1(opcode);
+        }
+
+        void pushInt(int value) {
+            instruction();
+            if (value >= -1 && value <= 5) {
+                u1(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(value);
+            } else {
+                u1(LDC_W);
+                u2(integer(value));
+            }
+        }
+
+        // iload, istore, aload with a slot.
+        void local(int opcode, int slot) {
+            if (slot > 0xff) {
+                throw new IllegalArgumentException("Too many local variables.");
+            }
+            instruction();
+            u1(opcode);
+            u1(slot);
+        }
+
+        void iinc(int slot, int increment) {
+            if (slot > 0xff) {
+                throw new IllegalArgumentException("Too many local variables.");
+            }
+            instruction();
+            u1(IINC);
+            u1(slot);
+            u1(increment);
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            instruction();
+            u1(opcode);
+            u2(methodRef(owner, name, descriptor));
+        }
+
+        // Conditional jumps (ifeq .. if_acmpne) and goto.
+        void jump(int opcode, Label label) {
+            previousJump = lastJump;
+            previousTarget = lastTarget;
+            lastJump = new int[] {length, length + 1};
+            lastTarget = label;
+            label.jumps.add(lastJump);
+            use(label);
+            u1(opcode);
+            u2(0);
+        }
+
+        /**
+         * Places the label at the next instruction. A goto to the label right
+         * before it is removed; so is the goto in
+         *   if<cond> label; goto other; label:
+         * which becomes if<!cond> other.
+         */
+        void place(Label label) {
+            if (lastJump != null && lastJump[0] == length - 3 && bytes[lastJump[0]] == (byte) GOTO) {
+                if (lastTarget == label) {
+                    label.jumps.remove(label.jumps.size() - 1);
+                    length -= 3;
+                } else if (previousJump != null && previousTarget == label && previousJump[0] == length - 6
+                        && bytes[previousJump[0]] != (byte) GOTO) {
+                    int opcode = bytes[previousJump[0]] & 0xff;
+                    label.jumps.remove(label.jumps.size() - 1);
+                    lastTarget.jumps.remove(lastTarget.jumps.size() - 1);
+                    lastTarget.jumps.add(previousJump);
+                    bytes[previousJump[0]] = (byte) (((opcode - IFEQ) ^ 1) + IFEQ);
+                    length -= 3;
+                }
+            }
+            instruction();
+            label.position = length;
+            use(label);
+        }
+
+        // Jumps before other instructions and labels are left as they are.
+        private void instruction() {
+            lastJump = null;
+            lastTarget = null;
+            previousJump = null;
+            previousTarget = null;
+        }
+
+        private void use(Label label) {
+            if (!label.used) {
+                label.used = true;
+                labels.add(label);
+            }
+        }
+
+        private byte[] resolve() {
+            if (length > 0xffff) {
+                throw new IllegalArgumentException("Method too large.");
+            }
+            for (Label label : labels) {
+                for (int[] jump : label.jumps) {
+                    if (label.position < 0) {
+                        throw new IllegalStateException("Label was never placed.");
+                    }
+                    int offset = label.position - jump[0];
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new IllegalArgumentException("Jump too far.");
+                    }
+                    bytes[jump[1]] = (byte) (offset >> 8);
+                    bytes[jump[1] + 1] = (byte) offset;
+                }
+            }
+            byte[] code = new byte[length];
+            System.arraycopy(bytes, 0, code, 0, length);
+            return code;
+        }
+
+        private void u1(int value) {
+            if (length == bytes.length) {
+                byte[] grown = new byte[2 * bytes.length];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/**
+ * CompiledCircuit implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.Circuit;
+import cp2024.circuit.CircuitNode;
+import cp2024.circuit.LeafNode;
+import cp2024.circuit.NodeType;
+import cp2024.circuit.ThresholdNode;
+import cp2024.circuit.VariableLeaf;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Circuit flattened into primitive arrays (struct of arrays).
+ * Nodes are numbered in pre-order, so the root is node 0. For node i:
+ * - types[i] is one of the type codes below,
+ * - its children are children[childOffsets[i] .. childOffsets[i + 1]),
+ * - thresholds[i] is the threshold of a GTx or LTx node (0 otherwise),
+ * - leafIndices[i] is the position of a leaf in the leaf table (-1 for inner nodes).
+ * getArgs() is called once per node during compilation; evaluate() then works
+ * by index only and allocates nothing, so a compiled circuit may be evaluated
+ * any number of times (also concurrently, as long as its leaves allow it).
+ * A node object that appears under several parents is compiled once, and
+ * evaluate() of such a DAG computes it once per call, in a memo of one byte
+ * per node (the only allocation, made only for circuits with shared nodes).
+ * Leaves that are VariableLeaf objects take their values from the bindings
+ * passed to evaluate(boolean[]), so a single compiled circuit serves any
+ * number of inputs, from any number of threads.
+ */
+public final class CompiledCircuit {
+
+    // Type codes, in the order of NodeType.
+    public static final byte LEAF = 0;
+    public static final byte GT = 1;
+    public static final byte LT = 2;
+    public static final byte AND = 3;
+    public static final byte OR = 4;
+    public static final byte NOT = 5;
+    public static final byte IF = 6;
+
+    private static final NodeType[] NODE_TYPES = NodeType.values();
+
+    private final byte[] types;
+    private final int[] childOffsets;
+    private final int[] children;
+    private final int[] thresholds;
+    private final int[] leafIndices;
+    private final LeafNode[] leaves;
+    private final int[] variables;    // Index of the variable of each leaf, -1 if not a VariableLeaf.
+    private final int variableCount;
+    private final boolean shared;
+
+    // Values of the memo of evaluate():
+    private static final byte UNKNOWN = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+
+    private CompiledCircuit(byte[] types, int[] childOffsets, int[] children, int[] thresholds,
+                            int[] leafIndices, LeafNode[] leaves, int[] variables, boolean shared) {
+        this.types = types;
+        this.childOffsets = childOffsets;
+        this.children = children;
+        this.thresholds = thresholds;
+        this.leafIndices = leafIndices;
+        this.leaves = leaves;
+        this.variables = variables;
+        int variableCount = 0;
+        for (int variable : variables) {
+            variableCount = Math.max(variableCount, variable + 1);
+        }
+        this.variableCount = variableCount;
+        this.shared = shared;
+    }
+
+    // Flattens the circuit. getArgs() may block, hence the InterruptedException.
+    public static CompiledCircuit compile(Circuit circuit) throws InterruptedException {
+        Builder builder = new Builder();
+        builder.add(circuit.getRoot());
+        return builder.build();
+    }
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    /**
+     * Evaluates the circuit sequentially, with short-circuiting: children are
+     * visited in order and a node stops as soon as its value is decided.
+     * Throws InterruptedException if a leaf does or the thread is interrupted.
+     */
+    public boolean evaluate() throws InterruptedException {
+        return evaluate(0);
+    }
+
+    // Evaluates the subcircuit rooted at the given node.
+    public boolean evaluate(int node) throws InterruptedException {
+        return evaluate(node, shared ? new byte[types.length] : null, null);
+    }
+
+    /**
+     * Evaluates the circuit like evaluate(), with bindings[i] as the value of
+     * every VariableLeaf of index i. The array is only read, but must not be
+     * changed during the call.
+     */
+    public boolean evaluate(boolean[] bindings) throws InterruptedException {
+        if (bindings.length < variableCount) {
+            throw new IllegalArgumentException(
+                    "Expected " + variableCount + " bindings, got " + bindings.length);
+        }
+        return evaluate(0, shared ? new byte[types.length] : null, bindings);
+    }
+
+    // Returns true if some node has more than one parent.
+    public boolean hasSharedNodes() {
+        return shared;
+    }
+
+    // Number of nodes of the circuit.
+    public int size() {
+        return types.length;
+    }
+
+    public byte getTypeCode(int node) {
+        return types[node];
+    }
+
+    public NodeType getType(int node) {
+        return NODE_TYPES[types[node]];
+    }
+
+    public int getChildCount(int node) {
+        return childOffsets[node + 1] - childOffsets[node];
+    }
+
+    public int getChild(int node, int index) {
+        return children[childOffsets[node] + index];
+    }
+
+    public int getThreshold(int node) {
+        return thresholds[node];
+    }
+
+    // Position of the leaf node in the leaf table, -1 for inner nodes.
+    public int getLeafIndex(int node) {
+        return leafIndices[node];
+    }
+
+    public int getLeafCount() {
+        return leaves.length;
+    }
+
+    public LeafNode getLeaf(int leafIndex) {
+        return leaves[leafIndex];
+    }
+
+    // Index of the variable of a VariableLeaf, -1 for other leaves.
+    public int getVariable(int leafIndex) {
+        return variables[leafIndex];
+    }
+
+    // Number of bindings evaluate(boolean[]) needs: the highest variable index plus 1.
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+    // Nodes with children before parents, so the root is last; a shared node appears once.
+    int[] postOrder() {
+        int size = types.length;
+        int[] order = new int[size];
+        int length = 0;
+        boolean[] visited = new boolean[size];
+        // Explicit stack of nodes and the index of their next child.
+        int[] stack = new int[size];
+        int[] nextChild = new int[size];
+        int depth = 0;
+        stack[depth++] = 0;
+        visited[0] = true;
+        while (depth > 0) {
+            int node = stack[depth - 1];
+            if (nextChild[node] < getChildCount(node)) {
+                int child = getChild(node, nextChild[node]++);
+                if (!visited[child]) {
+                    visited[child] = true;
+                    stack[depth++] = child;
+                }
+            } else {
+                order[length++] = node;
+                depth--;
+            }
+        }
+        return order;
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    // Values of nodes already computed are kept in memo, which is null for trees.
+    // Bindings are null if variables are not bound.
+    private boolean evaluate(int node, byte[] memo, boolean[] bindings) throws InterruptedException {
+        if (memo != null && memo[node] != UNKNOWN) {
+            return memo[node] == TRUE;
+        }
+        boolean value = evaluateNode(node, memo, bindings);
+        if (memo != null) {
+            memo[node] = value ? TRUE : FALSE;
+        }
+        return value;
+    }
+
+    private boolean evaluateNode(int node, byte[] memo, boolean[] bindings) throws InterruptedException {
+        byte type = types[node];
+        if (type == LEAF) {
+            int leafIndex = leafIndices[node];
+            if (bindings != null && variables[leafIndex] >= 0) {
+                return bindings[variables[leafIndex]];
+            }
+            return leaves[leafIndex].getValue();
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        int from = childOffsets[node];
+        int to = childOffsets[node + 1];
+        switch (type) {
+            case NOT:
+                return !evaluate(children[from], memo, bindings);
+            case AND:
+                for (int i = from; i < to; i++) {
+                    if (!evaluate(children[i], memo, bindings)) {
+                        return false;
+                    }
+                }
+                return true;
+            case OR:
+                for (int i = from; i < to; i++) {
+                    if (evaluate(children[i], memo, bindings)) {
+                        return true;
+                    }
+                }
+                return false;
+            case IF:
+                return evaluate(children[from], memo, bindings)
+                        ? evaluate(children[from + 1], memo, bindings)
+                        : evaluate(children[from + 2], memo, bindings);
+            case GT:
+            case LT:
+                return evaluateThreshold(type, thresholds[node], from, to, memo, bindings);
+            default:
+                throw new IllegalStateException("Illegal type code " + type);
+        }
+    }
+
+    // GTx (more than x true children) or LTx (fewer than x), stops once the count decides it.
+    private boolean evaluateThreshold(byte type, int threshold, int from, int to, byte[] memo,
+                                      boolean[] bindings) throws InterruptedException {
+        int gotTrue = 0;
+        for (int i = from; i < to; i++) {
+            // The most true children the node can still get:
+            int reachable = gotTrue + (to - i);
+            if (type == GT ? gotTrue > threshold || reachable <= threshold
+                           : gotTrue >= threshold || reachable < threshold) {
+                break;
+            }
+            if (evaluate(children[i], memo, bindings)) {
+                gotTrue++;
+            }
+        }
+        // Children that weren't visited can't change the outcome.
+        return type == GT ? gotTrue > threshold : gotTrue < threshold;
+    }
+
+    /**
+     * Builder:
+     * Assigns pre-order numbers to the nodes. Child slots of a node are reserved
+     * when the node is added, so the slots of node i + 1 start right after those
+     * of node i and a single offset array describes all children. A node
+     * object seen before keeps its number.
+     */
+    private static final class Builder {
+
+        private byte[] types = new byte[16];
+        private int[] childOffsets = new int[17];
+        private int[] children = new int[16];
+        private int[] thresholds = new int[16];
+        private int[] leafIndices = new int[16];
+        private LeafNode[] leaves = new LeafNode[16];
+        private int nodeCount = 0;
+        private int childCount = 0;
+        private int leafCount = 0;
+        private final Map<CircuitNode, Integer> ids = new IdentityHashMap<>();
+        private boolean shared = false;
+
+        // Adds the node with its subtree and returns its number.
+        private int add(CircuitNode node) throws InterruptedException {
+            Integer known = ids.get(node);
+            if (known != null) {
+                shared = true;
+                return known;
+            }
+            CircuitNode[] args = node.getArgs();
+            int id = nodeCount++;
+            ids.put(node, id);
+            if (id == types.length) {
+                int capacity = 2 * types.length;
+                types = Arrays.copyOf(types, capacity);
+                childOffsets = Arrays.copyOf(childOffsets, capacity + 1);
+                thresholds = Arrays.copyOf(thresholds, capacity);
+                leafIndices = Arrays.copyOf(leafIndices, capacity);
+            }
+            types[id] = typeCode(node.getType());
+            childOffsets[id] = childCount;
+            thresholds[id] = node instanceof ThresholdNode ? ((ThresholdNode) node).getThreshold() : 0;
+            if (node instanceof LeafNode) {
+                if (leafCount == leaves.length) {
+                    leaves = Arrays.copyOf(leaves, 2 * leaves.length);
+                }
+                leafIndices[id] = leafCount;
+                leaves[leafCount++] = (LeafNode) node;
+                return id;
+            }
+            leafIndices[id] = -1;
+
+            int first = childCount;
+            childCount += args.length;
+            if (childCount > children.length) {
+                children = Arrays.copyOf(children, Math.max(childCount, 2 * children.length));
+            }
+            for (int i = 0; i < args.length; i++) {
+                // The array may be reallocated while the child is added.
+                int child = add(args[i]);
+                children[first + i] = child;
+            }
+            return id;
+        }
+
+        private CompiledCircuit build() {
+            childOffsets[nodeCount] = childCount;
+            int[] variables = new int[leafCount];
+            for (int i = 0; i < leafCount; i++) {
+                variables[i] = leaves[i] instanceof VariableLeaf ? ((VariableLeaf) leaves[i]).getIndex() : -1;
+            }
+            return new CompiledCircuit(
+                    Arrays.copyOf(types, nodeCount),
+                    Arrays.copyOf(childOffsets, nodeCount + 1),
+                    Arrays.copyOf(children, childCount),
+                    Arrays.copyOf(thresholds, nodeCount),
+                    Arrays.copyOf(leafIndices, nodeCount),
+                    Arrays.copyOf(leaves, leafCount),
+                    variables,
+                    shared);
+        }
+
+        private static byte typeCode(NodeType type) {
+            return switch (type) {
+                case LEAF -> LEAF;
+                case GT -> GT;
+                case LT -> LT;
+                case AND -> AND;
+                case OR -> OR;
+                case NOT -> NOT;
+                case IF -> IF;
+            };
+        }
+    }
+}
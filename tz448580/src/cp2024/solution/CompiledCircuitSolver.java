@@ -0,0 +1,118 @@
+/**
+ * CompiledCircuitSolver implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.Circuit;
+import cp2024.circuit.CircuitSolver;
+import cp2024.circuit.CircuitValue;
+
+import cp2024.demo.BrokenCircuitValue;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Solver that evaluates each circuit sequentially in its CompiledCircuit form,
+ * on a thread of its own. The circuit is flattened once per solve(Circuit);
+ * circuits solved many times should be compiled up front and passed to
+ * solve(CompiledCircuit), which then only walks primitive arrays. Circuits
+ * over VariableLeaf inputs are compiled once and solved with bindings.
+ * Suited to circuits whose leaves don't block: a leaf that does holds up
+ * the whole circuit, since children are not evaluated in parallel.
+ */
+public class CompiledCircuitSolver implements CircuitSolver {
+
+    // One thread per circuit being evaluated:
+    private final ExecutorService executor;
+
+    // Computations that haven't finished yet, so that stop() can cancel them:
+    private final Set<FutureTask<Boolean>> inFlight = ConcurrentHashMap.newKeySet();
+
+    // Solver state:
+    private volatile boolean acceptComputations = true;
+
+    public CompiledCircuitSolver() {
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    @Override
+    public CircuitValue solve(Circuit c) {
+        return submit(() -> CompiledCircuit.compile(c).evaluate());
+    }
+
+    // Evaluates an already compiled circuit.
+    public CircuitValue solve(CompiledCircuit compiled) {
+        return submit(compiled::evaluate);
+    }
+
+    /**
+     * Evaluates the circuit with bindings[i] as the value of its VariableLeaf
+     * of index i. The bindings are copied, so the caller may reuse the array
+     * right away. Compiling the circuit first (solve(CompiledCircuit, boolean[]))
+     * lets every request share it instead of rebuilding it.
+     */
+    public CircuitValue solve(Circuit c, boolean[] bindings) {
+        boolean[] bound = bindings.clone();
+        return submit(() -> CompiledCircuit.compile(c).evaluate(bound));
+    }
+
+    public CircuitValue solve(CompiledCircuit compiled, boolean[] bindings) {
+        if (bindings.length < compiled.getVariableCount()) {
+            throw new IllegalArgumentException(
+                    "Expected " + compiled.getVariableCount() + " bindings, got " + bindings.length);
+        }
+        boolean[] bound = bindings.clone();
+        return submit(() -> compiled.evaluate(bound));
+    }
+
+    @Override
+    public void stop() {
+        acceptComputations = false;
+        for (FutureTask<Boolean> computation : inFlight) {
+            computation.cancel(true);
+        }
+        executor.shutdownNow();
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    private CircuitValue submit(Callable<Boolean> evaluation) {
+        if (!acceptComputations) {
+            return new BrokenCircuitValue();
+        }
+
+        FutureTask<Boolean> computation = new FutureTask<>(evaluation) {
+            @Override
+            protected void done() {
+                inFlight.remove(this);
+            }
+        };
+        inFlight.add(computation);
+        try {
+            executor.execute(computation);
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(computation);
+            return new BrokenCircuitValue();
+        }
+
+        // stop() might have missed the computation.
+        if (!acceptComputations) {
+            computation.cancel(true);
+        }
+        return new FutureCircuitValue(computation);
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * ConditionState implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free state machine of an IF node, whose three children (condition,
+ * 'true' branch, 'false' branch) are evaluated at the same time.
+ * The state keeps two bits per child (unknown, false or true) and a decided
+ * bit in a single atomic int. The value of the node is chosen as soon as:
+ * - the condition is true and the 'true' branch is known,
+ * - the condition is false and the 'false' branch is known,
+ * - both branches are known and equal (the condition doesn't matter).
+ */
+public class ConditionState implements NodeAggregator {
+
+    private static final int UNKNOWN = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int CHILD_MASK = 3;
+    private static final int DECIDED = 1 << 6;
+
+    private final AtomicInteger state;
+
+    public ConditionState() {
+        this.state = new AtomicInteger(0);
+    }
+
+    @Override
+    public Boolean offer(int childIndex, boolean value) {
+        while (true) {
+            int current = state.get();
+            if ((current & DECIDED) != 0) {
+                return null;
+            }
+            int next = current | ((value ? TRUE : FALSE) << (2 * childIndex));
+            Boolean result = decide(next);
+            if (result != null) {
+                next |= DECIDED;
+            }
+            if (state.compareAndSet(current, next)) {
+                return result;
+            }
+        }
+    }
+
+    @Override
+    public boolean isDecided() {
+        return (state.get() & DECIDED) != 0;
+    }
+
+    private static Boolean decide(int state) {
+        int condition = state & CHILD_MASK;
+        int positive = (state >> 2) & CHILD_MASK;
+        int negative = (state >> 4) & CHILD_MASK;
+
+        // Condition is evaluated and we choose 'true' path:
+        if (condition == TRUE && positive != UNKNOWN) {
+            return positive == TRUE;
+        }
+        // Condition is evaluated and we choose 'false' path:
+        if (condition == FALSE && negative != UNKNOWN) {
+            return negative == TRUE;
+        }
+        // Lazy evaluation:
+        if (positive != UNKNOWN && positive == negative) {
+            return positive == TRUE;
+        }
+        return null;
+    }
+}
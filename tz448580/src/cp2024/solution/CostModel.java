@@ -0,0 +1,174 @@
+/**
+ * CostModel implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.CircuitNode;
+import cp2024.circuit.LeafNode;
+import cp2024.circuit.NodeType;
+import cp2024.circuit.ThresholdNode;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Expected cost and probability of being true of subcircuits evaluated
+ * sequentially, built from LeafStatistics, and the order of children that
+ * minimizes the expected cost: the classic ascending cost / P(short-circuit)
+ * for AND (short-circuited by false) and OR (by true). GTx and LTx stop as
+ * soon as the count decides them either way, so their children go by
+ * ascending cost. Leaves are assumed independent; a leaf that is not known
+ * at all costs 1 ns and is true with probability 1/2, so it is tried early
+ * and measured. Estimates are computed once per node object, so a CostModel
+ * is meant for a single solve (or for circuits whose leaves' statistics
+ * don't change meanwhile). Not thread-safe.
+ */
+public final class CostModel {
+
+    private static final double UNKNOWN_NANOS = 1;
+    private static final double UNKNOWN_PROBABILITY = 0.5;
+
+    /**
+     * Estimate:
+     * Of a node, with the order its children are visited in (null for the circuit's order).
+     */
+    private static final class Estimate {
+
+        private final double nanos;
+        private final double trueProbability;
+        private final int[] order;
+
+        private Estimate(double nanos, double trueProbability, int[] order) {
+            this.nanos = nanos;
+            this.trueProbability = trueProbability;
+            this.order = order;
+        }
+    }
+
+    private final LeafStatistics statistics;
+    private final Map<CircuitNode, Estimate> estimates = new IdentityHashMap<>();
+
+    public CostModel(LeafStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    // Expected time to evaluate the subcircuit in the order of order(), in nanoseconds.
+    public double getExpectedNanos(CircuitNode node) throws InterruptedException {
+        return estimate(node).nanos;
+    }
+
+    public double getTrueProbability(CircuitNode node) throws InterruptedException {
+        return estimate(node).trueProbability;
+    }
+
+    // Indices of the children of the node in the order to visit them, null for the circuit's order.
+    public int[] order(CircuitNode node) throws InterruptedException {
+        return estimate(node).order;
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    private Estimate estimate(CircuitNode node) throws InterruptedException {
+        Estimate estimate = estimates.get(node);
+        if (estimate == null) {
+            estimate = compute(node);
+            estimates.put(node, estimate);
+        }
+        return estimate;
+    }
+
+    private Estimate compute(CircuitNode node) throws InterruptedException {
+        if (node.getType() == NodeType.LEAF) {
+            LeafNode leaf = (LeafNode) node;
+            double nanos = statistics.getExpectedNanos(leaf);
+            return Double.isNaN(nanos)
+                    ? new Estimate(UNKNOWN_NANOS, UNKNOWN_PROBABILITY, null)
+                    : new Estimate(nanos, statistics.getTrueProbability(leaf), null);
+        }
+        CircuitNode[] args = node.getArgs();
+        int n = args.length;
+        double[] nanos = new double[n];
+        double[] probabilities = new double[n];
+        for (int i = 0; i < n; i++) {
+            Estimate child = estimate(args[i]);
+            nanos[i] = child.nanos;
+            probabilities[i] = child.trueProbability;
+        }
+        switch (node.getType()) {
+            case NOT:
+                return new Estimate(nanos[0], 1 - probabilities[0], null);
+            case IF:
+                return new Estimate(
+                        nanos[0] + probabilities[0] * nanos[1] + (1 - probabilities[0]) * nanos[2],
+                        probabilities[0] * probabilities[1] + (1 - probabilities[0]) * probabilities[2],
+                        null);
+            case AND:
+            case OR: {
+                boolean and = node.getType() == NodeType.AND;
+                double[] scores = new double[n];
+                for (int i = 0; i < n; i++) {
+                    double shortCircuit = and ? 1 - probabilities[i] : probabilities[i];
+                    scores[i] = nanos[i] / Math.max(shortCircuit, LeafStatistics.MIN_PROBABILITY);
+                }
+                int[] order = LeafStatistics.sortedBy(scores);
+                // A child is visited only if those before it didn't short-circuit.
+                double expected = 0;
+                double reached = 1;
+                for (int i : order) {
+                    expected += reached * nanos[i];
+                    reached *= and ? probabilities[i] : 1 - probabilities[i];
+                }
+                return new Estimate(expected, and ? reached : 1 - reached, order);
+            }
+            case GT:
+            case LT: {
+                int[] order = LeafStatistics.sortedBy(nanos);
+                return threshold(node.getType() == NodeType.GT, ((ThresholdNode) node).getThreshold(),
+                        order, nanos, probabilities);
+            }
+            default:
+                throw new RuntimeException("Illegal type " + node.getType());
+        }
+    }
+
+    /**
+     * GTx or LTx over children visited in the order: distribution of the number
+     * of true children so far, from which the probability that the node is
+     * still undecided before each child (and so pays for it) is read.
+     */
+    private static Estimate threshold(boolean gt, int threshold, int[] order, double[] nanos, double[] probabilities) {
+        int n = order.length;
+        double[] counts = new double[n + 1];
+        counts[0] = 1;
+        double expected = 0;
+        for (int step = 0; step < n; step++) {
+            int remaining = n - step;
+            double undecided = 0;
+            for (int k = 0; k <= step; k++) {
+                boolean open = gt ? k <= threshold && k + remaining > threshold
+                                  : k < threshold && k + remaining >= threshold;
+                if (open) {
+                    undecided += counts[k];
+                }
+            }
+            int child = order[step];
+            expected += undecided * nanos[child];
+            double p = probabilities[child];
+            for (int k = step + 1; k > 0; k--) {
+                counts[k] = counts[k] * (1 - p) + counts[k - 1] * p;
+            }
+            counts[0] *= 1 - p;
+        }
+        double trueProbability = 0;
+        for (int k = 0; k <= n; k++) {
+            if (gt ? k > threshold : k < threshold) {
+                trueProbability += counts[k];
+            }
+        }
+        return new Estimate(expected, trueProbability, order);
+    }
+}
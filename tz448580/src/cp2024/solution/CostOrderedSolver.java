@@ -0,0 +1,139 @@
+/**
+ * CostOrderedSolver implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.Circuit;
+import cp2024.circuit.CircuitNode;
+import cp2024.circuit.CircuitSolver;
+import cp2024.circuit.CircuitValue;
+import cp2024.circuit.LeafNode;
+import cp2024.circuit.NodeType;
+import cp2024.circuit.ThresholdNode;
+
+import cp2024.demo.BrokenCircuitValue;
+import cp2024.demo.ImmediateCircuitValue;
+
+/**
+ * Sequential solver for single-core deployments: evaluates the circuit in
+ * the caller's thread, like cp2024.demo.SequentialSolver, but visits the
+ * children of every node in the order of a CostModel over the statistics,
+ * which are updated with every leaf call:
+ *
+ *   LeafStatistics statistics = new LeafStatistics();
+ *   CircuitSolver solver = new CostOrderedSolver(statistics);
+ *
+ * Costs may be pre-loaded with LeafStatistics.record() or learned from
+ * earlier solves. AND and OR stop at the first child that short-circuits
+ * them, GTx and LTx as soon as the children left can't change the count's
+ * verdict. Values are the same as in the circuit's order; only the number
+ * of leaf calls changes.
+ */
+public class CostOrderedSolver implements CircuitSolver {
+
+    private final LeafStatistics statistics;
+
+    // Solver state:
+    private volatile boolean acceptComputations = true;
+
+    public CostOrderedSolver(LeafStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    @Override
+    public CircuitValue solve(Circuit c) {
+        if (!acceptComputations) {
+            return new BrokenCircuitValue();
+        }
+
+        try {
+            return new ImmediateCircuitValue(solve(c.getRoot(), new CostModel(statistics)));
+        } catch (InterruptedException e) {
+            return new BrokenCircuitValue();
+        }
+    }
+
+    @Override
+    public void stop() {
+        acceptComputations = false;
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    private boolean solve(CircuitNode node, CostModel model) throws InterruptedException {
+        if (node.getType() == NodeType.LEAF) {
+            return leafValue((LeafNode) node);
+        }
+
+        CircuitNode[] args = ordered(node, model);
+        switch (node.getType()) {
+            case NOT:
+                return !solve(args[0], model);
+            case IF:
+                return solve(args[0], model) ? solve(args[1], model) : solve(args[2], model);
+            case AND:
+                for (CircuitNode arg : args) {
+                    if (!solve(arg, model)) {
+                        return false;
+                    }
+                }
+                return true;
+            case OR:
+                for (CircuitNode arg : args) {
+                    if (solve(arg, model)) {
+                        return true;
+                    }
+                }
+                return false;
+            case GT:
+            case LT:
+                return solveThreshold(node.getType() == NodeType.GT, ((ThresholdNode) node).getThreshold(),
+                        args, model);
+            default:
+                throw new RuntimeException("Illegal type " + node.getType());
+        }
+    }
+
+    // Stops once the children left can't change the result.
+    private boolean solveThreshold(boolean gt, int threshold, CircuitNode[] args, CostModel model)
+            throws InterruptedException {
+        int gotTrue = 0;
+        for (int i = 0; i < args.length; i++) {
+            int remaining = args.length - i;
+            boolean open = gt ? gotTrue <= threshold && gotTrue + remaining > threshold
+                              : gotTrue < threshold && gotTrue + remaining >= threshold;
+            if (!open) {
+                break;
+            }
+            if (solve(args[i], model)) {
+                gotTrue++;
+            }
+        }
+        return gt ? gotTrue > threshold : gotTrue < threshold;
+    }
+
+    private boolean leafValue(LeafNode leaf) throws InterruptedException {
+        long start = System.nanoTime();
+        boolean value = leaf.getValue();
+        statistics.record(leaf, System.nanoTime() - start, value);
+        return value;
+    }
+
+    // Children in the order to visit them.
+    private static CircuitNode[] ordered(CircuitNode node, CostModel model) throws InterruptedException {
+        CircuitNode[] args = node.getArgs();
+        int[] order = model.order(node);
+        if (order == null) {
+            return args;
+        }
+        CircuitNode[] reordered = new CircuitNode[args.length];
+        for (int i = 0; i < args.length; i++) {
+            reordered[i] = args[order[i]];
+        }
+        return reordered;
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * FairTaskPool implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Fixed pool of threads that picks the next node task by:
+ * 1. Priority: a task of a higher priority always goes first.
+ * 2. Weighted fair queuing between tenants within a priority: every tenant
+ *    has a virtual time that grows by 1/weight per started task, and the
+ *    tenant with the smallest one goes next. A tenant that has been idle
+ *    starts at the current virtual time, so it can't save up for a burst.
+ * 3. FIFO within a tenant and priority.
+ * A tenant at its cap of running nodes (or leaves, for leaf tasks) is
+ * skipped until one of its tasks finishes. Inner-node tasks and leaf tasks
+ * wait in separate queues, so a tenant at its leaf cap can still expand
+ * its inner nodes. Cancelled tasks are dropped when they reach the head of
+ * their queue, without charging their tenant, and the lane of a tenant
+ * with nothing queued is dropped once it has no virtual time to carry over.
+ */
+class FairTaskPool {
+
+    private final List<Thread> workers;
+
+    // All fields below are protected by the pool's monitor.
+    private final Map<Tenant, Lane> lanes;
+    private double virtualTime;
+    private boolean shutdown;
+
+    FairTaskPool(int poolSize, String threadName) {
+        this.workers = new ArrayList<>();
+        this.lanes = new HashMap<>();
+        this.virtualTime = 0;
+        this.shutdown = false;
+        for (int i = 1; i <= poolSize; i++) {
+            Thread worker = new Thread(this::work, threadName + "-" + i);
+            // Pool threads must not keep the JVM alive if stop() is never called.
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Lane:
+     * Queued tasks of one tenant, by priority. Protected by the pool's monitor.
+     */
+    private static final class Lane {
+
+        private final Tenant tenant;
+        private final List<ArrayDeque<FairTask>> inner;    // Indexed by Priority.ordinal().
+        private final List<ArrayDeque<FairTask>> leaves;
+        private int queued;
+        private double virtualTime;
+
+        private Lane(Tenant tenant) {
+            this.tenant = tenant;
+            this.inner = new ArrayList<>();
+            this.leaves = new ArrayList<>();
+            for (int i = 0; i < Priority.values().length; i++) {
+                inner.add(new ArrayDeque<>());
+                leaves.add(new ArrayDeque<>());
+            }
+            this.queued = 0;
+            this.virtualTime = 0;
+        }
+
+        // Returns the queue whose head may run now at the given priority, null if none.
+        private ArrayDeque<FairTask> runnable(int priority) {
+            dropCancelled(inner.get(priority));
+            dropCancelled(leaves.get(priority));
+            if (!inner.get(priority).isEmpty() && tenant.canRun(false)) {
+                return inner.get(priority);
+            }
+            if (!leaves.get(priority).isEmpty() && tenant.canRun(true)) {
+                return leaves.get(priority);
+            }
+            return null;
+        }
+
+        private void dropCancelled(ArrayDeque<FairTask> queue) {
+            while (!queue.isEmpty() && queue.peek().isCancelled()) {
+                queue.poll();
+                queued--;
+                tenant.nodeDequeued();
+            }
+        }
+    }
+
+    /**
+     * FairTask:
+     * Node task waiting in a lane, or running on a pool thread.
+     */
+    private static final class FairTask extends FutureTask<Void> {
+
+        private final Lane lane;
+        private final boolean leaf;
+
+        private FairTask(Runnable task, Lane lane, boolean leaf) {
+            super(task, null);
+            this.lane = lane;
+            this.leaf = leaf;
+        }
+    }
+
+    Future<?> submit(Runnable task, Priority priority, Tenant tenant, boolean leaf) {
+        synchronized (this) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Pool is shut down.");
+            }
+            Lane lane = lanes.computeIfAbsent(tenant, Lane::new);
+            FairTask fairTask = new FairTask(task, lane, leaf);
+            if (lane.queued == 0) {
+                // An idle tenant doesn't get credit for the time it was idle.
+                lane.virtualTime = Math.max(lane.virtualTime, virtualTime);
+            }
+            (leaf ? lane.leaves : lane.inner).get(priority.ordinal()).add(fairTask);
+            lane.queued++;
+            tenant.nodeQueued();
+            notify();
+            return fairTask;
+        }
+    }
+
+    // Interrupts all pool threads, queued tasks are dropped.
+    void shutdownNow() {
+        synchronized (this) {
+            shutdown = true;
+            lanes.clear();
+            notifyAll();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    private void work() {
+        while (true) {
+            FairTask task;
+            synchronized (this) {
+                while ((task = next()) == null) {
+                    if (shutdown) {
+                        return;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Only shutdownNow() interrupts idle workers.
+                    }
+                }
+            }
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    task.lane.tenant.nodeFinished(task.leaf);
+                    // The tenant may be below its caps again.
+                    notify();
+                }
+                // Interrupts of a cancelled task must not leak to the next one.
+                Thread.interrupted();
+            }
+        }
+    }
+
+    // Takes the next task to run, null if none can run now. Must be called with the monitor held.
+    private FairTask next() {
+        if (shutdown) {
+            return null;
+        }
+        for (int priority = 0; priority < Priority.values().length; priority++) {
+            Lane chosen = null;
+            ArrayDeque<FairTask> chosenQueue = null;
+            Iterator<Lane> lanesLeft = lanes.values().iterator();
+            while (lanesLeft.hasNext()) {
+                Lane lane = lanesLeft.next();
+                if (lane.queued == 0 || (chosen != null && lane.virtualTime >= chosen.virtualTime)) {
+                    // A new lane of the tenant would start at the current virtual time anyway.
+                    if (lane.queued == 0 && lane.virtualTime <= virtualTime) {
+                        lanesLeft.remove();
+                    }
+                    continue;
+                }
+                ArrayDeque<FairTask> queue = lane.runnable(priority);
+                if (queue != null) {
+                    chosen = lane;
+                    chosenQueue = queue;
+                }
+            }
+            if (chosen != null) {
+                FairTask task = chosenQueue.poll();
+                chosen.queued--;
+                virtualTime = chosen.virtualTime;
+                chosen.virtualTime += 1.0 / chosen.tenant.getWeight();
+                chosen.tenant.nodeDequeued();
+                chosen.tenant.nodeStarted(task.leaf);
+                return task;
+            }
+        }
+        return null;
+    }
+}
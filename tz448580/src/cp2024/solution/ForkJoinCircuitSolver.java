@@ -0,0 +1,319 @@
+/**
+ * ForkJoinCircuitSolver implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.Circuit;
+import cp2024.circuit.CircuitNode;
+import cp2024.circuit.CircuitSolver;
+import cp2024.circuit.CircuitValue;
+import cp2024.circuit.LeafNode;
+import cp2024.circuit.NodeType;
+
+import cp2024.demo.BrokenCircuitValue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Solver that evaluates circuits on a work-stealing ForkJoinPool.
+ * Every node is a RecursiveTask: it forks its children, evaluates the first
+ * one in its own thread (as in cp2024.utils.SumComputation) and joins the rest.
+ * Children report their values to the parent as soon as they finish, so
+ * a node is decided even if the child it is currently joining is slow;
+ * the remaining children are then cancelled cooperatively. Leaves that may
+ * block run inside ForkJoinPool.managedBlock(), so the pool compensates for
+ * workers blocked in LeafNode.getValue().
+ */
+public class ForkJoinCircuitSolver implements CircuitSolver {
+
+    private final ForkJoinPool pool;
+
+    // Root tasks that haven't finished yet, so that stop() can cancel them:
+    private final Set<NodeComputation> inFlight = ConcurrentHashMap.newKeySet();
+
+    // Solver state:
+    private volatile boolean acceptComputations = true;
+
+    public ForkJoinCircuitSolver() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ForkJoinCircuitSolver(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    @Override
+    public CircuitValue solve(Circuit c) {
+        if (!acceptComputations) {
+            return new BrokenCircuitValue();
+        }
+
+        NodeComputation root = new RootComputation(c.getRoot());
+        inFlight.add(root);
+        try {
+            pool.execute(root);
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(root);
+            return new BrokenCircuitValue();
+        }
+
+        // stop() might have missed the computation.
+        if (!acceptComputations) {
+            root.stopSubtree();
+        }
+        return new FutureCircuitValue(root);
+    }
+
+    @Override
+    public void stop() {
+        acceptComputations = false;
+        for (NodeComputation root : inFlight) {
+            root.stopSubtree();
+        }
+        pool.shutdownNow();
+    }
+
+    // ----------------------------------- Node computations -----------------------------------
+
+    /**
+     * NodeComputation:
+     * Evaluation of a single node. The computed value is returned and also
+     * passed to the parent with childDone(); a stopped computation returns null.
+     * Locks of different computations are never held at the same time.
+     */
+    private static class NodeComputation extends RecursiveTask<Boolean> {
+
+        private static final long serialVersionUID = 1L;
+        private static final NodeComputation[] NO_CHILDREN = new NodeComputation[0];
+
+        private final CircuitNode node;
+        private final NodeComputation parent;
+        private final int index;            // Position among the parent's children.
+        private NodeAggregator aggregator;  // Decides the node from the values of its children.
+
+        // All fields below are protected by the computation's monitor.
+        private NodeComputation[] children;
+        private Thread blockedThread;       // Thread running LeafNode.getValue().
+        private boolean stopped;
+        private Boolean value;              // Value decided by the children.
+
+        public NodeComputation(CircuitNode node, NodeComputation parent, int index) {
+            this.node = node;
+            this.parent = parent;
+            this.index = index;
+            this.children = NO_CHILDREN;
+            this.blockedThread = null;
+            this.stopped = false;
+            this.value = null;
+        }
+
+        @Override
+        protected Boolean compute() {
+            Boolean result = node.getType() == NodeType.LEAF ? computeLeaf() : computeInner();
+            if (result != null && parent != null) {
+                parent.childDone(index, result);
+            }
+            return result;
+        }
+
+        // Cooperatively stops this computation and all its descendants.
+        // Returns false if it was already stopped.
+        boolean stopSubtree() {
+            NodeComputation[] toStop;
+            synchronized (this) {
+                if (stopped) {
+                    return false;
+                }
+                stopped = true;
+                toStop = children;
+                if (blockedThread != null) {
+                    blockedThread.interrupt();
+                }
+            }
+            for (NodeComputation child : toStop) {
+                child.stopSubtree();
+            }
+            return true;
+        }
+
+        private Boolean computeLeaf() {
+            LeafNode leaf = (LeafNode) node;
+            if (!leaf.mayBlock()) {
+                // Compensating for a leaf that returns immediately would only cost a context switch.
+                try {
+                    return leaf.getValue();
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+
+            synchronized (this) {
+                if (stopped) {
+                    return null;
+                }
+                blockedThread = Thread.currentThread();
+            }
+            LeafBlocker blocker = new LeafBlocker(leaf);
+            try {
+                ForkJoinPool.managedBlock(blocker);
+            } catch (InterruptedException e) {
+                // Stopped, the interrupt status is cleared below.
+            } finally {
+                synchronized (this) {
+                    blockedThread = null;
+                    // Interrupts from stopSubtree() must not leak to the next task of the worker.
+                    Thread.interrupted();
+                }
+            }
+            synchronized (this) {
+                if (stopped || !blocker.isReleasable()) {
+                    return null;
+                }
+            }
+            return blocker.getValue();
+        }
+
+        private Boolean computeInner() {
+            CircuitNode[] args;
+            try {
+                args = node.getArgs();
+            } catch (InterruptedException e) {
+                return null;
+            }
+
+            NodeComputation[] created;
+            synchronized (this) {
+                if (stopped) {
+                    return null;
+                }
+                aggregator = NodeAggregator.forNode(node, args.length);
+                value = aggregator.valueWithoutChildren();
+                if (value != null) {
+                    return value;
+                }
+                created = new NodeComputation[args.length];
+                for (int i = 0; i < args.length; i++) {
+                    created[i] = new NodeComputation(args[i], this, i);
+                }
+                children = created;
+            }
+
+            // Fork in reverse order, so that joining in order pops the tasks from our own deque.
+            for (int i = created.length - 1; i > 0; i--) {
+                created[i].fork();
+            }
+            created[0].compute();
+            for (int i = 1; i < created.length; i++) {
+                synchronized (this) {
+                    if (stopped || value != null) {
+                        break;
+                    }
+                }
+                created[i].join();
+            }
+
+            synchronized (this) {
+                return stopped ? null : value;
+            }
+        }
+
+        // Called by a child that has computed its value.
+        private void childDone(int childIndex, boolean childValue) {
+            Boolean result = aggregator.offer(childIndex, childValue);
+            if (result == null) {
+                return;
+            }
+            NodeComputation[] toStop;
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                value = result;
+                toStop = children;
+            }
+            // Short-circuit: the remaining children won't change the value.
+            for (NodeComputation child : toStop) {
+                child.stopSubtree();
+            }
+        }
+    }
+
+    /**
+     * RootComputation:
+     * Root of a circuit; removes itself from the in-flight set when it finishes.
+     * Cancelling it (by stop() or CircuitValue.cancel()) also stops the whole
+     * subtree, and the cancelled task makes getValue() stop waiting.
+     */
+    private class RootComputation extends NodeComputation {
+
+        private static final long serialVersionUID = 1L;
+
+        public RootComputation(CircuitNode root) {
+            super(root, null, 0);
+        }
+
+        @Override
+        protected Boolean compute() {
+            try {
+                return super.compute();
+            } finally {
+                inFlight.remove(this);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // Cancel first: a stopped subtree lets the root finish normally. False if the value was computed.
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            boolean stoppedNow = super.stopSubtree();
+            inFlight.remove(this);
+            return stoppedNow && cancelled;
+        }
+
+        @Override
+        boolean stopSubtree() {
+            return cancel(true);
+        }
+    }
+
+    /**
+     * LeafBlocker:
+     * Wraps a possibly blocking LeafNode.getValue() call, so that the pool
+     * can start a spare worker while the leaf is being evaluated.
+     */
+    private static class LeafBlocker implements ForkJoinPool.ManagedBlocker {
+
+        private final LeafNode leaf;
+        private boolean value;
+        private boolean done;
+
+        public LeafBlocker(LeafNode leaf) {
+            this.leaf = leaf;
+            this.done = false;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            value = leaf.getValue();
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+
+        public boolean getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * FutureCircuitValue implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.CircuitValue;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * CircuitValue backed by a Future of the root computation.
+ * A computation cancelled or stopped by the solver makes getValue() throw InterruptedException.
+ * cancel() cancels the future, interrupting the thread running the root.
+ */
+public class FutureCircuitValue implements CircuitValue {
+
+    private final Future<Boolean> future;
+
+    public FutureCircuitValue(Future<Boolean> future) {
+        this.future = future;
+    }
+
+    @Override
+    public boolean getValue() throws InterruptedException {
+        try {
+            return awaitValue(null);
+        } catch (TimeoutException e) {
+            // Not possible without a timeout.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean getValue(Duration timeout) throws InterruptedException, TimeoutException {
+        return awaitValue(timeout);
+    }
+
+    @Override
+    public boolean cancel() {
+        return future.cancel(true);
+    }
+
+    // Waits for the future, without a timeout if timeout is null.
+    private boolean awaitValue(Duration timeout) throws InterruptedException, TimeoutException {
+        Boolean value;
+        try {
+            value = timeout == null ? future.get() : future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (CancellationException e) {
+            throw new InterruptedException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw new InterruptedException();
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        // A computation that was stopped before producing a value.
+        if (value == null) {
+            throw new InterruptedException();
+        }
+        return value;
+    }
+}
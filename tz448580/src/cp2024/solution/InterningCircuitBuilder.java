@@ -0,0 +1,202 @@
+/**
+ * InterningCircuitBuilder implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.Circuit;
+import cp2024.circuit.CircuitNode;
+import cp2024.circuit.LeafNode;
+import cp2024.circuit.NodeType;
+import cp2024.circuit.SleepyLeafNode;
+import cp2024.circuit.ThresholdNode;
+
+import java.time.Duration;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hash-consing replacement for CircuitNode.mk():
+ *
+ *   InterningCircuitBuilder b = new InterningCircuitBuilder();
+ *   CircuitNode x = b.mk(NodeType.AND, b.mk(true), b.mk(false, delay));
+ *   assert (x == b.mk(NodeType.AND, b.mk(true), b.mk(false, delay)));
+ *
+ * Inner nodes are keyed by (type, threshold, children), with children compared
+ * by identity. Since the children are interned first, this is structural
+ * equality of whole subcircuits, and a repeated subexpression becomes a single
+ * shared node: the circuit is built as a DAG. Leaves made by mk(boolean) and
+ * mk(boolean, Duration) are shared per (value, delay); any other LeafNode is
+ * its own identity. Nodes are immutable, so shared nodes are safe in every
+ * solver. The builder keeps all nodes it made until it is dropped and may be
+ * used from many threads.
+ */
+public class InterningCircuitBuilder {
+
+    /**
+     * Key:
+     * Structure of an inner node. The hash combines the identity hashes of the
+     * children, which are already interned.
+     */
+    private static final class Key {
+
+        private final NodeType type;
+        private final int threshold;
+        private final CircuitNode[] args;
+        private final int hash;
+
+        private Key(NodeType type, int threshold, CircuitNode[] args) {
+            this.type = type;
+            this.threshold = threshold;
+            this.args = args;
+            int h = 31 * type.hashCode() + threshold;
+            for (CircuitNode arg : args) {
+                h = 31 * h + System.identityHashCode(arg);
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            if (hash != key.hash || type != key.type || threshold != key.threshold
+                    || args.length != key.args.length) {
+                return false;
+            }
+            for (int i = 0; i < args.length; i++) {
+                if (args[i] != key.args[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // Value and delay of a constant leaf.
+    private record LeafKey(boolean value, Duration delay) {
+    }
+
+    private final Map<Key, CircuitNode> nodes = new ConcurrentHashMap<>();
+    private final Map<LeafKey, LeafNode> leaves = new ConcurrentHashMap<>();
+
+    // Statistics:
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    // NOT, AND, OR or IF node over the given children.
+    public CircuitNode mk(NodeType type, CircuitNode... args) {
+        return intern(new Key(type, 0, args.clone()));
+    }
+
+    // GTx or LTx node over the given children.
+    public CircuitNode mk(NodeType type, int threshold, CircuitNode... args) {
+        return intern(new Key(type, threshold, args.clone()));
+    }
+
+    // Leaf with an immediate value.
+    public CircuitNode mk(boolean value) {
+        return mk(value, Duration.ZERO);
+    }
+
+    // Leaf that returns its value after the delay.
+    public CircuitNode mk(boolean value, Duration duration) {
+        requests.incrementAndGet();
+        LeafKey key = new LeafKey(value, duration);
+        LeafNode leaf = leaves.get(key);
+        if (leaf != null) {
+            hits.incrementAndGet();
+            return leaf;
+        }
+        return leaves.computeIfAbsent(key, k -> new SleepyLeafNode(value, duration));
+    }
+
+    /**
+     * Rebuilds an existing circuit with shared subcircuits. Constant leaves
+     * (deterministic and non-blocking, see LeafNode.getCacheKey() and
+     * LeafNode.mayBlock(), e.g. made by CircuitNode.mk(boolean)) become the
+     * builder's mk(value) leaves, so repeated subexpressions over them are
+     * merged too. Other leaves are kept as they are, so subcircuits over them
+     * are merged only if they use the same leaf objects.
+     */
+    public Circuit intern(Circuit circuit) throws InterruptedException {
+        return new Circuit(intern(circuit.getRoot()));
+    }
+
+    // Nodes shared by the circuit are interned once, so a DAG takes time linear in its size.
+    public CircuitNode intern(CircuitNode node) throws InterruptedException {
+        return intern(node, new IdentityHashMap<>());
+    }
+
+    // Number of distinct nodes made by the builder, leaves included.
+    public int size() {
+        return nodes.size() + leaves.size();
+    }
+
+    // Number of mk() calls (also made by intern()) answered with an existing node.
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    private CircuitNode intern(CircuitNode node, Map<CircuitNode, CircuitNode> interned)
+            throws InterruptedException {
+        CircuitNode done = interned.get(node);
+        if (done != null) {
+            return done;
+        }
+        if (node.getType() == NodeType.LEAF) {
+            LeafNode leaf = (LeafNode) node;
+            // Only constant leaves may be called here, the others are evaluated by solvers.
+            CircuitNode result = leaf.mayBlock() || leaf.getCacheKey() == null ? leaf : mk(leaf.getValue());
+            interned.put(node, result);
+            return result;
+        }
+        CircuitNode[] args = node.getArgs();
+        CircuitNode[] internedArgs = new CircuitNode[args.length];
+        for (int i = 0; i < args.length; i++) {
+            internedArgs[i] = intern(args[i], interned);
+        }
+        int threshold = node instanceof ThresholdNode ? ((ThresholdNode) node).getThreshold() : 0;
+        CircuitNode result = intern(new Key(node.getType(), threshold, internedArgs));
+        interned.put(node, result);
+        return result;
+    }
+
+    private CircuitNode intern(Key key) {
+        requests.incrementAndGet();
+        CircuitNode node = nodes.get(key);
+        if (node != null) {
+            hits.incrementAndGet();
+            return node;
+        }
+        // Created outside of the map, so that a node with an invalid arity throws here.
+        CircuitNode created = key.type == NodeType.GT || key.type == NodeType.LT
+                ? CircuitNode.mk(key.type, key.threshold, key.args)
+                : CircuitNode.mk(key.type, key.args);
+        CircuitNode previous = nodes.putIfAbsent(key, created);
+        if (previous != null) {
+            // Another thread made the same node meanwhile.
+            hits.incrementAndGet();
+            return previous;
+        }
+        return created;
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * LeafStatistics implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.CircuitNode;
+import cp2024.circuit.LeafNode;
+import cp2024.circuit.NodeType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency and outcome of leaves seen so far, as exponentially weighted moving
+ * averages, used by the pooled engine to decide which children of a node to
+ * start first when there are more of them than pool threads:
+ *
+ *   LeafStatistics statistics = new LeafStatistics();
+ *   CircuitSolver solver = new ParallelCircuitSolver(SolverOptions.builder()
+ *       .poolSize(8).leafStatistics(statistics).build());
+ *
+ * Children of AND, OR, GTx and LTx are started by their expected time to
+ * decide the node: the expected latency of the leaf divided by the
+ * probability that its value decides the node (false for AND, true for OR;
+ * for GTx and LTx every value counts towards the decision). Leaves with no
+ * statistics and inner nodes, which never block a pool thread, go first, in
+ * their original order. A leaf is known by its identity, and a leaf object
+ * seen for the first time by the averages of its class. Leaf objects are
+ * only weakly referenced.
+ */
+public class LeafStatistics {
+
+    public static final double DEFAULT_ALPHA = 0.2;
+
+    // A child that seems to never decide its parent still gets a finite score (also in CostModel).
+    static final double MIN_PROBABILITY = 0.01;
+
+    /**
+     * Estimate:
+     * Moving averages of one leaf or class, protected by its monitor.
+     */
+    private static final class Estimate {
+
+        private double nanos;
+        private double trueRate;
+        private long samples;
+
+        private synchronized void update(double alpha, long nanos, boolean value) {
+            if (samples == 0) {
+                this.nanos = nanos;
+                this.trueRate = value ? 1 : 0;
+            } else {
+                this.nanos += alpha * (nanos - this.nanos);
+                this.trueRate += alpha * ((value ? 1 : 0) - this.trueRate);
+            }
+            samples++;
+        }
+
+        private synchronized double getNanos() {
+            return nanos;
+        }
+
+        private synchronized double getTrueRate() {
+            return trueRate;
+        }
+    }
+
+    private final double alpha;
+    private final Map<LeafNode, Estimate> byLeaf = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Map<Class<?>, Estimate> byClass = new ConcurrentHashMap<>();
+
+    public LeafStatistics() {
+        this(DEFAULT_ALPHA);
+    }
+
+    // Weight of the newest sample in the averages, the older ones fade by (1 - alpha) per sample.
+    public LeafStatistics(double alpha) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("Alpha must be in (0, 1].");
+        }
+        this.alpha = alpha;
+    }
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    // Records a call of getValue() of the leaf that returned the value after the given time.
+    public void record(LeafNode leaf, long nanos, boolean value) {
+        byLeaf.computeIfAbsent(leaf, k -> new Estimate()).update(alpha, nanos, value);
+        byClass.computeIfAbsent(leaf.getClass(), k -> new Estimate()).update(alpha, nanos, value);
+    }
+
+    // Expected latency of getValue() of the leaf in nanoseconds, NaN if nothing is known.
+    public double getExpectedNanos(LeafNode leaf) {
+        Estimate estimate = estimate(leaf);
+        return estimate == null ? Double.NaN : estimate.getNanos();
+    }
+
+    // Probability that the leaf is true, NaN if nothing is known.
+    public double getTrueProbability(LeafNode leaf) {
+        Estimate estimate = estimate(leaf);
+        return estimate == null ? Double.NaN : estimate.getTrueRate();
+    }
+
+    /**
+     * Returns the indices of the children of a node of the given type in the
+     * order they should be started, null if the original order is best
+     * (NOT, IF, whose condition has to be known first, or a single child).
+     */
+    public int[] startOrder(NodeType type, CircuitNode[] children) {
+        if (children.length < 2 || type == NodeType.NOT || type == NodeType.IF) {
+            return null;
+        }
+        double[] scores = new double[children.length];
+        for (int i = 0; i < children.length; i++) {
+            scores[i] = score(type, children[i]);
+        }
+        return sortedBy(scores);
+    }
+
+    // --------------------------------- Package-private methods ---------------------------------
+
+    // Indices by ascending score, ties in their original order (the sort is stable).
+    static int[] sortedBy(double[] scores) {
+        Integer[] order = new Integer[scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[a], scores[b]));
+        int[] result = new int[scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    private Estimate estimate(LeafNode leaf) {
+        Estimate estimate = byLeaf.get(leaf);
+        return estimate != null ? estimate : byClass.get(leaf.getClass());
+    }
+
+    // Expected time to decide the parent, 0 for children that should simply go first.
+    private double score(NodeType type, CircuitNode child) {
+        if (!(child instanceof LeafNode)) {
+            return 0;
+        }
+        Estimate estimate = estimate((LeafNode) child);
+        if (estimate == null) {
+            // Started early, so that the next solve knows it.
+            return 0;
+        }
+        double decisive = switch (type) {
+            case AND -> 1 - estimate.getTrueRate();
+            case OR -> estimate.getTrueRate();
+            default -> 1;
+        };
+        return estimate.getNanos() / Math.max(decisive, MIN_PROBABILITY);
+    }
+}
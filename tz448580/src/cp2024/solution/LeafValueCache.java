@@ -0,0 +1,182 @@
+/**
+ * LeafValueCache implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.LeafNode;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Values of expensive leaves (e.g. remote lookups), each kept for a time to
+ * live. A leaf is identified by the leaf object itself, so a value is shared
+ * by all appearances of the leaf in all circuits and solves. getCacheKey()
+ * is not used: leaves with equal keys have equal values, but each has a load
+ * of its own (e.g. its own delay), which another leaf must never wait for:
+ *
+ *   LeafValueCache cache = new LeafValueCache(10_000, Duration.ofSeconds(30));
+ *   CircuitSolver solver = new ParallelCircuitSolver(SolverOptions.builder()
+ *       .leafCache(cache).build());
+ *
+ * Loading is single-flight: while one thread runs getValue() of a leaf, other
+ * threads asking for the same leaf wait for its value instead of calling the
+ * leaf again. The cache's monitor is never held during a load, so a hit never
+ * waits for another leaf. If the loading thread is interrupted (its circuit
+ * was cancelled), one of the waiting threads takes the load over. Beyond
+ * maxEntries, the least recently used values are evicted. A lookup that
+ * waits for a load in progress counts neither as a hit nor as a miss.
+ */
+public class LeafValueCache {
+
+    // A value and the time (System.nanoTime()) it expires at.
+    private static final class Loaded {
+        private final boolean value;
+        private final long expiresAt;
+
+        private Loaded(boolean value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final Duration defaultTtl;
+
+    // Either Loaded or CompletableFuture<Boolean> (a load in progress), protected by the cache's monitor:
+    private final LinkedHashMap<Object, Object> entries;
+
+    // Statistics, protected by the cache's monitor:
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LeafValueCache(int maxEntries, Duration defaultTtl) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache size must be positive.");
+        }
+        if (defaultTtl.isNegative() || defaultTtl.isZero()) {
+            throw new IllegalArgumentException("Time to live must be positive.");
+        }
+        this.maxEntries = maxEntries;
+        this.defaultTtl = defaultTtl;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+    }
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    // Value of the leaf, kept for the default time to live.
+    public boolean getValue(LeafNode leaf) throws InterruptedException {
+        if (leaf instanceof CachingLeafNode) {
+            // Already cached with its own time to live.
+            return leaf.getValue();
+        }
+        return getValue(leaf, defaultTtl);
+    }
+
+    // Value of the leaf, kept for ttl once loaded.
+    public boolean getValue(LeafNode leaf, Duration ttl) throws InterruptedException {
+        Object key = leaf;
+        while (true) {
+            CompletableFuture<Boolean> load;
+            boolean loader = false;
+            synchronized (this) {
+                Object entry = entries.get(key);
+                if (entry instanceof Loaded && ((Loaded) entry).expiresAt - System.nanoTime() > 0) {
+                    hits++;
+                    return ((Loaded) entry).value;
+                }
+                if (entry instanceof CompletableFuture) {
+                    // Someone else is loading the leaf.
+                    @SuppressWarnings("unchecked")
+                    CompletableFuture<Boolean> pending = (CompletableFuture<Boolean>) entry;
+                    load = pending;
+                } else {
+                    misses++;
+                    load = new CompletableFuture<>();
+                    entries.put(key, load);
+                    loader = true;
+                }
+            }
+            if (loader) {
+                return load(key, leaf, ttl, load);
+            }
+            try {
+                return load.get();
+            } catch (CancellationException | ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                // The loading thread was interrupted, try to load the value here.
+            }
+        }
+    }
+
+    // Forgets the value of the leaf, the next getValue() loads it again.
+    public synchronized void invalidate(LeafNode leaf) {
+        if (entries.get(leaf) instanceof Loaded) {
+            entries.remove(leaf);
+        }
+    }
+
+    public synchronized CacheMetrics getMetrics() {
+        // One entry per value, the estimate of a leaf entry doesn't depend on the leaf.
+        return new CacheMetrics(hits, misses, evictions, entries.size(), 64L * entries.size());
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    private boolean load(Object key, LeafNode leaf, Duration ttl, CompletableFuture<Boolean> load)
+            throws InterruptedException {
+        boolean value;
+        try {
+            value = leaf.getValue();
+        } catch (InterruptedException e) {
+            abandon(key, load);
+            load.cancel(false);
+            throw e;
+        } catch (RuntimeException e) {
+            abandon(key, load);
+            load.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            // The entry might have been evicted or invalidated meanwhile.
+            if (entries.get(key) == load) {
+                entries.put(key, new Loaded(value, System.nanoTime() + ttl.toNanos()));
+            }
+            evict();
+        }
+        load.complete(value);
+        return value;
+    }
+
+    private synchronized void abandon(Object key, CompletableFuture<Boolean> load) {
+        if (entries.get(key) == load) {
+            entries.remove(key);
+        }
+    }
+
+    // Removes least recently used values over the limit. Loads in progress are skipped.
+    private void evict() {
+        Iterator<Map.Entry<Object, Object>> eldest = entries.entrySet().iterator();
+        int excess = entries.size() - maxEntries;
+        while (excess > 0 && eldest.hasNext()) {
+            if (eldest.next().getValue() instanceof Loaded) {
+                eldest.remove();
+                evictions++;
+                excess--;
+            }
+        }
+    }
+}
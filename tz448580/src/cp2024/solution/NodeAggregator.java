@@ -0,0 +1,39 @@
+/**
+ * NodeAggregator interface.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.CircuitNode;
+import cp2024.circuit.NodeType;
+
+/**
+ * Decides the value of a node with children from the values of its children,
+ * in whatever order they arrive. Implementations are lock-free and may be
+ * called by many child threads at the same time: the call that decides the
+ * node is the only one that gets its value back.
+ */
+public interface NodeAggregator {
+
+    /**
+     * Passes the value of a child. Returns the value of the node if this call
+     * decided it, null otherwise (also if the node was decided before).
+     */
+    Boolean offer(int childIndex, boolean value);
+
+    boolean isDecided();
+
+    // Returns the value of the node if it doesn't depend on the children, null otherwise.
+    default Boolean valueWithoutChildren() {
+        return null;
+    }
+
+    // Creates an aggregator for the node, whose children are already known.
+    static NodeAggregator forNode(CircuitNode node, int numChildren) {
+        if (node.getType() == NodeType.IF) {
+            return new ConditionState();
+        }
+        return ChildCounter.forNode(node, numChildren);
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * NodeScope implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Structured scope for the children of a single circuit node.
+ * Every child is forked as a separate task and its value is passed to
+ * the node's aggregator. As soon as it determines the value of the node,
+ * the scope is shut down: join() returns and all unfinished children are
+ * cancelled. Closing the scope always cancels the children, so no subtask
+ * outlives the node that forked it.
+ */
+class NodeScope implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final NodeAggregator aggregator;
+    private final List<Future<?>> children;
+
+    // All fields below are protected by the scope's monitor.
+    private Boolean result;
+    private RuntimeException failure;
+    private boolean shutdown;
+
+    NodeScope(ExecutorService executor, NodeAggregator aggregator) {
+        this.executor = executor;
+        this.aggregator = aggregator;
+        this.children = new ArrayList<>();
+        this.result = null;
+        this.failure = null;
+        this.shutdown = false;
+    }
+
+    // Starts evaluation of a child in a new task of the scope.
+    void fork(int childIndex, Callable<Boolean> child) throws InterruptedException {
+        Future<?> future;
+        try {
+            future = executor.submit(() -> runChild(childIndex, child));
+        } catch (RejectedExecutionException e) {
+            // The executor is shut down only when the solver is stopped.
+            throw new InterruptedException();
+        }
+        synchronized (this) {
+            children.add(future);
+            if (!shutdown) {
+                return;
+            }
+        }
+        // Decided before this child was forked.
+        future.cancel(true);
+    }
+
+    // Waits until the aggregator determines the value of the node.
+    synchronized boolean join() throws InterruptedException {
+        while (result == null && failure == null) {
+            wait();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+
+    // Cancels all children that haven't finished yet.
+    @Override
+    public void close() {
+        List<Future<?>> toCancel;
+        synchronized (this) {
+            shutdown = true;
+            toCancel = new ArrayList<>(children);
+        }
+        for (Future<?> child : toCancel) {
+            child.cancel(true);
+        }
+    }
+
+    private void runChild(int childIndex, Callable<Boolean> child) {
+        boolean value;
+        try {
+            value = child.call();
+        } catch (InterruptedException e) {
+            // Cancelled by the scope or by the solver.
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RuntimeException e) {
+            onFailure(e);
+            return;
+        } catch (Exception e) {
+            onFailure(new RuntimeException(e));
+            return;
+        }
+        onValue(childIndex, value);
+    }
+
+    private void onValue(int childIndex, boolean value) {
+        boolean decided;
+        synchronized (this) {
+            if (shutdown || result != null || failure != null) {
+                return;
+            }
+            result = aggregator.offer(childIndex, value);
+            decided = result != null;
+            if (decided) {
+                notifyAll();
+            }
+        }
+        if (decided) {
+            // Short-circuit: the remaining children won't change the value.
+            close();
+        }
+    }
+
+    private void onFailure(RuntimeException e) {
+        synchronized (this) {
+            if (shutdown || result != null || failure != null) {
+                return;
+            }
+            failure = e;
+            notifyAll();
+        }
+        close();
+    }
+}
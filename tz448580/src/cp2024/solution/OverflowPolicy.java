@@ -0,0 +1,19 @@
+/**
+ * OverflowPolicy enum.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+/**
+ * What solve() does with a circuit when the solver is at its in-flight limits
+ * and the queue of waiting solves is full.
+ */
+public enum OverflowPolicy {
+    // The caller of solve() waits until there is room in the queue.
+    BLOCK,
+    // solve() returns a RejectedCircuitValue right away.
+    FAIL_FAST,
+    // The oldest queued solve is dropped (its getValue() throws InterruptedException).
+    SHED_OLDEST
+}
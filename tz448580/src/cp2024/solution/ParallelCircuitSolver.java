@@ -11,206 +11,350 @@ import cp2024.circuit.CircuitSolver;
 import cp2024.circuit.CircuitValue;
 import cp2024.circuit.LeafNode;
 import cp2024.circuit.NodeType;
-import cp2024.circuit.ThresholdNode;
 
 import cp2024.demo.BrokenCircuitValue;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 
 public class ParallelCircuitSolver implements CircuitSolver {
 
-    // To stop all threads working on circuits, we store them here:
-    private final List<ParallelCircuitValue> circuitValues = new ArrayList<>();
-
-    // Mutex to protect circuitValues:
-    private final Semaphore circuitValuesMutex = new Semaphore(1, true);
+    // To stop all threads working on circuits, we store them here.
+    // A value removes itself as soon as it is computed, so only in-flight circuits are kept:
+    private final Set<ParallelCircuitValue> inFlight = ConcurrentHashMap.newKeySet();
 
     // Solver state:
-    private Boolean state = true;
-    
-    // State mutex:
-    private final Semaphore stateMutex = new Semaphore(1, true);
+    private final AtomicBoolean state = new AtomicBoolean(true);
+
+    // Engine running nodes on a bounded pool, null if every node gets its own thread:
+    private final PooledCircuitEngine engine;
+
+    // Limits the number of circuits and nodes in flight:
+    private final AdmissionController admission;
+
+    // Limits and counters of tenants, created on first use and dropped when idle (see enterTenant()):
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+
+    private final SolverOptions options;
+
+    // Rewrites circuits before they are evaluated, null if they are evaluated as given:
+    private final CircuitSimplifier simplifier;
+
+    // Times out circuits solved with a deadline, created on first use:
+    private ScheduledThreadPoolExecutor deadlineTimer;
+
+    // ------------------------------------- Constructors -------------------------------------
+
+    // Every node of a circuit is evaluated by a separate thread.
+    public ParallelCircuitSolver() {
+        this(SolverOptions.defaults());
+    }
+
+    // Nodes of all circuits are evaluated on a shared pool of poolSize threads.
+    public ParallelCircuitSolver(int poolSize) {
+        this(SolverOptions.builder().poolSize(poolSize).build());
+    }
+
+    public ParallelCircuitSolver(SolverOptions options) {
+        this.options = options;
+        this.admission = new AdmissionController(options);
+        this.engine = options.getPoolSize() > 0 ? new PooledCircuitEngine(options, admission) : null;
+        this.simplifier = options.isSimplifying() ? new CircuitSimplifier() : null;
+    }
 
     // ------------------------------------ Public methods ------------------------------------
 
-    // Immediately returns a CircuitValue object that represents
-    // the result of solving the circuit.
+    // Returns a CircuitValue object that represents the result of solving
+    // the circuit. Returns immediately, unless the solver is at its limits
+    // with a full queue and the overflow policy is BLOCK.
     @Override
     public CircuitValue solve(Circuit c) {
+        return solve(c, SolveRequest.defaults());
+    }
 
-        try {
-            stateMutex.acquire();                           // Acquire state mutex.
-        } catch (InterruptedException e) {
-            return new BrokenCircuitValue();
+    // Same as solve(c, Instant.now().plus(timeout)).
+    public CircuitValue solve(Circuit c, Duration timeout) {
+        return solve(c, SolveRequest.builder().timeout(timeout).build());
+    }
+
+    /**
+     * Solves the circuit, but gives up at the deadline (null means no deadline):
+     * the computation is then stopped and the value reports a timeout, that is
+     * getValue(timeout) throws TimeoutException and getValue() throws
+     * InterruptedException, see ParallelCircuitValue.isTimedOut().
+     * Time spent waiting for admission counts towards the deadline, but
+     * a caller blocked by OverflowPolicy.BLOCK stays blocked until the
+     * circuit is admitted (or rejected); it times out right after.
+     */
+    public CircuitValue solve(Circuit c, Instant deadline) {
+        return solve(c, SolveRequest.builder().deadline(deadline).build());
+    }
+
+    // Solves the circuit with the tenant, priority and deadline of the request.
+    public CircuitValue solve(Circuit c, SolveRequest request) {
+        if (!state.get()) {
+            return new BrokenCircuitValue();                // Return a dummy object for each new request.
         }
 
-        Boolean acceptComputations = state;                 // Save the state.
-        stateMutex.release();                               // Release the mutex.
-        
-        if (!acceptComputations) {
-            return new BrokenCircuitValue();                // Return a dummy object for each new request. 
+        long submittedAt = System.nanoTime();
+        Tenant tenant = enterTenant(request.getTenant());
+        ParallelCircuitValue circuitValue = new ParallelCircuitValue(inFlight);
+        Runnable start;
+        if (engine != null) {
+            PooledCircuitEngine.PooledCircuit pooledCircuit =
+                    engine.create(c, simplifier, circuitValue, request.getPriority(), tenant);
+            start = pooledCircuit::start;                   // Start the computation on the pool.
         } else {
-            Semaphore forValue = new Semaphore(0, true);    // Semaphore to protect the value field.
-            ParallelCircuitValue circuitValue = new ParallelCircuitValue(forValue);
-            Runnable circuitWorker = new CircuitWorker(c, forValue, circuitValue);
+            Runnable circuitWorker = new CircuitWorker(c, simplifier, circuitValue, admission, options.getLeafCache());
             Thread circuitThread = new Thread(circuitWorker);
-
             circuitValue.setCircuitThread(circuitThread);   // Store the thread.
-
-            try {
-                circuitValuesMutex.acquire();               // Acquire circuitValues mutex.
-            } catch (InterruptedException e) {
-                return new BrokenCircuitValue();
+            start = circuitThread::start;                   // Start the computation of the circuit c.
+        }
+        AdmissionController.Admission circuitAdmission = admission.register(circuitValue, start, request.getPriority());
+        // Set once, before stop() can reach the value. finished() settles the admission
+        // first, so a circuit that was never admitted is never counted as finished.
+        circuitValue.setCompletionListener(() -> {
+            admission.finished(circuitAdmission);
+            if (circuitAdmission.wasAdmitted()) {
+                tenant.circuitFinished(!circuitValue.getIsBroken(), System.nanoTime() - submittedAt);
+            }
+            tenant.circuitLeft();
+        });
+        inFlight.add(circuitValue);                         // Store the CircuitValue object.
+
+        // Start the circuit now or when the solver has room for it.
+        if (!admission.admit(circuitAdmission)) {
+            // The value is dropped, so it's broken here to leave the tenant.
+            circuitValue.stopComputation();
+            inFlight.remove(circuitValue);
+            return new RejectedCircuitValue();
+        }
+        if (circuitAdmission.wasAdmitted()) {
+            tenant.circuitSubmitted();
+            // Only admitted circuits get a timer; a deadline that passed while queued fires right away.
+            if (request.getDeadline() != null) {
+                scheduleTimeout(circuitValue, request.getDeadline());
             }
-            circuitValues.add(circuitValue);                // Store the CircuitValue object.
-            circuitValuesMutex.release();                   // Release the mutex.
-            circuitThread.start();                          // Start the computation of the circuit c.
-            return circuitValue;
         }
+
+        // stop() might have iterated over inFlight before the value was added.
+        if (!state.get()) {
+            circuitValue.stopComputation();
+        }
+        return circuitValue;
     }
 
     @Override
     public void stop() {
-        // Iterate through all CircuitValue objects and interrupt threads
-        // that manage all circuits. Also interrupt a thread that is waiting
-        // for a value of a circuit (has called getValue() method).
-
-        // Acquire state mutex:
-        try {
-            stateMutex.acquire();
-        } catch (InterruptedException e) {
+        // Iterate through all in-flight CircuitValue objects and stop their
+        // computations. Breaking a value also wakes up threads that are
+        // waiting for it (have called getValue() method).
+        if (!state.compareAndSet(true, false)) {
+            // Solver has already stopped.
             return;
         }
+        // Callers blocked in solve() are released, queued circuits are never started.
+        admission.shutdown();
+        for (ParallelCircuitValue circuitValue : inFlight) {
+            // Values that are already computed stay available.
+            circuitValue.stopComputation();
+        }
+        if (engine != null) {
+            engine.shutdown();
+        }
+        synchronized (this) {
+            if (deadlineTimer != null) {
+                deadlineTimer.shutdownNow();
+            }
+        }
+    }
 
-        if (!state) {
-            // Solver has already stopped.
-            stateMutex.release();
-        } else {
-            // Solver is working - stop it.
-            state = false;
-            stateMutex.release();
-            try {
-                circuitValuesMutex.acquire();
-            } catch (InterruptedException e) {
-                // This thread won't be interrupted.
+    // Returns a snapshot of the queue depth, in-flight counts and admission counters.
+    public AdmissionMetrics getMetrics() {
+        return admission.getMetrics();
+    }
+
+    /**
+     * Returns snapshots of the counters of all tenants that have solved circuits.
+     * Counters of an idle tenant are dropped once a tenant not seen before (or
+     * dropped itself) solves a circuit, so a tenant key then starts from zero.
+     */
+    public Map<String, TenantMetrics> getTenantMetrics() {
+        Map<String, TenantMetrics> metrics = new TreeMap<>();
+        for (Tenant tenant : tenants.values()) {
+            metrics.put(tenant.getKey(), tenant.getMetrics());
+        }
+        return metrics;
+    }
+
+    // Number of nodes removed from solved circuits by simplification, 0 if it's off.
+    public long getRemovedNodes() {
+        return simplifier == null ? 0 : simplifier.getRemovedNodes();
+    }
+
+    /**
+     * Returns the tenant of the key with one more circuit in flight, which
+     * keeps it in the map until circuitLeft(). The map only grows when a new
+     * tenant comes, so that is when idle tenants are dropped.
+     */
+    private Tenant enterTenant(String key) {
+        if (!tenants.containsKey(key)) {
+            for (String idle : tenants.keySet()) {
+                tenants.computeIfPresent(idle, (k, tenant) -> tenant.isIdle() ? null : tenant);
             }
-            // Interrupt all alive circuit threads.
-            for (ParallelCircuitValue circuitValue : circuitValues) {
-                Thread circuitThread = circuitValue.getCircuitThread();
-                Semaphore flagMutex = circuitValue.getFlagMutex();
-                if (circuitThread.isAlive()) {
-                    try {
-                        flagMutex.acquire();
-                    } catch (InterruptedException e) {
-                        // This thread won't be interrupted.
-                    }
-                    circuitValue.setIsBroken();
-                    flagMutex.release();
-                    // Finally - interrupt alive circuitThread:
-                    circuitThread.interrupt();
-                    // circuitThread will be interrupted and will see brokenFlag set to true,
-                    // which will cause interrupting all waiting external threads.
-                }
+        }
+        return tenants.compute(key, (k, tenant) -> {
+            if (tenant == null) {
+                tenant = new Tenant(k, options.getTenantWeight(k),
+                        options.getMaxNodesPerTenant(), options.getMaxLeavesPerTenant());
             }
-            circuitValuesMutex.release();
+            tenant.circuitEntered();
+            return tenant;
+        });
+    }
+
+    // ---------------------------------------- Deadlines ----------------------------------------
+
+    private void scheduleTimeout(ParallelCircuitValue circuitValue, Instant deadline) {
+        long delayNanos;
+        try {
+            delayNanos = Duration.between(Instant.now(), deadline).toNanos();
+        } catch (ArithmeticException e) {
+            // The deadline is centuries away.
+            return;
+        }
+        ScheduledThreadPoolExecutor timer = getDeadlineTimer();
+        if (timer == null) {
+            // Solver was stopped, stop() takes care of the value.
+            return;
+        }
+        try {
+            circuitValue.setDeadlineTimer(timer.schedule(circuitValue::timeOut, delayNanos, TimeUnit.NANOSECONDS));
+        } catch (RejectedExecutionException e) {
+            // Stopped meanwhile.
         }
     }
 
+    // Returns null if the solver was stopped.
+    private synchronized ScheduledThreadPoolExecutor getDeadlineTimer() {
+        if (!state.get()) {
+            return null;
+        }
+        if (deadlineTimer == null) {
+            deadlineTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "circuit-deadlines");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Timers of circuits that finish early are removed right away.
+            deadlineTimer.setRemoveOnCancelPolicy(true);
+        }
+        return deadlineTimer;
+    }
+
     // ----------------------------------- Runnable classes -----------------------------------
 
+    /**
+     * Parent:
+     * Receives values of the child nodes. Called by the thread of the child
+     * (or by the thread of a descendant that decided the child's value).
+     */
+    private interface Parent {
+        void childDone(int childIndex, boolean value);
+    }
+
     /**
      * CircuitWorker:
      * Thread executing this code initializes the computation of the circuit.
-     * After the computation is done, it sets the value of the circuit in an
-     * object that implements the CircuitValue interface.
-     * It also works as a broker between the circuit and the external thread.
-     * If the external thread calls getValue() method, it waits to be woken up
-     * by the CircuitWorker thread.
-     * If the external thread is interrupted, it interrupts CircuitWorker that
+     * The root node puts its value directly in the object that implements
+     * the CircuitValue interface, which wakes up external threads that called
+     * getValue(). If the solver is stopped, it interrupts CircuitWorker that
      * is responsible for interrupting all threads that work on the circuit.
      */
-    private static class CircuitWorker implements Runnable {
+    private static class CircuitWorker implements Runnable, Parent {
 
         private final Circuit circuit;
-        private final Semaphore forValue;   // Some external threads wait here.
-        private final ParallelCircuitValue circuitValue;
-        private final BlockingQueue<Boolean> myQueue;
+        private final CircuitSimplifier simplifier;        // Null if the circuit isn't simplified.
+        private final ParallelCircuitValue circuitValue;   // Some external threads wait here.
+        private final AdmissionController admission;
+        private final LeafValueCache leafCache;            // Null if leaves aren't cached.
+        private Thread circuitThread;
         
         public CircuitWorker(
             Circuit circuit,
-            Semaphore forValue,
-            ParallelCircuitValue circuitValue
+            CircuitSimplifier simplifier,
+            ParallelCircuitValue circuitValue,
+            AdmissionController admission,
+            LeafValueCache leafCache
         ) {
             this.circuit = circuit;
-            this.forValue = forValue;
+            this.simplifier = simplifier;
             this.circuitValue = circuitValue;
-            this.myQueue = new LinkedBlockingQueue<>();
+            this.admission = admission;
+            this.leafCache = leafCache;
         }
 
         @Override
         public void run() {
+            // The solver might have been stopped before this thread started.
+            if (circuitValue.getIsBroken()) {
+                return;
+            }
+            circuitThread = Thread.currentThread();
+
+            // Simplified here, after admission, since getArgs() may block.
+            CircuitNode root;
+            try {
+                root = simplifier == null ? circuit.getRoot() : simplifier.simplify(circuit).getCircuit().getRoot();
+            } catch (InterruptedException e) {
+                // Only a stopped computation interrupts this thread.
+                return;
+            }
+
             // Create a thread for the root node of the circuit.
-            CircuitNode root = circuit.getRoot();
             Runnable rootWorker;
             try {
-                rootWorker = determineWorkerType(root, myQueue);
+                rootWorker = determineWorkerType(root, this, 0, admission, leafCache);
             } catch (RuntimeException e) {
                 // There won't be nodes with illegal types.
                 return;
             }
             
-            Thread rootThread = new Thread(rootWorker);
-            Boolean value;
+            Thread rootThread = admission.newNodeThread(rootWorker);
             rootThread.start();
 
-            Queue<Thread> waitingForValue = circuitValue.getQueue();
-            Semaphore queueMutex = circuitValue.getQueueMutex();
-            Semaphore flagMutex = circuitValue.getFlagMutex();
+            // Wait for the root node to finish its work or for stop().
+            while (!circuitValue.isDone()) {
+                LockSupport.park(this);
+                // stop() interrupts this thread only after breaking the value.
+                Thread.interrupted();
+            }
 
-            // Wait for the root node to finish its work.
-            try {
-                value = myQueue.take();
-            } catch (InterruptedException e) {
-                // Cancel all computations if stop() was called <=> brokenFlag is set.
-                Boolean brokenFlagValue;
-                try {
-                    flagMutex.acquire();
-                } catch (InterruptedException ex) {
-                    // This thread won't be interrupted.
-                }
-                brokenFlagValue = circuitValue.getIsBroken();
-                flagMutex.release();
-
-                // Check the flag.
-                if (brokenFlagValue) {
-                    // Interrupt the root so it can stop the computations.
-                    rootThread.interrupt();
-                    // Interrupt all threads that are waiting on forValue semaphore.
-                    // Acquire queueMutex, interrupt all threads and remove them from the queue.
-                    try {
-                        queueMutex.acquire();
-                    } catch (InterruptedException ex) {
-                        // Do nothing.
-                    }
-                    while (waitingForValue.size() > 0) {
-                        Thread waiting = waitingForValue.poll();
-                        waiting.interrupt();
-                    }
-                    queueMutex.release();
-                    Thread.currentThread().interrupt();
-                }
-                return;
+            // Cancel all computations if stop() was called <=> the value is broken.
+            // Threads waiting for the value were already woken up by setIsBroken().
+            if (circuitValue.getIsBroken()) {
+                // Interrupt the root so it can stop the computations.
+                rootThread.interrupt();
             }
-            
+        }
+
+        @Override
+        public void childDone(int childIndex, boolean value) {
             // If successful, set the value of the circuit.
             circuitValue.setValue(value);
-            forValue.release();
+            LockSupport.unpark(circuitThread);
         }
     }
 
@@ -221,21 +365,27 @@ public class ParallelCircuitSolver implements CircuitSolver {
     private static class LeafWorker implements Runnable {
             
         private final LeafNode node;
-        private final BlockingQueue<Boolean> parentQueue;
+        private final Parent parent;
+        private final int index;
+        private final LeafValueCache leafCache;
     
         public LeafWorker(
             LeafNode node,
-            BlockingQueue<Boolean> parentQueue
+            Parent parent,
+            int index,
+            LeafValueCache leafCache
         ) {
             this.node = node;
-            this.parentQueue = parentQueue;
+            this.parent = parent;
+            this.index = index;
+            this.leafCache = leafCache;
         }
 
         @Override
         public void run() {
             try {
-                Boolean value = node.getValue();
-                parentQueue.put(value);
+                boolean value = leafCache == null ? node.getValue() : leafCache.getValue(node);
+                parent.childDone(index, value);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
@@ -243,34 +393,48 @@ public class ParallelCircuitSolver implements CircuitSolver {
     }
 
     /**
-     * SimpleWorker:
+     * InnerWorker:
      * Thread executing this code works on a node that represents one of these:
      * - NOT
      * - AND
      * - OR
-     * It uses one blocking queue to communicate with child nodes.
+     * - GTx
+     * - LTx
+     * - IF
+     * Children report their values to a lock-free NodeAggregator (ChildCounter,
+     * or ConditionState for IF). The child whose value decides the node
+     * publishes it to the parent right away, and wakes up this thread only to
+     * interrupt the remaining children. There is exactly one thread per child.
      */
-    private static class SimpleWorker implements Runnable {
+    private static class InnerWorker implements Runnable, Parent {
             
         private final CircuitNode node;
-        private final BlockingQueue<Boolean> parentQueue;
-        private final BlockingQueue<Boolean> myQueue;
+        private final Parent parent;
+        private final int index;
         private final List<Thread> childThreads;
+        private final AdmissionController admission;
+        private final LeafValueCache leafCache;
+        private NodeAggregator aggregator;
+        private Thread workerThread;
     
-        public SimpleWorker(
+        public InnerWorker(
             CircuitNode node,
-            BlockingQueue<Boolean> parentQueue
+            Parent parent,
+            int index,
+            AdmissionController admission,
+            LeafValueCache leafCache
         ) {
             this.node = node;
-            this.parentQueue = parentQueue;
-            this.myQueue = new LinkedBlockingQueue<>();
+            this.parent = parent;
+            this.index = index;
             this.childThreads = new ArrayList<>();
+            this.admission = admission;
+            this.leafCache = leafCache;
         }
 
         @Override
         public void run() {
-            // Get node type.
-            NodeType type = node.getType();
+            workerThread = Thread.currentThread();
 
             // Get children of the current node.
             CircuitNode[] childNodes;
@@ -281,454 +445,72 @@ public class ParallelCircuitSolver implements CircuitSolver {
                 return;
             }
 
-            int valuesLeft = childNodes.length;
+            // Check if there is a need to evaluate the children.
+            aggregator = NodeAggregator.forNode(node, childNodes.length);
+            Boolean value = aggregator.valueWithoutChildren();
+            if (value != null) {
+                parent.childDone(index, value);
+                return;
+            }
 
             // Create a thread for each child node.
-            for (CircuitNode child : childNodes) {
+            for (int i = 0; i < childNodes.length; i++) {
                 Runnable childWorker;
                 try {
-                    childWorker = determineWorkerType(child, myQueue);
+                    childWorker = determineWorkerType(childNodes[i], this, i, admission, leafCache);
                 } catch (RuntimeException e) {
                     // Illegal node type.
                     continue;
                 }
-                Thread childThread = new Thread(childWorker);
-                childThreads.add(childThread);
-                childThread.start();
-            }
-
-            Boolean value;
-            
-            // Case: NOT
-            if (type == NodeType.NOT) {
-                try {
-                    value = !myQueue.take();
-                } catch (InterruptedException e) {
-                    for (Thread child : childThreads) {
-                        child.interrupt();
-                    }
-                    Thread.currentThread().interrupt();
-                    return;
-                }
-            }
-            // Case: AND
-            else if (type == NodeType.AND) {
-                value = true;
-                while (valuesLeft > 0) {
-                    Boolean childValue;
-                    try {
-                        childValue = myQueue.take();
-                    } catch (InterruptedException e) {
-                        for (Thread child : childThreads) {
-                            child.interrupt();
-                        }
-                        Thread.currentThread().interrupt();
-                        return;
-                    }
-                    value = value && childValue;
-                    if (!value) {
-                        for (Thread child : childThreads) {
-                            child.interrupt();
-                        }
-                        break;
-                    }
-                    valuesLeft--;
-                }
-            }
-            // Case: OR
-            else {
-                value = false;
-                while (valuesLeft > 0) {
-                    Boolean childValue;
-                    try {
-                        childValue = myQueue.take();
-                    } catch (InterruptedException e) {
-                        for (Thread child : childThreads) {
-                            child.interrupt();
-                        }
-                        Thread.currentThread().interrupt();
-                        return;
-                    }
-                    value = value || childValue;
-                    if (value) {
-                        for (Thread child : childThreads) {
-                            child.interrupt();
-                        }
-                        break;
-                    }
-                    valuesLeft--;
-                }
-            }
-
-            // Put the value in the parent queue.
-            try {
-                parentQueue.put(value);
-            } catch (InterruptedException e) {
-                for (Thread child : childThreads) {
-                    child.interrupt();
-                }
-                Thread.currentThread().interrupt();
-                return;
-            }
-        }
-    }
-
-    /**
-     * ConditionHelper:
-     * Thread executing this code is in the middle of ConditionWorker-child
-     * communication. It is used to pass a value from one of its three children
-     * to the parent ConditionWorker.
-     */
-    private static class ConditionHelper implements Runnable {
-
-        private final BlockingQueue<ConditionPair> parentQueue;
-        private final BlockingQueue<Boolean> helperQueue;
-        private final Integer childNumber;
-
-        public ConditionHelper(
-            BlockingQueue<ConditionPair> parentQueue,
-            Integer childNumber
-        ) {
-            this.parentQueue = parentQueue;
-            this.helperQueue = new LinkedBlockingQueue<>();
-            this.childNumber = childNumber;
-        }
-
-        @Override
-        public void run() {
-            Boolean value;
-            try {
-                value = helperQueue.take();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return;
-            }
-            try {
-                parentQueue.put(new ConditionPair(childNumber, value));
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return;
-            }
-        }
-
-        public BlockingQueue<Boolean> getHelperQueue() {
-            return helperQueue;
-        }
-    }
-
-    /**
-     * ConditionWorker:
-     * Thread executing this code works on a node that represents IF.
-     * It uses three helper threads to communicate with child nodes.
-     */
-    private static class ConditionWorker implements Runnable {
-            
-        private final CircuitNode node;
-        private final BlockingQueue<Boolean> parentQueue;
-        private final BlockingQueue<ConditionPair> myQueue;
-        private final List<Thread> childThreads;
-        private final List<Thread> helperThreads;
-    
-        public ConditionWorker (
-            CircuitNode node,
-            BlockingQueue<Boolean> parentQueue
-        ) {
-            this.node = node;
-            this.parentQueue = parentQueue;
-            this.myQueue = new LinkedBlockingQueue<>();
-            this.childThreads = new ArrayList<>();
-            this.helperThreads = new ArrayList<>();
-        }
-
-        @Override
-        public void run() {
-            // Get node type.
-            // NodeType type = node.getType();
-
-            // Get children of the current node.
-            CircuitNode[] childNodes;
-            try {
-                childNodes = node.getArgs();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return;
-            }
-
-            // Create a helper thread for each child node.
-            List<ConditionHelper> helpers = new ArrayList<>();
-
-            ConditionHelper conditionHelper = new ConditionHelper(myQueue, 0);
-            BlockingQueue<Boolean> conditionQueue = conditionHelper.getHelperQueue();
-            helpers.add(conditionHelper);
-
-            ConditionHelper positiveHelper = new ConditionHelper(myQueue, 1);
-            BlockingQueue<Boolean> positiveQueue = positiveHelper.getHelperQueue();
-            helpers.add(positiveHelper);
-
-            ConditionHelper negativeHelper = new ConditionHelper(myQueue, 2);
-            BlockingQueue<Boolean> negativeQueue = negativeHelper.getHelperQueue();
-            helpers.add(negativeHelper);
-
-            // Create a thread for each child node.
-            List<Runnable> workers = new ArrayList<>();
-            workers.add(determineWorkerType(childNodes[0], conditionQueue));
-            workers.add(determineWorkerType(childNodes[1], positiveQueue));
-            workers.add(determineWorkerType(childNodes[2], negativeQueue));
-
-            // Start helpers and save their threads in helperThreads.
-            for (ConditionHelper helper : helpers) {
-                Thread helperThread = new Thread(helper);
-                helperThreads.add(helperThread);
-                helperThread.start();
-            }
-
-            // Start workers and save their threads in childThreads.
-            for (Runnable worker : workers) {
-                Thread childThread = new Thread(worker);
+                Thread childThread = admission.newNodeThread(childWorker);
                 childThreads.add(childThread);
                 childThread.start();
             }
 
-            Integer[] receivedValues = {-1, -1, -1};
-
-            for (int i = 0; i < 3; i++) {
-
-                ConditionPair pair;
-                
-                try {
-                    pair = myQueue.take();
-
-                } catch (InterruptedException e) {
-                    for (Thread helper : helperThreads) {
-                        helper.interrupt();
-                    }
+            // Wait until one of the children decides the value.
+            while (!aggregator.isDecided()) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
                     for (Thread child : childThreads) {
                         child.interrupt();
                     }
                     Thread.currentThread().interrupt();
                     return;
                 }
-
-                Integer childNumber = pair.getChildNumber();
-                Boolean value = pair.getValue();
-                receivedValues[childNumber] = value ? 1 : 0;
-
-                // Condition is evaluated and we choose 'true' path:
-                if (receivedValues[0] == 1 && receivedValues[1] != -1) {
-                    for (Thread helper : helperThreads) {
-                        helper.interrupt();
-                    }
-                    for (Thread child : childThreads) {
-                        child.interrupt();
-                    }
-                    // Put into parent's queue:
-                    try {
-                        parentQueue.put(receivedValues[1] == 1);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                    break;
-                }
-
-                // Condition is evaluated and we choose 'false' path:
-                if (receivedValues[0] == 0 && receivedValues[2] != -1) {
-                    for (Thread helper : helperThreads) {
-                        helper.interrupt();
-                    }
-                    for (Thread child : childThreads) {
-                        child.interrupt();
-                    }
-                    // Put into parent's queue:
-                    try {
-                        parentQueue.put(receivedValues[2] == 1);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                    break;
-                }
-
-
-                // Lazy evaluation:
-                if (receivedValues[1] != -1 && receivedValues[2] != -1 && receivedValues[1] == receivedValues[2]) {
-                    for (Thread helper : helperThreads) {
-                        helper.interrupt();
-                    }
-                    for (Thread child : childThreads) {
-                        child.interrupt();
-                    }
-                    // Put into parent's queue:
-                    try {
-                        parentQueue.put(receivedValues[1] == 1);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                    break;
-                }
-            }
-        }
-    }
-
-    /**
-     * ThresholdWorker:
-     * Thread executing this code works on a node that represents one of these:
-     * - GTx
-     * - LTx
-     * It uses one blocking queue to communicate with child nodes.
-     */
-    private static class ThresholdWorker implements Runnable {
-            
-        private final ThresholdNode node;
-        private final BlockingQueue<Boolean> parentQueue;
-        private final BlockingQueue<Boolean> myQueue;
-        private final List<Thread> childThreads;
-    
-        public ThresholdWorker(
-            ThresholdNode node,
-            BlockingQueue<Boolean> parentQueue
-        ) {
-            this.node = node;
-            this.parentQueue = parentQueue;
-            this.myQueue = new LinkedBlockingQueue<>();
-            this.childThreads = new ArrayList<>();
-        }
-
-        @Override
-        public void run() {
-            // Get node type.
-            NodeType type = node.getType();
-
-            // Get threshold.
-            int threshold = node.getThreshold();
-
-            // Get children of the current node.
-            CircuitNode[] childNodes;
-            try {
-                childNodes = node.getArgs();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return;
-            }
-
-            int numChildren = childNodes.length;
-            int valuesLeft = childNodes.length;
-            Boolean value;
-
-            // Check if there is a need to evaluate the circuit.
-            if (type == NodeType.GT && numChildren <= threshold) {
-                value = false;
-            } 
-            else if (type == NodeType.LT && numChildren < threshold) {
-                value = true;
-            }
-            else {
-                // Create a thread for each child node.
-                for (CircuitNode child : childNodes) {
-                    Runnable childWorker;
-                    try {
-                        childWorker = determineWorkerType(child, myQueue);
-                    } catch (RuntimeException e) {
-                        // Illegal node type.
-                        continue;
-                    }
-                    Thread childThread = new Thread(childWorker);
-                    childThreads.add(childThread);
-                    childThread.start();
-                }
-
-                int gotTrue = 0;
-                int gotFalse = 0;
-
-                while (valuesLeft > 0) {
-                    Boolean childValue;
-                    try {
-                        childValue = myQueue.take();
-                    } catch (InterruptedException e) {
-                        for (Thread child : childThreads) {
-                            child.interrupt();
-                        }
-                        Thread.currentThread().interrupt();
-                        return;
-                    }
-                    // Count new value:
-                    if (childValue) {
-                        gotTrue++;
-                    } else {
-                        gotFalse++;
-                    }
-                    // Check if we can break the loop:
-                    if (type == NodeType.GT) {
-                        if (gotTrue > threshold) {
-                            value = true;
-                            break;
-                        } else if (gotFalse >= numChildren - threshold) {
-                            value = false;
-                            break;
-                        }
-                    } else {
-                        if (gotTrue >= threshold) {
-                            value = false;
-                            break;
-                        } else if (gotFalse > numChildren - threshold) {
-                            value = true;
-                            break;
-                        }
-                    }
-                    valuesLeft--;
-                }
-                // Determine the value:
-                if (type == NodeType.GT) {
-                    value = gotTrue > threshold;
-                } else {
-                    value = gotTrue < threshold;
-                }
             }
 
             // Stop all child threads.
             for (Thread child : childThreads) {
                 child.interrupt();
             }
+        }
 
-            // Put the value in the parent queue.
-            try {
-                parentQueue.put(value);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return;
+        @Override
+        public void childDone(int childIndex, boolean value) {
+            Boolean nodeValue = aggregator.offer(childIndex, value);
+            if (nodeValue != null) {
+                // This child decided the node: pass the value up and let the worker clean up.
+                parent.childDone(index, nodeValue);
+                LockSupport.unpark(workerThread);
             }
         }
     }
 
     // ------------------------------------ Private methods ------------------------------------
 
-    private static class ConditionPair {
-        private final Integer childNumber;
-        private final Boolean value;
-
-        public ConditionPair(Integer childNumber, Boolean value) {
-            this.childNumber = childNumber;
-            this.value = value;
-        }
-
-        public Integer getChildNumber() {
-            return childNumber;
-        }
-
-        public Boolean getValue() {
-            return value;
-        }
-    }
-
-    private static Runnable determineWorkerType(CircuitNode node, BlockingQueue<Boolean> myQueue) throws RuntimeException {
+    private static Runnable determineWorkerType(
+        CircuitNode node,
+        Parent parent,
+        int index,
+        AdmissionController admission,
+        LeafValueCache leafCache
+    ) throws RuntimeException {
         NodeType nodeType = node.getType();
         switch (nodeType) {
             case LEAF:
-                return new LeafWorker((LeafNode) node, myQueue);
-            case AND, OR, NOT:
-                return new SimpleWorker(node, myQueue);
-            case IF:
-                return new ConditionWorker(node, myQueue);
-            case GT, LT:
-                return new ThresholdWorker((ThresholdNode) node, myQueue);
+                return new LeafWorker((LeafNode) node, parent, index, leafCache);
+            case AND, OR, NOT, GT, LT, IF:
+                return new InnerWorker(node, parent, index, admission, leafCache);
             default:
                 throw new RuntimeException("Illegal type " + nodeType);
         }
@@ -7,114 +7,292 @@ package cp2024.solution;
 
 import cp2024.circuit.CircuitValue;
 
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.concurrent.Semaphore;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
-/** 
+/**
  * Implementation of the CircuitValue interface.
+ * The whole state is kept in a single atomic reference, which holds either:
+ * - a Boolean, once the value is computed,
+ * - BROKEN, if the solver was stopped (or the circuit cancelled) before the value was computed,
+ * - TIMED_OUT, if the deadline of the circuit passed before the value was computed,
+ * - the stack of threads waiting for the value (null if none), while pending.
+ * After completion getValue() is a single volatile read. Waiting threads are
+ * parked and are all unparked by the transition to a final state, so the
+ * value keeps no memory of past getValue() calls.
  */
 public class ParallelCircuitValue implements CircuitValue {
 
-    // Circuit value, semaphore to protect it.
-    private Boolean value;
-    private final Semaphore forValue;
-    
-    // Queue of threads waiting for value, semaphore to protect it.
-    private final Queue<Thread> waitingForValue;
-    private final Semaphore queueMutex;
+    // Final state of a value whose computation was stopped.
+    private static final Object BROKEN = new Object();
+
+    // Final state of a value whose computation missed its deadline.
+    private static final Object TIMED_OUT = new Object();
+
+    // Node of the stack of waiting threads.
+    private static final class Waiter {
+        private volatile Thread thread;
+        private volatile Waiter next;
+
+        private Waiter(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    private final AtomicReference<Object> state;
 
-    // Flag that indicates if the solver was stopped during computations, semaphore to protect it.
-    private Boolean isBroken;
-    private final Semaphore flagMutex;
+    // In-flight values of the solver, the value removes itself once it's done.
+    private final Set<ParallelCircuitValue> inFlight;
 
     // Thread that runs the circuit.
     private Thread circuitThread;
-    
-    public ParallelCircuitValue(Semaphore forValue) {
-        this.value = null;
-        this.forValue = forValue;
-        this.waitingForValue = new LinkedList<>();
-        this.queueMutex = new Semaphore(1, true); 
+
+    // Computation of the circuit if the solver runs on a pool (circuitThread is null then).
+    private PooledCircuitEngine.PooledCircuit pooledCircuit;
+
+    // Called once the value is computed or broken, set before the computation starts.
+    private volatile Runnable completionListener;
+
+    // Times out the value at its deadline, cancelled when the value completes.
+    private volatile Future<?> deadlineTimer;
+
+    public ParallelCircuitValue(Set<ParallelCircuitValue> inFlight) {
+        this.state = new AtomicReference<>(null);
+        this.inFlight = inFlight;
         this.circuitThread = null;
-        this.isBroken = false;
-        this.flagMutex = new Semaphore(1, true);
+        this.pooledCircuit = null;
+        this.completionListener = null;
+        this.deadlineTimer = null;
     }
 
+    // Throws InterruptedException also if the value missed its deadline (see isTimedOut()).
     @Override
     public boolean getValue() throws InterruptedException {
-        // Check if there was an interruption during computations:
-        // Important: this flag isn't set to true by stop() if computation is finished.
-        Boolean flagState;
+        // Fast path, the value is already known:
+        Object current = state.get();
+        if (current instanceof Boolean) {
+            return (Boolean) current;
+        }
         try {
-            flagMutex.acquire();
-        } catch (InterruptedException e) {
+            return awaitValue(false, 0);
+        } catch (TimeoutException e) {
             throw new InterruptedException();
         }
-        // Here we can read the flag state:
-        flagState = isBroken;
-        flagMutex.release();
+    }
 
-        // Solver was stopped and didn't compute this value:
-        if (flagState) {
-            throw new InterruptedException();
+    // Throws TimeoutException if the value isn't known within timeout or missed its deadline.
+    @Override
+    public boolean getValue(Duration timeout) throws InterruptedException, TimeoutException {
+        Object current = state.get();
+        if (current instanceof Boolean) {
+            return (Boolean) current;
         }
+        return awaitValue(true, System.nanoTime() + timeout.toNanos());
+    }
 
-        // Here we are sure that the value was computed/is being computed:
-        try {
-            queueMutex.acquire();
-        } catch (InterruptedException e) {
-            throw new InterruptedException();
-        }
-        // Add the thread to the queue of waiting threads:
-        waitingForValue.add(Thread.currentThread());
-        queueMutex.release();
+    /**
+     * Sets the value of the circuit and wakes up all waiting threads.
+     * Returns false if the value was already set or the computation was stopped.
+     */
+    public boolean setValue(boolean value) {
+        return complete(value);
+    }
 
-        // Wait for the value to be computed:
-        Boolean result;
-        try {
-            // We can wait here for a long time:
-            forValue.acquire();
-        } catch (InterruptedException e) {
-            throw new InterruptedException();
-        }
-        result = value;
-        // From now on, the value of the circuit is visible immediately.
-        forValue.release();
-        return result;
+    /**
+     * Marks the computation as stopped, waiting threads get InterruptedException.
+     * Returns false if the value was already computed.
+     */
+    public boolean setIsBroken() {
+        return complete(BROKEN);
     }
 
-    public void setValue(Boolean value) {
-        this.value = value;
+    /**
+     * Breaks the value and stops the threads or tasks computing the circuit.
+     * Returns false if the value was already computed.
+     */
+    public boolean stopComputation() {
+        return stop(BROKEN);
     }
 
-    public void setCircuitThread(Thread circuitThread) {
-        this.circuitThread = circuitThread;
+    // Called when the deadline of the circuit passes, stops the computation like stopComputation().
+    boolean timeOut() {
+        return stop(TIMED_OUT);
     }
 
-    public void setIsBroken() {
-        this.isBroken = true;
+    // Stops only this circuit, its threads or tasks are torn down right away.
+    @Override
+    public boolean cancel() {
+        return stopComputation();
+    }
+
+    // Returns true if the computation was stopped (by the solver, a cancel() or the deadline).
+    public boolean getIsBroken() {
+        Object current = state.get();
+        return current == BROKEN || current == TIMED_OUT;
+    }
+
+    // Returns true if the value wasn't computed before the deadline of the circuit.
+    public boolean isTimedOut() {
+        return state.get() == TIMED_OUT;
+    }
+
+    // Returns true if the value is computed or the computation was stopped.
+    public boolean isDone() {
+        Object current = state.get();
+        return current instanceof Boolean || current == BROKEN || current == TIMED_OUT;
+    }
+
+    public void setCircuitThread(Thread circuitThread) {
+        this.circuitThread = circuitThread;
     }
 
     public Thread getCircuitThread() {
         return circuitThread;
     }
 
-    public Queue<Thread> getQueue() {
-        return waitingForValue;
+    void setPooledCircuit(PooledCircuitEngine.PooledCircuit pooledCircuit) {
+        this.pooledCircuit = pooledCircuit;
     }
 
-    public Semaphore getQueueMutex() {
-        return queueMutex;
+    PooledCircuitEngine.PooledCircuit getPooledCircuit() {
+        return pooledCircuit;
     }
 
-    public Semaphore getFlagMutex() {
-        return flagMutex;
+    void setCompletionListener(Runnable completionListener) {
+        this.completionListener = completionListener;
     }
 
-    public Boolean getIsBroken() {
-        return isBroken;
+    void setDeadlineTimer(Future<?> deadlineTimer) {
+        this.deadlineTimer = deadlineTimer;
+        // The value might have completed before the timer was set.
+        if (isDone()) {
+            deadlineTimer.cancel(false);
+        }
     }
 
-}
+    // ------------------------------------ Private methods ------------------------------------
+
+    // Waits for a final state, until deadline (System.nanoTime()) if timed.
+    private boolean awaitValue(boolean timed, long deadline) throws InterruptedException, TimeoutException {
+        Waiter node = null;
+        boolean queued = false;
+        while (true) {
+            Object current = state.get();
+            if (current instanceof Boolean) {
+                return (Boolean) current;
+            }
+            // Solver was stopped and didn't compute this value:
+            if (current == BROKEN) {
+                throw new InterruptedException();
+            }
+            if (current == TIMED_OUT) {
+                throw new TimeoutException("Deadline of the circuit has passed.");
+            }
+            if (Thread.interrupted()) {
+                if (queued) {
+                    removeWaiter(node);
+                }
+                throw new InterruptedException();
+            }
+            long remaining = timed ? deadline - System.nanoTime() : 0;
+            if (timed && remaining <= 0) {
+                if (queued) {
+                    removeWaiter(node);
+                }
+                throw new TimeoutException("Value not computed in time.");
+            }
+
+            if (node == null) {
+                node = new Waiter(Thread.currentThread());
+            } else if (!queued) {
+                // Push the thread on the stack of waiting threads:
+                node.next = (Waiter) current;
+                queued = state.compareAndSet(current, node);
+            } else if (timed) {
+                LockSupport.parkNanos(this, remaining);
+            } else {
+                // We can wait here for a long time:
+                LockSupport.park(this);
+            }
+        }
+    }
 
+    // Moves the value to a final state without a value and stops the computation.
+    private boolean stop(Object finalState) {
+        if (!complete(finalState)) {
+            return false;
+        }
+        if (circuitThread != null) {
+            // circuitThread will see the broken value and interrupt all threads working on the circuit.
+            circuitThread.interrupt();
+        } else if (pooledCircuit != null) {
+            pooledCircuit.cancel();
+        }
+        return true;
+    }
+
+    private boolean complete(Object finalState) {
+        while (true) {
+            Object current = state.get();
+            if (current instanceof Boolean || current == BROKEN || current == TIMED_OUT) {
+                return false;
+            }
+            if (state.compareAndSet(current, finalState)) {
+                inFlight.remove(this);
+                Future<?> timer = deadlineTimer;
+                if (timer != null) {
+                    // Don't keep the value in the timer's queue until the deadline.
+                    timer.cancel(false);
+                }
+                if (completionListener != null) {
+                    completionListener.run();
+                }
+                // Wake up all threads that were waiting for the value.
+                for (Waiter waiter = (Waiter) current; waiter != null; waiter = waiter.next) {
+                    Thread thread = waiter.thread;
+                    if (thread != null) {
+                        waiter.thread = null;
+                        LockSupport.unpark(thread);
+                    }
+                }
+                return true;
+            }
+        }
+    }
+
+    // Unlinks an interrupted thread from the stack, so that it doesn't grow while pending.
+    private void removeWaiter(Waiter node) {
+        node.thread = null;
+        retry:
+        while (true) {
+            Object current = state.get();
+            if (!(current instanceof Waiter)) {
+                // Completed, the stack is gone.
+                return;
+            }
+            Waiter pred = null;
+            Waiter waiter = (Waiter) current;
+            while (waiter != null) {
+                Waiter succ = waiter.next;
+                if (waiter.thread != null) {
+                    pred = waiter;
+                } else if (pred != null) {
+                    pred.next = succ;
+                    if (pred.thread == null) {
+                        // pred was removed meanwhile, start over.
+                        continue retry;
+                    }
+                } else if (!state.compareAndSet(waiter, succ)) {
+                    continue retry;
+                }
+                waiter = succ;
+            }
+            return;
+        }
+    }
+
+}
@@ -0,0 +1,657 @@
+/**
+ * PooledCircuitEngine implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.Circuit;
+import cp2024.circuit.CircuitNode;
+import cp2024.circuit.LeafNode;
+import cp2024.circuit.NodeType;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Engine that evaluates circuits on a bounded pool of worker threads.
+ * Unlike the thread-per-node workers of ParallelCircuitSolver, inner nodes
+ * never block a thread: a node task only expands its children and then
+ * reacts to the values they report. A pool thread is held for a longer
+ * time only while LeafNode.getValue() is running. Node tasks waiting for
+ * a pool thread are picked by a FairTaskPool: by the Priority of their
+ * circuits, then fairly between tenants, within their caps.
+ * With sharing of subcircuits, a node object that appears under several
+ * parents (see InterningCircuitBuilder) gets a single task per circuit,
+ * whose value is reported to every parent. With a SubcircuitCache, an inner
+ * node whose value is cached is not expanded at all. With LeafStatistics,
+ * children of a node are queued in the order they are expected to decide it.
+ */
+class PooledCircuitEngine {
+
+    // Worker threads of the engine:
+    private final FairTaskPool pool;
+
+    // Counts the nodes running on the pool:
+    private final AdmissionController admission;
+
+    // Whether a node under several parents gets a single task:
+    private final boolean shareSubcircuits;
+
+    // Values of subcircuits across solves, null if not cached:
+    private final SubcircuitCache cache;
+
+    // Values of leaves, null if not cached:
+    private final LeafValueCache leafCache;
+
+    // Latency and outcome of leaves, null if children start in the circuit's order:
+    private final LeafStatistics statistics;
+
+    PooledCircuitEngine(SolverOptions options, AdmissionController admission) {
+        if (options.getPoolSize() < 1) {
+            throw new IllegalArgumentException("Pool size must be positive.");
+        }
+        this.pool = new FairTaskPool(options.getPoolSize(), "circuit-pool");
+        this.admission = admission;
+        this.shareSubcircuits = options.isSharingSubcircuits();
+        this.cache = options.getSubcircuitCache();
+        this.leafCache = options.getLeafCache();
+        this.statistics = options.getLeafStatistics();
+    }
+
+    /**
+     * Prepares the computation of the circuit, the result will be put in
+     * circuitValue. With a simplifier (null if off), the circuit is simplified
+     * by a task on the pool once it is started.
+     */
+    PooledCircuit create(Circuit circuit, CircuitSimplifier simplifier, ParallelCircuitValue circuitValue,
+                         Priority priority, Tenant tenant) {
+        PooledCircuit pooledCircuit = new PooledCircuit(circuit, simplifier, circuitValue, priority, tenant);
+        circuitValue.setPooledCircuit(pooledCircuit);
+        return pooledCircuit;
+    }
+
+    // Interrupts all pool threads, new computations are rejected.
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // ------------------------------------ Circuit context ------------------------------------
+
+    /**
+     * PooledCircuit:
+     * State of a single solve() call. It plays the role of CircuitWorker:
+     * the root task reports the value here, and cancel() stops the whole
+     * tree of node tasks once the value is broken.
+     */
+    final class PooledCircuit {
+
+        private final ParallelCircuitValue circuitValue;   // Some external threads wait here.
+        private final Priority priority;                    // Of all node tasks of the circuit.
+        private final Tenant tenant;
+        private final Map<CircuitNode, NodeTask> tasks;     // Tasks of shared nodes, null if not sharing.
+        private final Circuit circuit;                      // As given to solve().
+        private final CircuitSimplifier simplifier;         // Null if the circuit isn't simplified.
+        private Map<CircuitNode, SubcircuitCache.Key> cacheKeys;  // Computed on first use.
+
+        // Set before the root task is scheduled, so node tasks see it.
+        private CircuitNode rootNode;
+
+        // All fields below are protected by startLock, not by the monitor, which
+        // cacheKey() holds while it walks the circuit.
+        private final Object startLock = new Object();
+        private NodeTask root;
+        private Future<?> simplification;
+        private boolean cancelled;
+
+        private PooledCircuit(Circuit circuit, CircuitSimplifier simplifier, ParallelCircuitValue circuitValue,
+                              Priority priority, Tenant tenant) {
+            this.circuitValue = circuitValue;
+            this.priority = priority;
+            this.tenant = tenant;
+            this.tasks = shareSubcircuits ? new IdentityHashMap<>() : null;
+            this.circuit = circuit;
+            this.simplifier = simplifier;
+            this.cacheKeys = null;
+            this.rootNode = null;
+            this.root = null;
+            this.simplification = null;
+            this.cancelled = false;
+        }
+
+        // Starts the computation on the pool.
+        void start() {
+            if (simplifier == null) {
+                prepare(circuit.getRoot());
+                return;
+            }
+            // getArgs() may block, so the circuit is simplified on the pool, not by the caller.
+            Future<?> submitted = submit(this::simplify, false);
+            boolean cancelledMeanwhile;
+            synchronized (startLock) {
+                simplification = submitted;
+                cancelledMeanwhile = cancelled;
+            }
+            if (cancelledMeanwhile && submitted != null) {
+                submitted.cancel(true);
+            }
+        }
+
+        // Cancels all node tasks of the circuit.
+        void cancel() {
+            NodeTask rootTask;
+            Future<?> pending;
+            synchronized (startLock) {
+                cancelled = true;
+                rootTask = root;
+                pending = simplification;
+            }
+            if (pending != null) {
+                pending.cancel(true);
+            }
+            if (rootTask != null) {
+                rootTask.unsubscribe(null, 0);
+            }
+        }
+
+        private void simplify() {
+            CircuitNode simplified;
+            try {
+                simplified = simplifier.simplify(circuit).getCircuit().getRoot();
+            } catch (InterruptedException e) {
+                // The circuit was cancelled.
+                return;
+            }
+            prepare(simplified);
+        }
+
+        // Creates the task of the root and starts it, unless the circuit was cancelled meanwhile.
+        private void prepare(CircuitNode node) {
+            rootNode = node;
+            NodeTask rootTask = taskFor(node, null, 0);
+            boolean cancelledMeanwhile;
+            synchronized (startLock) {
+                root = rootTask;
+                cancelledMeanwhile = cancelled;
+            }
+            if (cancelledMeanwhile) {
+                rootTask.unsubscribe(null, 0);
+            } else {
+                rootTask.schedule();
+            }
+        }
+
+        // Called by the root task when the value of the circuit is known.
+        private void complete(boolean value) {
+            circuitValue.setValue(value);
+        }
+
+        /**
+         * Returns the task of the child node, subscribed by the parent.
+         * A shared node that is still needed by another parent keeps its task;
+         * a task whose parents all unsubscribed is cancelled and forgotten,
+         * so a later parent starts the node again.
+         */
+        private NodeTask taskFor(CircuitNode node, NodeTask parent, int index) {
+            if (tasks == null) {
+                return createTask(this, node, parent, index);
+            }
+            synchronized (tasks) {
+                NodeTask task = tasks.get(node);
+                if (task != null && task.subscribe(parent, index)) {
+                    return task;
+                }
+                task = createTask(this, node, parent, index);
+                tasks.put(node, task);
+                return task;
+            }
+        }
+
+        // Cache key of the subcircuit, null if it may not be cached. Keys of the whole circuit
+        // are computed once, by the root task.
+        private SubcircuitCache.Key cacheKey(CircuitNode node) throws InterruptedException {
+            if (cache == null) {
+                return null;
+            }
+            synchronized (this) {
+                if (cacheKeys == null) {
+                    cacheKeys = cache.keysOf(rootNode);
+                }
+                return cacheKeys.get(node);
+            }
+        }
+
+        // Returns the cached value of the subcircuit, null if there is none.
+        private Boolean cachedValue(SubcircuitCache.Key key) {
+            return key == null ? null : cache.get(key);
+        }
+
+        private void cacheValue(SubcircuitCache.Key key, boolean value) {
+            if (key != null) {
+                cache.put(key, value);
+            }
+        }
+
+        private boolean leafValue(LeafNode leaf) throws InterruptedException {
+            if (statistics == null) {
+                return leafCache == null ? leaf.getValue() : leafCache.getValue(leaf);
+            }
+            long start = System.nanoTime();
+            boolean value = leafCache == null ? leaf.getValue() : leafCache.getValue(leaf);
+            // Interrupted calls throw, so only completed ones are recorded.
+            statistics.record(leaf, System.nanoTime() - start, value);
+            return value;
+        }
+
+        // Order to schedule the children in, null for the circuit's order.
+        private int[] startOrder(CircuitNode node, CircuitNode[] childNodes) {
+            return statistics == null ? null : statistics.startOrder(node.getType(), childNodes);
+        }
+
+        // Called by a cancelled task, so that no parent subscribes to it any more.
+        private void forget(CircuitNode node, NodeTask task) {
+            if (tasks != null) {
+                synchronized (tasks) {
+                    tasks.remove(node, task);
+                }
+            }
+        }
+
+        private Future<?> submit(Runnable task, boolean leaf) {
+            try {
+                return pool.submit(() -> {
+                    admission.nodeStarted();
+                    try {
+                        task.run();
+                    } finally {
+                        admission.nodeFinished();
+                    }
+                }, priority, tenant, leaf);
+            } catch (RejectedExecutionException e) {
+                // The pool is shut down only when the solver is stopped.
+                circuitValue.stopComputation();
+                return null;
+            }
+        }
+    }
+
+    // -------------------------------------- Node tasks ---------------------------------------
+
+    private static NodeTask createTask(PooledCircuit circuit, CircuitNode node, NodeTask parent, int index) {
+        NodeType nodeType = node.getType();
+        switch (nodeType) {
+            case LEAF:
+                return new LeafTask(circuit, (LeafNode) node, parent, index);
+            case AND, OR, NOT, GT, LT, IF:
+                return new InnerTask(circuit, node, parent, index);
+            default:
+                throw new RuntimeException("Illegal type " + nodeType);
+        }
+    }
+
+    /**
+     * Subscription:
+     * A parent task (null for the circuit itself) waiting for the value of
+     * a node task, as the child at the given index. Protected by the monitor
+     * of the node task.
+     */
+    private static final class Subscription {
+
+        private final NodeTask parent;
+        private final int index;
+        private boolean active;     // The parent still needs the value.
+        private boolean delivered;  // The value was reported to the parent.
+
+        private Subscription(NodeTask parent, int index) {
+            this.parent = parent;
+            this.index = index;
+            this.active = true;
+            this.delivered = false;
+        }
+    }
+
+    /**
+     * NodeTask:
+     * Evaluation of a single node of the circuit. Each task is run on the pool
+     * at most once, and not at all if it is cancelled before. The value of
+     * the node is reported to every subscribed parent task (or to the circuit
+     * in case of the root). The task is cancelled once no subscriber needs it.
+     * Locks of different tasks are never held at the same time.
+     */
+    private abstract static class NodeTask {
+
+        protected final PooledCircuit circuit;
+        private final CircuitNode node;
+
+        // All fields below are protected by the task's monitor.
+        private final Subscription first;   // The parent that created the task.
+        private List<Subscription> more;    // Parents that share the task, null if none.
+        private int activeSubscriptions;
+        private boolean scheduled;
+        private Future<?> future;
+        private boolean value;              // Valid once done.
+        protected boolean cancelled;
+        protected boolean done;
+
+        protected NodeTask(PooledCircuit circuit, CircuitNode node, NodeTask parent, int index) {
+            this.circuit = circuit;
+            this.node = node;
+            this.first = new Subscription(parent, index);
+            this.more = null;
+            this.activeSubscriptions = 1;
+            this.scheduled = false;
+            this.future = null;
+            this.cancelled = false;
+            this.done = false;
+        }
+
+        // Executed on a pool thread.
+        protected abstract void run();
+
+        // Leaves may block a pool thread for long, so tenants have a separate cap on them.
+        protected boolean isLeaf() {
+            return false;
+        }
+
+        // Adds a parent of a shared node. Returns false if the task is already cancelled.
+        final synchronized boolean subscribe(NodeTask parent, int index) {
+            if (cancelled) {
+                return false;
+            }
+            if (more == null) {
+                more = new ArrayList<>();
+            }
+            more.add(new Subscription(parent, index));
+            activeSubscriptions++;
+            return true;
+        }
+
+        // Submits the task to the pool, or reports the value if a shared task is already done.
+        final void schedule() {
+            boolean alreadyDone;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                alreadyDone = done;
+                if (scheduled && !alreadyDone) {
+                    // Shared task, its value will be reported to the new parent as well.
+                    return;
+                }
+                scheduled = true;
+            }
+            if (alreadyDone) {
+                // A parent subscribed after the value was known.
+                report();
+                return;
+            }
+            Future<?> submitted = circuit.submit(this::run, isLeaf());
+            boolean cancelledMeanwhile;
+            synchronized (this) {
+                future = submitted;
+                cancelledMeanwhile = cancelled;
+            }
+            if (cancelledMeanwhile && submitted != null) {
+                submitted.cancel(true);
+            }
+        }
+
+        // The parent no longer needs the value. The last one to leave cancels the task.
+        final void unsubscribe(NodeTask parent, int index) {
+            synchronized (this) {
+                Subscription subscription = find(parent, index);
+                if (subscription == null || !subscription.active) {
+                    return;
+                }
+                subscription.active = false;
+                activeSubscriptions--;
+                if (activeSubscriptions > 0) {
+                    return;
+                }
+            }
+            cancel();
+        }
+
+        // Stops the task and all its descendants. Finished tasks are left alone.
+        private void cancel() {
+            Future<?> submitted;
+            synchronized (this) {
+                if (cancelled || done) {
+                    return;
+                }
+                cancelled = true;
+                submitted = future;
+            }
+            circuit.forget(node, this);
+            if (submitted != null) {
+                // Interrupts the pool thread if the task is running.
+                submitted.cancel(true);
+            }
+            cancelChildren();
+        }
+
+        protected void cancelChildren() {
+            // Leaves have no children.
+        }
+
+        protected void childDone(int childIndex, boolean value) {
+            throw new IllegalStateException("Leaves have no children.");
+        }
+
+        // Sets the value of the node. Returns false if the task was cancelled before.
+        protected final synchronized boolean finish(boolean value) {
+            if (cancelled) {
+                return false;
+            }
+            this.done = true;
+            this.value = value;
+            return true;
+        }
+
+        // Passes the value of the node up to the parents that haven't got it yet. Called once finished.
+        protected final void report() {
+            boolean result;
+            boolean toFirst;
+            List<Subscription> toMore = null;
+            synchronized (this) {
+                result = value;
+                toFirst = takePending(first);
+                if (more != null) {
+                    for (Subscription subscription : more) {
+                        if (takePending(subscription)) {
+                            if (toMore == null) {
+                                toMore = new ArrayList<>();
+                            }
+                            toMore.add(subscription);
+                        }
+                    }
+                }
+            }
+            if (toFirst) {
+                reportTo(first, result);
+            }
+            if (toMore != null) {
+                for (Subscription subscription : toMore) {
+                    reportTo(subscription, result);
+                }
+            }
+        }
+
+        private boolean takePending(Subscription subscription) {
+            if (!subscription.active || subscription.delivered) {
+                return false;
+            }
+            subscription.delivered = true;
+            return true;
+        }
+
+        private void reportTo(Subscription subscription, boolean result) {
+            if (subscription.parent == null) {
+                circuit.complete(result);
+            } else {
+                subscription.parent.childDone(subscription.index, result);
+            }
+        }
+
+        private Subscription find(NodeTask parent, int index) {
+            if (first.parent == parent && first.index == index) {
+                return first;
+            }
+            if (more != null) {
+                for (Subscription subscription : more) {
+                    if (subscription.parent == parent && subscription.index == index) {
+                        return subscription;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * LeafTask:
+     * Calls LeafNode.getValue() on a pool thread.
+     */
+    private static class LeafTask extends NodeTask {
+
+        private final LeafNode node;
+
+        public LeafTask(PooledCircuit circuit, LeafNode node, NodeTask parent, int index) {
+            super(circuit, node, parent, index);
+            this.node = node;
+        }
+
+        @Override
+        protected boolean isLeaf() {
+            return true;
+        }
+
+        @Override
+        protected void run() {
+            boolean value;
+            try {
+                value = circuit.leafValue(node);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (finish(value)) {
+                report();
+            }
+        }
+    }
+
+    /**
+     * InnerTask:
+     * Works on a node with children (NOT, AND, OR, GTx, LTx, IF).
+     * run() gets a task for each child node; the children report their
+     * values through childDone() to a lock-free NodeAggregator, and as soon as
+     * it determines the value of the node, the task unsubscribes from the
+     * remaining children, which cancels those that no other parent needs
+     * (short-circuit).
+     */
+    private static class InnerTask extends NodeTask {
+
+        private final CircuitNode node;
+        private NodeAggregator aggregator;  // Published to the children by scheduling them.
+        private SubcircuitCache.Key cacheKey;   // Likewise, null if the value isn't cached.
+        private NodeTask[] children;        // Protected by the task's monitor.
+
+        public InnerTask(PooledCircuit circuit, CircuitNode node, NodeTask parent, int index) {
+            super(circuit, node, parent, index);
+            this.node = node;
+            this.aggregator = null;
+            this.cacheKey = null;
+            this.children = new NodeTask[0];
+        }
+
+        @Override
+        protected void run() {
+            // Get children of the current node.
+            CircuitNode[] childNodes;
+            try {
+                childNodes = node.getArgs();
+                cacheKey = circuit.cacheKey(node);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            // The value of the same subcircuit might be known from an earlier solve.
+            Boolean cached = circuit.cachedValue(cacheKey);
+            if (cached != null) {
+                if (finish(cached)) {
+                    report();
+                }
+                return;
+            }
+
+            aggregator = NodeAggregator.forNode(node, childNodes.length);
+            // Check if there is a need to evaluate the children.
+            Boolean value = aggregator.valueWithoutChildren();
+            if (value != null) {
+                if (finish(value)) {
+                    report();
+                }
+                return;
+            }
+
+            // Tasks of shared children may already exist, so they are looked up outside of the lock.
+            NodeTask[] created = new NodeTask[childNodes.length];
+            for (int i = 0; i < childNodes.length; i++) {
+                created[i] = circuit.taskFor(childNodes[i], this, i);
+            }
+            // A shared child that was already running may have reported to its new
+            // subscription and decided the node, before the children were published
+            // for cancelChildren(); then they are unsubscribed here.
+            boolean finishedMeanwhile;
+            synchronized (this) {
+                finishedMeanwhile = cancelled || done;
+                if (!finishedMeanwhile) {
+                    children = created;
+                }
+            }
+            if (finishedMeanwhile) {
+                for (int i = 0; i < created.length; i++) {
+                    created[i].unsubscribe(this, i);
+                }
+                return;
+            }
+            // If the task gets cancelled meanwhile, children see the flag and aren't run.
+            int[] order = circuit.startOrder(node, childNodes);
+            for (int i = 0; i < created.length; i++) {
+                created[order == null ? i : order[i]].schedule();
+            }
+        }
+
+        @Override
+        protected void childDone(int childIndex, boolean value) {
+            Boolean result = aggregator.offer(childIndex, value);
+            if (result == null) {
+                return;
+            }
+            if (!finish(result)) {
+                return;
+            }
+            circuit.cacheValue(cacheKey, result);
+            // The remaining children won't change the value.
+            cancelChildren();
+            report();
+        }
+
+        @Override
+        protected void cancelChildren() {
+            NodeTask[] toCancel;
+            synchronized (this) {
+                toCancel = children;
+            }
+            for (int i = 0; i < toCancel.length; i++) {
+                toCancel[i].unsubscribe(this, i);
+            }
+        }
+    }
+}
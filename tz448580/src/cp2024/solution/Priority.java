@@ -0,0 +1,21 @@
+/**
+ * Priority enum.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+/**
+ * Priority class of a circuit. When capacity is limited, circuits waiting
+ * for admission and node tasks waiting for a pool thread are served in
+ * priority order (FIFO within a class). Running nodes are never preempted.
+ * Node threads of the thread-per-node mode are scheduled by the OS, so there
+ * the priority only decides the order of admission.
+ */
+public enum Priority {
+    // Interactive requests, served first.
+    HIGH,
+    NORMAL,
+    // Background batch work, served when nothing else is waiting.
+    LOW
+}
@@ -0,0 +1,21 @@
+/**
+ * RejectedCircuitValue implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.CircuitValue;
+
+/**
+ * Value returned by solve() for a circuit that wasn't admitted, because
+ * the solver was overloaded. Unlike BrokenCircuitValue it doesn't mean that
+ * the solver was stopped, so callers can tell overload apart and retry later.
+ * The circuit is never evaluated and getValue() throws InterruptedException.
+ */
+public class RejectedCircuitValue implements CircuitValue {
+    @Override
+    public boolean getValue() throws InterruptedException {
+        throw new InterruptedException();
+    }
+}
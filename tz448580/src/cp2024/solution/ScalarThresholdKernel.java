@@ -0,0 +1,68 @@
+/**
+ * ScalarThresholdKernel implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+/**
+ * ThresholdKernel in plain Java, the fallback of the vector kernel.
+ * The true children of all rows are added into a bit-parallel counter (one
+ * word per bit of the count per word of the block, added to like a
+ * ripple-carry adder), which is then compared with the threshold bit by bit.
+ * Inner loops run over the words of the block, which the JIT may vectorize
+ * on its own.
+ */
+public final class ScalarThresholdKernel implements ThresholdKernel {
+
+    public static final ScalarThresholdKernel INSTANCE = new ScalarThresholdKernel();
+
+    private ScalarThresholdKernel() {
+    }
+
+    @Override
+    public void evaluate(boolean gt, int threshold, int[] children, int from, int to,
+                         long[] values, int node, int block, int words, long[] counter) {
+        int out = node * block;
+        int count = to - from;
+        // Counts go up to count, thresholds outside of 0 .. count are decided by arity.
+        if ((gt ? threshold >= count : threshold > count) || (!gt && threshold <= 0)) {
+            long decided = !gt && threshold > count ? -1L : 0L;
+            for (int w = 0; w < words; w++) {
+                values[out + w] = decided;
+            }
+            return;
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(count);
+        for (int i = 0; i < bits * block; i++) {
+            counter[i] = 0L;
+        }
+        for (int i = from; i < to; i++) {
+            // Adds 1 in the rows where the child is true.
+            int child = children[i] * block;
+            for (int w = 0; w < words; w++) {
+                long carry = values[child + w];
+                for (int b = 0; b < bits && carry != 0L; b++) {
+                    long next = counter[b * block + w] & carry;
+                    counter[b * block + w] ^= carry;
+                    carry = next;
+                }
+            }
+        }
+        // From the most significant bit: rows whose count is already greater, and those equal so far.
+        for (int w = 0; w < words; w++) {
+            long greater = 0L;
+            long equal = -1L;
+            for (int b = bits - 1; b >= 0; b--) {
+                long plane = counter[b * block + w];
+                if ((threshold >>> b & 1) == 0) {
+                    greater |= equal & plane;
+                    equal &= ~plane;
+                } else {
+                    equal &= plane;
+                }
+            }
+            values[out + w] = gt ? greater : ~(greater | equal);
+        }
+    }
+}
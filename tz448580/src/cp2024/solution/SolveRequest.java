@@ -0,0 +1,105 @@
+/**
+ * SolveRequest implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Per-circuit parameters of ParallelCircuitSolver.solve():
+ *
+ *   solver.solve(circuit, SolveRequest.builder()
+ *       .tenant("customer-42")
+ *       .priority(Priority.HIGH)
+ *       .timeout(Duration.ofMillis(200))
+ *       .build());
+ *
+ * By default a circuit belongs to DEFAULT_TENANT, has NORMAL priority and no deadline.
+ */
+public final class SolveRequest {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    private static final SolveRequest DEFAULTS = builder().build();
+
+    private final String tenant;
+    private final Priority priority;
+    private final Instant deadline;
+
+    private SolveRequest(Builder builder) {
+        this.tenant = builder.tenant;
+        this.priority = builder.priority;
+        this.deadline = builder.deadline;
+    }
+
+    public static SolveRequest defaults() {
+        return DEFAULTS;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    // Deadline of the circuit, null if there is none.
+    public Instant getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Builder:
+     * Collects the parameters, build() checks that they make sense.
+     */
+    public static final class Builder {
+
+        private String tenant = DEFAULT_TENANT;
+        private Priority priority = Priority.NORMAL;
+        private Instant deadline = null;
+
+        private Builder() {
+        }
+
+        // Node work of the pooled engine is shared fairly between tenants, see SolverOptions.
+        public Builder tenant(String tenant) {
+            this.tenant = tenant;
+            return this;
+        }
+
+        public Builder priority(Priority priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        // The circuit is timed out at the deadline, null means no deadline.
+        public Builder deadline(Instant deadline) {
+            this.deadline = deadline;
+            return this;
+        }
+
+        // Same as deadline(Instant.now().plus(timeout)).
+        public Builder timeout(Duration timeout) {
+            this.deadline = Instant.now().plus(timeout);
+            return this;
+        }
+
+        public SolveRequest build() {
+            if (tenant == null) {
+                throw new IllegalArgumentException("Tenant must be set.");
+            }
+            if (priority == null) {
+                throw new IllegalArgumentException("Priority must be set.");
+            }
+            return new SolveRequest(this);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * SolverOptions implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuration of ParallelCircuitSolver. Options are immutable once built:
+ *
+ *   SolverOptions options = SolverOptions.builder()
+ *       .maxInFlightCircuits(100)
+ *       .maxQueuedSolves(1000)
+ *       .overflowPolicy(OverflowPolicy.FAIL_FAST)
+ *       .build();
+ *
+ * By default every node gets its own thread and there are no limits.
+ * Tenant weights and caps, sharing of subcircuits, the subcircuit cache and
+ * ordering by leaf statistics are applied by the pooled engine (poolSize > 0).
+ */
+public final class SolverOptions {
+
+    // No limit on the number of circuits, nodes or queued solves.
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final int poolSize;
+    private final int maxInFlightCircuits;
+    private final int maxInFlightNodes;
+    private final int maxQueuedSolves;
+    private final OverflowPolicy overflowPolicy;
+    private final Map<String, Integer> tenantWeights;
+    private final int maxNodesPerTenant;
+    private final int maxLeavesPerTenant;
+    private final boolean shareSubcircuits;
+    private final SubcircuitCache subcircuitCache;
+    private final LeafValueCache leafCache;
+    private final LeafStatistics leafStatistics;
+    private final boolean simplify;
+
+    private SolverOptions(Builder builder) {
+        this.poolSize = builder.poolSize;
+        this.maxInFlightCircuits = builder.maxInFlightCircuits;
+        this.maxInFlightNodes = builder.maxInFlightNodes;
+        this.maxQueuedSolves = builder.maxQueuedSolves;
+        this.overflowPolicy = builder.overflowPolicy;
+        this.tenantWeights = Map.copyOf(builder.tenantWeights);
+        this.maxNodesPerTenant = builder.maxNodesPerTenant;
+        this.maxLeavesPerTenant = builder.maxLeavesPerTenant;
+        this.shareSubcircuits = builder.shareSubcircuits;
+        this.subcircuitCache = builder.subcircuitCache;
+        this.leafCache = builder.leafCache;
+        this.leafStatistics = builder.leafStatistics;
+        this.simplify = builder.simplify;
+    }
+
+    public static SolverOptions defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // Size of the shared pool of node threads, 0 if every node gets its own thread.
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    // Maximum number of circuits evaluated at the same time.
+    public int getMaxInFlightCircuits() {
+        return maxInFlightCircuits;
+    }
+
+    // New circuits are not started while this many nodes are being evaluated.
+    public int getMaxInFlightNodes() {
+        return maxInFlightNodes;
+    }
+
+    // Maximum number of circuits waiting for admission.
+    public int getMaxQueuedSolves() {
+        return maxQueuedSolves;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    // Share of the pool of the tenant relative to other tenants, 1 if not set.
+    public int getTenantWeight(String tenant) {
+        return tenantWeights.getOrDefault(tenant, 1);
+    }
+
+    // Maximum number of nodes of one tenant running on the pool at the same time.
+    public int getMaxNodesPerTenant() {
+        return maxNodesPerTenant;
+    }
+
+    // Maximum number of leaves of one tenant running on the pool at the same time.
+    public int getMaxLeavesPerTenant() {
+        return maxLeavesPerTenant;
+    }
+
+    // Whether a node object under several parents is evaluated once per solve().
+    public boolean isSharingSubcircuits() {
+        return shareSubcircuits;
+    }
+
+    // Cache consulted before evaluating a subcircuit, null if there is none.
+    public SubcircuitCache getSubcircuitCache() {
+        return subcircuitCache;
+    }
+
+    // Cache of values of all leaves, null if leaves are always evaluated.
+    public LeafValueCache getLeafCache() {
+        return leafCache;
+    }
+
+    // Statistics that decide the order children are started in, null if they start in the circuit's order.
+    public LeafStatistics getLeafStatistics() {
+        return leafStatistics;
+    }
+
+    // Whether circuits are rewritten by a CircuitSimplifier before they are evaluated.
+    public boolean isSimplifying() {
+        return simplify;
+    }
+
+    // Returns true if solve() may have to queue circuits.
+    boolean isBounded() {
+        return maxInFlightCircuits != UNLIMITED || maxInFlightNodes != UNLIMITED;
+    }
+
+    /**
+     * Builder:
+     * Collects the options, build() checks that they make sense.
+     */
+    public static final class Builder {
+
+        private int poolSize = 0;
+        private int maxInFlightCircuits = UNLIMITED;
+        private int maxInFlightNodes = UNLIMITED;
+        private int maxQueuedSolves = UNLIMITED;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private final Map<String, Integer> tenantWeights = new HashMap<>();
+        private int maxNodesPerTenant = UNLIMITED;
+        private int maxLeavesPerTenant = UNLIMITED;
+        private boolean shareSubcircuits = false;
+        private SubcircuitCache subcircuitCache = null;
+        private LeafValueCache leafCache = null;
+        private LeafStatistics leafStatistics = null;
+        private boolean simplify = false;
+
+        private Builder() {
+        }
+
+        public Builder poolSize(int poolSize) {
+            this.poolSize = poolSize;
+            return this;
+        }
+
+        public Builder maxInFlightCircuits(int maxInFlightCircuits) {
+            this.maxInFlightCircuits = maxInFlightCircuits;
+            return this;
+        }
+
+        public Builder maxInFlightNodes(int maxInFlightNodes) {
+            this.maxInFlightNodes = maxInFlightNodes;
+            return this;
+        }
+
+        public Builder maxQueuedSolves(int maxQueuedSolves) {
+            this.maxQueuedSolves = maxQueuedSolves;
+            return this;
+        }
+
+        public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        public Builder tenantWeight(String tenant, int weight) {
+            if (weight < 1) {
+                throw new IllegalArgumentException("Tenant weight must be positive.");
+            }
+            this.tenantWeights.put(tenant, weight);
+            return this;
+        }
+
+        public Builder maxNodesPerTenant(int maxNodesPerTenant) {
+            this.maxNodesPerTenant = maxNodesPerTenant;
+            return this;
+        }
+
+        public Builder maxLeavesPerTenant(int maxLeavesPerTenant) {
+            this.maxLeavesPerTenant = maxLeavesPerTenant;
+            return this;
+        }
+
+        public Builder shareSubcircuits(boolean shareSubcircuits) {
+            this.shareSubcircuits = shareSubcircuits;
+            return this;
+        }
+
+        // The cache may be shared by many solvers.
+        public Builder subcircuitCache(SubcircuitCache subcircuitCache) {
+            this.subcircuitCache = subcircuitCache;
+            return this;
+        }
+
+        // Values of all leaves are taken from the cache, also by the thread-per-node engine.
+        public Builder leafCache(LeafValueCache leafCache) {
+            this.leafCache = leafCache;
+            return this;
+        }
+
+        // Updated by every leaf the pool runs; may be shared by many solvers.
+        public Builder leafStatistics(LeafStatistics leafStatistics) {
+            this.leafStatistics = leafStatistics;
+            return this;
+        }
+
+        // Constant leaves are folded once a circuit is admitted, by its worker or a pool task, see CircuitSimplifier.
+        public Builder simplify(boolean simplify) {
+            this.simplify = simplify;
+            return this;
+        }
+
+        public SolverOptions build() {
+            if (poolSize < 0) {
+                throw new IllegalArgumentException("Pool size must not be negative.");
+            }
+            if (maxInFlightCircuits < 1 || maxInFlightNodes < 1) {
+                throw new IllegalArgumentException("In-flight limits must be positive.");
+            }
+            if (maxNodesPerTenant < 1 || maxLeavesPerTenant < 1) {
+                throw new IllegalArgumentException("Tenant caps must be positive.");
+            }
+            if (maxQueuedSolves < 0) {
+                throw new IllegalArgumentException("Queue size must not be negative.");
+            }
+            if (shareSubcircuits && poolSize == 0) {
+                throw new IllegalArgumentException("Sharing of subcircuits requires a pool.");
+            }
+            if (subcircuitCache != null && poolSize == 0) {
+                throw new IllegalArgumentException("The subcircuit cache requires a pool.");
+            }
+            if (leafStatistics != null && poolSize == 0) {
+                throw new IllegalArgumentException("Ordering by leaf statistics requires a pool.");
+            }
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("Overflow policy must be set.");
+            }
+            return new SolverOptions(this);
+        }
+    }
+}
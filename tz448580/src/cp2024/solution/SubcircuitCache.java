@@ -0,0 +1,216 @@
+/**
+ * SubcircuitCache implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.CircuitNode;
+import cp2024.circuit.LeafNode;
+import cp2024.circuit.NodeType;
+import cp2024.circuit.ThresholdNode;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Values of subcircuits, kept across solves and solvers:
+ *
+ *   SubcircuitCache cache = new SubcircuitCache(64 << 20);
+ *   CircuitSolver solver = new ParallelCircuitSolver(SolverOptions.builder()
+ *       .poolSize(8).subcircuitCache(cache).build());
+ *
+ * Subcircuits are keyed by their canonical structure: type, threshold, and
+ * the keys of the children, where the order of children of AND, OR, GTx and
+ * LTx nodes doesn't matter (their value doesn't depend on it). Leaves are
+ * keyed by LeafNode.getCacheKey(), and a subcircuit with a leaf without a key
+ * is never cached. Keys are canonical: the cache keeps a single key object per
+ * structure while it is in use, so a key compares its children by identity
+ * and a lookup costs time per node, not per path, also for DAGs. Entries are
+ * evicted in LRU order once their estimated size exceeds the memory budget.
+ * Safe for use by many threads.
+ */
+public class SubcircuitCache {
+
+    // Estimated size of an entry without its children: map entry, key object and its array.
+    private static final long ENTRY_BYTES = 96;
+    private static final long CHILD_BYTES = 8;
+
+    /**
+     * Key:
+     * Structure of a subcircuit. Keys of children are the canonical instances
+     * made by canonical(), shared by all keys and entries that contain them,
+     * so equals() only looks at the node itself. The weight of an entry counts
+     * only its node; keys of children without entries of their own are not counted.
+     */
+    static final class Key {
+
+        private final NodeType type;
+        private final int threshold;
+        private final Object[] parts;   // Keys of the children, or the cache key of a leaf.
+        private final int hash;
+
+        private Key(NodeType type, int threshold, Object[] parts) {
+            this.type = type;
+            this.threshold = threshold;
+            this.parts = parts;
+            this.hash = 31 * (31 * type.hashCode() + threshold) + Arrays.hashCode(parts);
+        }
+
+        private long weight() {
+            return ENTRY_BYTES + CHILD_BYTES * parts.length;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            if (hash != key.hash || type != key.type || threshold != key.threshold
+                    || parts.length != key.parts.length) {
+                return false;
+            }
+            for (int i = 0; i < parts.length; i++) {
+                // Keys of children are canonical, the cache key of a leaf is a plain object.
+                boolean same = parts[i] instanceof Key ? parts[i] == key.parts[i] : parts[i].equals(key.parts[i]);
+                if (!same) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final long budget;
+
+    // All fields below are protected by the cache's monitor.
+    private final LinkedHashMap<Key, Boolean> entries;
+    private final WeakHashMap<Key, WeakReference<Key>> canonicalKeys;  // Dropped once no key uses them.
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // Keeps entries up to an estimated total of budgetBytes.
+    public SubcircuitCache(long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Cache budget must be positive.");
+        }
+        this.budget = budgetBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.canonicalKeys = new WeakHashMap<>();
+        this.weight = 0;
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+    }
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    public synchronized CacheMetrics getMetrics() {
+        return new CacheMetrics(hits, misses, evictions, entries.size(), weight);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    // --------------------------------- Package-private methods ---------------------------------
+
+    /**
+     * Computes the canonical keys of all nodes of the circuit. Nodes whose value
+     * may not be cached (over a leaf without a cache key) are mapped to null.
+     */
+    Map<CircuitNode, Key> keysOf(CircuitNode root) throws InterruptedException {
+        Map<CircuitNode, Key> keys = new IdentityHashMap<>();
+        keyOf(root, keys);
+        return keys;
+    }
+
+    // Returns the cached value of the subcircuit, null if it isn't cached.
+    synchronized Boolean get(Key key) {
+        Boolean value = entries.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    synchronized void put(Key key, boolean value) {
+        if (entries.put(key, value) == null) {
+            weight += key.weight();
+        }
+        Iterator<Map.Entry<Key, Boolean>> eldest = entries.entrySet().iterator();
+        while (weight > budget && eldest.hasNext()) {
+            Key evicted = eldest.next().getKey();
+            eldest.remove();
+            weight -= evicted.weight();
+            evictions++;
+        }
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    // The key equal to the given one that is already in use, or the given one if there is none.
+    private synchronized Key canonical(Key key) {
+        WeakReference<Key> reference = canonicalKeys.get(key);
+        Key known = reference == null ? null : reference.get();
+        if (known != null) {
+            return known;
+        }
+        canonicalKeys.put(key, new WeakReference<>(key));
+        return key;
+    }
+
+    // Key of the node, null if it has a leaf without a cache key. Shared nodes are keyed once.
+    private Key keyOf(CircuitNode node, Map<CircuitNode, Key> keys) throws InterruptedException {
+        if (keys.containsKey(node)) {
+            return keys.get(node);
+        }
+        if (node.getType() == NodeType.LEAF) {
+            Object cacheKey = ((LeafNode) node).getCacheKey();
+            Key key = cacheKey == null ? null : canonical(new Key(NodeType.LEAF, 0, new Object[] {cacheKey}));
+            keys.put(node, key);
+            return key;
+        }
+
+        CircuitNode[] args = node.getArgs();
+        Key[] children = new Key[args.length];
+        boolean cacheable = true;
+        for (int i = 0; i < args.length; i++) {
+            children[i] = keyOf(args[i], keys);
+            cacheable &= children[i] != null;
+        }
+        if (!cacheable) {
+            keys.put(node, null);
+            return null;
+        }
+        if (node.getType() != NodeType.IF && node.getType() != NodeType.NOT) {
+            // Canonical order of the children of a symmetric node. Permutations of
+            // children with colliding hashes may get different keys, which only costs a miss.
+            Arrays.sort(children, Comparator.comparingInt(Key::hashCode));
+        }
+        int threshold = node instanceof ThresholdNode ? ((ThresholdNode) node).getThreshold() : 0;
+        Key key = canonical(new Key(node.getType(), threshold, children));
+        keys.put(node, key);
+        return key;
+    }
+}
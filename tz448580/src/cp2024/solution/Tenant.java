@@ -0,0 +1,128 @@
+/**
+ * Tenant implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits and counters of one tenant of a ParallelCircuitSolver.
+ * Limits are used by the FairTaskPool; counters are updated without locks
+ * and read by getMetrics().
+ */
+class Tenant {
+
+    private final String key;
+    private final int weight;
+    private final int maxNodes;
+    private final int maxLeaves;
+
+    // Nodes and leaves currently running on the pool (changed under the pool's monitor).
+    private final AtomicInteger runningNodes;
+    private final AtomicInteger runningLeaves;
+    private final AtomicInteger queuedNodes;
+
+    // Circuits of the tenant between solve() and their completion (or rejection):
+    private final AtomicInteger circuitsInFlight;
+
+    private final LongAdder submitted;
+    private final LongAdder completed;
+    private final LongAdder stopped;
+    private final LongAdder nodesExecuted;
+    private final LongAdder leavesExecuted;
+    private final LongAdder totalLatencyNanos;
+    private final AtomicLong maxLatencyNanos;
+
+    Tenant(String key, int weight, int maxNodes, int maxLeaves) {
+        this.key = key;
+        this.weight = weight;
+        this.maxNodes = maxNodes;
+        this.maxLeaves = maxLeaves;
+        this.runningNodes = new AtomicInteger(0);
+        this.runningLeaves = new AtomicInteger(0);
+        this.queuedNodes = new AtomicInteger(0);
+        this.circuitsInFlight = new AtomicInteger(0);
+        this.submitted = new LongAdder();
+        this.completed = new LongAdder();
+        this.stopped = new LongAdder();
+        this.nodesExecuted = new LongAdder();
+        this.leavesExecuted = new LongAdder();
+        this.totalLatencyNanos = new LongAdder();
+        this.maxLatencyNanos = new AtomicLong(0);
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    int getWeight() {
+        return weight;
+    }
+
+    // Returns true if one more node (a leaf if leaf is true) may start running.
+    boolean canRun(boolean leaf) {
+        return runningNodes.get() < maxNodes && (!leaf || runningLeaves.get() < maxLeaves);
+    }
+
+    void nodeQueued() {
+        queuedNodes.incrementAndGet();
+    }
+
+    void nodeDequeued() {
+        queuedNodes.decrementAndGet();
+    }
+
+    void nodeStarted(boolean leaf) {
+        runningNodes.incrementAndGet();
+        if (leaf) {
+            runningLeaves.incrementAndGet();
+        }
+    }
+
+    void nodeFinished(boolean leaf) {
+        runningNodes.decrementAndGet();
+        nodesExecuted.increment();
+        if (leaf) {
+            runningLeaves.decrementAndGet();
+            leavesExecuted.increment();
+        }
+    }
+
+    void circuitEntered() {
+        circuitsInFlight.incrementAndGet();
+    }
+
+    void circuitLeft() {
+        circuitsInFlight.decrementAndGet();
+    }
+
+    // Returns true if nothing of the tenant is in flight, so its entry may be dropped.
+    boolean isIdle() {
+        return circuitsInFlight.get() == 0 && runningNodes.get() == 0 && queuedNodes.get() == 0;
+    }
+
+    void circuitSubmitted() {
+        submitted.increment();
+    }
+
+    // Called when the value of a circuit is computed (or not, if the computation was stopped).
+    void circuitFinished(boolean computed, long latencyNanos) {
+        if (!computed) {
+            stopped.increment();
+            return;
+        }
+        completed.increment();
+        totalLatencyNanos.add(latencyNanos);
+        maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    TenantMetrics getMetrics() {
+        return new TenantMetrics(key, submitted.sum(), completed.sum(), stopped.sum(),
+                totalLatencyNanos.sum(), maxLatencyNanos.get(), nodesExecuted.sum(), leavesExecuted.sum(),
+                runningNodes.get(), runningLeaves.get(), queuedNodes.get());
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * TenantMetrics implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of the counters of one tenant of a ParallelCircuitSolver.
+ * Node counters are collected by the pooled engine only; circuit counters
+ * and latencies (from solve() to the value) are collected in both modes.
+ */
+public final class TenantMetrics {
+
+    private final String tenant;
+    private final long submitted;
+    private final long completed;
+    private final long stopped;
+    private final long totalLatencyNanos;
+    private final long maxLatencyNanos;
+    private final long nodesExecuted;
+    private final long leavesExecuted;
+    private final int runningNodes;
+    private final int runningLeaves;
+    private final int queuedNodes;
+
+    TenantMetrics(
+        String tenant,
+        long submitted,
+        long completed,
+        long stopped,
+        long totalLatencyNanos,
+        long maxLatencyNanos,
+        long nodesExecuted,
+        long leavesExecuted,
+        int runningNodes,
+        int runningLeaves,
+        int queuedNodes
+    ) {
+        this.tenant = tenant;
+        this.submitted = submitted;
+        this.completed = completed;
+        this.stopped = stopped;
+        this.totalLatencyNanos = totalLatencyNanos;
+        this.maxLatencyNanos = maxLatencyNanos;
+        this.nodesExecuted = nodesExecuted;
+        this.leavesExecuted = leavesExecuted;
+        this.runningNodes = runningNodes;
+        this.runningLeaves = runningLeaves;
+        this.queuedNodes = queuedNodes;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    // Circuits passed to solve() and admitted or queued.
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    // Circuits whose value was computed.
+    public long getCompleted() {
+        return completed;
+    }
+
+    // Circuits stopped before their value was computed (stop(), cancel(), deadline, shedding).
+    public long getStopped() {
+        return stopped;
+    }
+
+    public Duration getMeanLatency() {
+        return completed == 0 ? Duration.ZERO : Duration.ofNanos(totalLatencyNanos / completed);
+    }
+
+    public Duration getMaxLatency() {
+        return Duration.ofNanos(maxLatencyNanos);
+    }
+
+    // Node tasks (leaves included) run to the end on the pool.
+    public long getNodesExecuted() {
+        return nodesExecuted;
+    }
+
+    public long getLeavesExecuted() {
+        return leavesExecuted;
+    }
+
+    public int getRunningNodes() {
+        return runningNodes;
+    }
+
+    public int getRunningLeaves() {
+        return runningLeaves;
+    }
+
+    // Node tasks waiting for a pool thread.
+    public int getQueuedNodes() {
+        return queuedNodes;
+    }
+
+    @Override
+    public String toString() {
+        return "tenant=" + tenant
+                + " submitted=" + submitted
+                + " completed=" + completed
+                + " stopped=" + stopped
+                + " meanLatency=" + getMeanLatency().toMillis() + "ms"
+                + " maxLatency=" + getMaxLatency().toMillis() + "ms"
+                + " nodesExecuted=" + nodesExecuted
+                + " leavesExecuted=" + leavesExecuted
+                + " runningNodes=" + runningNodes
+                + " runningLeaves=" + runningLeaves
+                + " queuedNodes=" + queuedNodes;
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * ThresholdKernel implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+/**
+ * Bit-sliced GTx / LTx node of BitSlicedCircuit, over a block of words
+ * (64 rows each). The value words of node n are
+ *   values[n * block .. n * block + words)
+ * and the kernel writes those of the threshold node from the words of its
+ * children children[from .. to). counter is scratch space of at least
+ * block words per bit of the largest count.
+ * Every implementation computes exactly the same words; best() picks the
+ * fastest one available on this JVM.
+ */
+public interface ThresholdKernel {
+
+    /**
+     * Implementation using jdk.incubator.vector, loaded only if it is on the
+     * class path. It lives in its own source root, so that src builds without
+     * the incubator module; to use it, compile it over the classes of src:
+     *   javac -d out $(find src -name '*.java')
+     *   javac --add-modules jdk.incubator.vector -cp out -d out \
+     *       src-vector/cp2024/solution/vector/VectorThresholdKernel.java
+     * and run with --add-modules jdk.incubator.vector.
+     */
+    String VECTOR_KERNEL = "cp2024.solution.vector.VectorThresholdKernel";
+
+    void evaluate(boolean gt, int threshold, int[] children, int from, int to,
+                  long[] values, int node, int block, int words, long[] counter);
+
+    /**
+     * The vector kernel if it was compiled (see VECTOR_KERNEL), the JVM runs
+     * with --add-modules jdk.incubator.vector and the CPU has vectors of at
+     * least two longs, the scalar one otherwise, or if the system property
+     * cp2024.vector is false.
+     */
+    static ThresholdKernel best() {
+        if (!Boolean.parseBoolean(System.getProperty("cp2024.vector", "true"))) {
+            return ScalarThresholdKernel.INSTANCE;
+        }
+        try {
+            return (ThresholdKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // No module, or no vector support.
+            return ScalarThresholdKernel.INSTANCE;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * VirtualThreadCircuitSolver implementation.
+ * Author: Tomasz Zajac <tz448580@students.mimuw.edu.pl>
+ */
+
+package cp2024.solution;
+
+import cp2024.circuit.Circuit;
+import cp2024.circuit.CircuitNode;
+import cp2024.circuit.CircuitSolver;
+import cp2024.circuit.CircuitValue;
+import cp2024.circuit.LeafNode;
+import cp2024.circuit.NodeType;
+
+import cp2024.demo.BrokenCircuitValue;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Solver that evaluates every node on its own virtual thread.
+ * A node forks its children in a NodeScope and blocks until the scope
+ * decides the value; a short-circuit shuts the scope down, which cancels
+ * the remaining children. Blocking leaves (e.g. SleepyLeafNode) only park
+ * their virtual thread, so a large number of pending leaves is cheap.
+ * On runtimes without virtual threads, platform threads are used instead.
+ */
+public class VirtualThreadCircuitSolver implements CircuitSolver {
+
+    // Thread-per-task executor for all nodes of all circuits:
+    private final ExecutorService executor;
+
+    // Whether virtual threads are supported by the runtime:
+    private final boolean virtual;
+
+    // Computations that haven't finished yet, so that stop() can cancel them:
+    private final Set<FutureTask<Boolean>> inFlight = ConcurrentHashMap.newKeySet();
+
+    // Solver state:
+    private volatile boolean acceptComputations = true;
+
+    public VirtualThreadCircuitSolver() {
+        ExecutorService virtualExecutor = newVirtualThreadPerTaskExecutor();
+        this.virtual = virtualExecutor != null;
+        this.executor = virtual ? virtualExecutor : Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // ------------------------------------ Public methods ------------------------------------
+
+    @Override
+    public CircuitValue solve(Circuit c) {
+        if (!acceptComputations) {
+            return new BrokenCircuitValue();
+        }
+
+        FutureTask<Boolean> computation = new FutureTask<>(() -> solveNode(c.getRoot())) {
+            @Override
+            protected void done() {
+                inFlight.remove(this);
+            }
+        };
+        inFlight.add(computation);
+        try {
+            executor.execute(computation);
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(computation);
+            return new BrokenCircuitValue();
+        }
+
+        // stop() might have missed the computation.
+        if (!acceptComputations) {
+            computation.cancel(true);
+        }
+        return new FutureCircuitValue(computation);
+    }
+
+    @Override
+    public void stop() {
+        acceptComputations = false;
+        for (FutureTask<Boolean> computation : inFlight) {
+            computation.cancel(true);
+        }
+        executor.shutdownNow();
+    }
+
+    // Returns true if nodes are evaluated on virtual threads.
+    public boolean usesVirtualThreads() {
+        return virtual;
+    }
+
+    // ------------------------------------ Private methods ------------------------------------
+
+    private boolean solveNode(CircuitNode node) throws InterruptedException {
+        if (node.getType() == NodeType.LEAF) {
+            return ((LeafNode) node).getValue();
+        }
+
+        CircuitNode[] args = node.getArgs();
+
+        return switch (node.getType()) {
+            // A single child is evaluated on the node's own thread.
+            case NOT -> !solveNode(args[0]);
+            case AND, OR, GT, LT, IF -> solveChildren(node, args);
+            default -> throw new RuntimeException("Illegal type " + node.getType());
+        };
+    }
+
+    private boolean solveChildren(CircuitNode node, CircuitNode[] args) throws InterruptedException {
+        NodeAggregator aggregator = NodeAggregator.forNode(node, args.length);
+        // Check if there is a need to evaluate the children.
+        Boolean value = aggregator.valueWithoutChildren();
+        if (value != null) {
+            return value;
+        }
+        try (NodeScope scope = new NodeScope(executor, aggregator)) {
+            for (int i = 0; i < args.length; i++) {
+                CircuitNode child = args[i];
+                scope.fork(i, () -> solveNode(child));
+            }
+            return scope.join();
+        }
+    }
+
+    // Returns null if the runtime doesn't support virtual threads (before Java 21).
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
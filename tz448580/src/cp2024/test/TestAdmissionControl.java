@@ -0,0 +1,192 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.solution.AdmissionMetrics;
+import cp2024.solution.OverflowPolicy;
+import cp2024.solution.ParallelCircuitSolver;
+import cp2024.solution.RejectedCircuitValue;
+import cp2024.solution.SolveRequest;
+import cp2024.solution.SolverOptions;
+import cp2024.solution.TenantMetrics;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestAdmissionControl {
+
+    private static Circuit slowCircuit(boolean value, Duration delay) {
+        return new Circuit(CircuitNode.mk(NodeType.AND,
+                CircuitNode.mk(true),
+                CircuitNode.mk(value, delay)));
+    }
+
+    private static boolean isInterrupted(CircuitValue value) {
+        try {
+            value.getValue();
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        // Test 1: FAIL_FAST rejects circuits once the queue is full.
+        ParallelCircuitSolver solver = new ParallelCircuitSolver(SolverOptions.builder()
+                .maxInFlightCircuits(1)
+                .maxQueuedSolves(1)
+                .overflowPolicy(OverflowPolicy.FAIL_FAST)
+                .build());
+        CircuitValue running = solver.solve(slowCircuit(true, Duration.ofMillis(300)));
+        CircuitValue queued = solver.solve(slowCircuit(false, Duration.ofMillis(10)));
+        CircuitValue rejected = solver.solve(slowCircuit(true, Duration.ofMillis(10)));
+        AdmissionMetrics metrics = solver.getMetrics();
+        System.out.println("Metrics 1: " + metrics);
+        assert (rejected instanceof RejectedCircuitValue);
+        assert (isInterrupted(rejected));
+        assert (metrics.getQueueDepth() == 1);
+        assert (metrics.getInFlightCircuits() == 1);
+        assert (metrics.getRejected() == 1);
+        assert (running.getValue());
+        assert (!queued.getValue());
+        metrics = solver.getMetrics();
+        System.out.println("Metrics 1 after: " + metrics);
+        assert (metrics.getQueueDepth() == 0);
+        assert (metrics.getAdmitted() == 2);
+        solver.stop();
+
+        // Test 2: SHED_OLDEST drops the oldest queued circuit.
+        solver = new ParallelCircuitSolver(SolverOptions.builder()
+                .maxInFlightCircuits(1)
+                .maxQueuedSolves(1)
+                .overflowPolicy(OverflowPolicy.SHED_OLDEST)
+                .build());
+        running = solver.solve(slowCircuit(true, Duration.ofMillis(300)));
+        CircuitValue oldest = solver.solve(slowCircuit(true, Duration.ofMillis(10)));
+        CircuitValue newest = solver.solve(slowCircuit(false, Duration.ofMillis(10)));
+        assert (isInterrupted(oldest));
+        assert (running.getValue());
+        assert (!newest.getValue());
+        metrics = solver.getMetrics();
+        System.out.println("Metrics 2: " + metrics);
+        assert (metrics.getShed() == 1);
+        assert (metrics.getRejected() == 0);
+        solver.stop();
+
+        // Test 3: BLOCK makes solve() wait for room, in both modes.
+        for (int poolSize : new int[] {0, 2}) {
+            solver = new ParallelCircuitSolver(SolverOptions.builder()
+                    .poolSize(poolSize)
+                    .maxInFlightCircuits(2)
+                    .maxQueuedSolves(0)
+                    .overflowPolicy(OverflowPolicy.BLOCK)
+                    .build());
+            List<CircuitValue> values = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < 6; i++) {
+                values.add(solver.solve(slowCircuit(i % 2 == 0, Duration.ofMillis(100))));
+            }
+            long blockedMillis = (System.nanoTime() - start) / 1_000_000;
+            for (int i = 0; i < values.size(); i++) {
+                assert (values.get(i).getValue() == (i % 2 == 0));
+            }
+            metrics = solver.getMetrics();
+            System.out.println("Metrics 3 (pool " + poolSize + "): " + metrics + ", blocked " + blockedMillis + " ms");
+            // Two batches had to finish before the last two circuits were admitted.
+            assert (blockedMillis >= 150);
+            assert (metrics.getAdmitted() == 6);
+            solver.stop();
+        }
+
+        // Test 4: The node limit keeps bursts from starting a thread per node at once.
+        solver = new ParallelCircuitSolver(SolverOptions.builder()
+                .maxInFlightNodes(8)
+                .build());
+        List<CircuitValue> values = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            values.add(solver.solve(slowCircuit(true, Duration.ofMillis(20))));
+        }
+        metrics = solver.getMetrics();
+        System.out.println("Metrics 4: " + metrics);
+        assert (metrics.getQueueDepth() > 0);
+        for (CircuitValue value : values) {
+            assert (value.getValue());
+        }
+
+        // Test 5: stop() releases a caller blocked in solve() and breaks queued circuits.
+        solver = new ParallelCircuitSolver(SolverOptions.builder()
+                .maxInFlightCircuits(1)
+                .maxQueuedSolves(1)
+                .build());
+        ParallelCircuitSolver blockingSolver = solver;
+        running = solver.solve(slowCircuit(true, Duration.ofSeconds(100)));
+        queued = solver.solve(slowCircuit(true, Duration.ofSeconds(100)));
+        CircuitValue[] blocked = new CircuitValue[1];
+        Thread caller = new Thread(() -> blocked[0] = blockingSolver.solve(slowCircuit(true, Duration.ofMillis(10))));
+        caller.start();
+        Thread.sleep(100);
+        assert (caller.isAlive());
+        solver.stop();
+        caller.join(5000);
+        assert (!caller.isAlive());
+        assert (isInterrupted(running));
+        assert (isInterrupted(queued));
+        assert (isInterrupted(blocked[0]));
+        System.out.println("Metrics 5: " + solver.getMetrics());
+
+        // Test 6: A rejected circuit with a deadline doesn't count as finished when it passes.
+        solver = new ParallelCircuitSolver(SolverOptions.builder()
+                .maxInFlightCircuits(1)
+                .maxQueuedSolves(0)
+                .overflowPolicy(OverflowPolicy.FAIL_FAST)
+                .build());
+        running = solver.solve(slowCircuit(true, Duration.ofMillis(300)));
+        rejected = solver.solve(slowCircuit(true, Duration.ofMillis(10)),
+                SolveRequest.builder().deadline(Instant.now().plusMillis(20)).build());
+        assert (rejected instanceof RejectedCircuitValue);
+        Thread.sleep(100);
+        TenantMetrics tenant = solver.getTenantMetrics().get(SolveRequest.DEFAULT_TENANT);
+        metrics = solver.getMetrics();
+        System.out.println("Metrics 6: " + metrics + ", " + tenant);
+        assert (tenant.getSubmitted() == 1);
+        assert (tenant.getStopped() == 0);
+        assert (metrics.getInFlightCircuits() == 1);
+        assert (running.getValue());
+        tenant = solver.getTenantMetrics().get(SolveRequest.DEFAULT_TENANT);
+        assert (tenant.getCompleted() == 1);
+        assert (solver.getMetrics().getInFlightCircuits() == 0);
+        solver.stop();
+
+        // Test 7: Circuits rejected while stop() runs are never counted as finished.
+        for (int round = 0; round < 50; round++) {
+            ParallelCircuitSolver racedSolver = new ParallelCircuitSolver(SolverOptions.builder()
+                    .maxInFlightCircuits(1)
+                    .maxQueuedSolves(0)
+                    .overflowPolicy(OverflowPolicy.FAIL_FAST)
+                    .build());
+            racedSolver.solve(slowCircuit(true, Duration.ofSeconds(100)));
+            List<Thread> callers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Thread rejecting = new Thread(() -> {
+                    for (int j = 0; j < 20; j++) {
+                        racedSolver.solve(slowCircuit(true, Duration.ofMillis(10)));
+                    }
+                });
+                callers.add(rejecting);
+                rejecting.start();
+            }
+            racedSolver.stop();
+            for (Thread rejecting : callers) {
+                rejecting.join();
+            }
+            tenant = racedSolver.getTenantMetrics().get(SolveRequest.DEFAULT_TENANT);
+            assert (tenant.getSubmitted() == 1) : tenant;
+            assert (tenant.getStopped() == 1) : tenant;
+            assert (tenant.getCompleted() == 0) : tenant;
+        }
+
+        System.out.println("End of TestAdmissionControl");
+    }
+
+}
@@ -0,0 +1,156 @@
+package cp2024.test;
+
+import cp2024.bench.RandomCircuits;
+import cp2024.circuit.*;
+import cp2024.solution.BddCircuit;
+import cp2024.solution.BytecodeCircuit;
+import cp2024.solution.CompiledCircuit;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestBdd {
+
+    // Leaf with a fixed value, counting its calls.
+    private static class CountingLeaf extends LeafNode {
+        private final boolean value;
+        private final AtomicInteger calls;
+
+        private CountingLeaf(boolean value, AtomicInteger calls) {
+            this.value = value;
+            this.calls = calls;
+        }
+
+        @Override
+        public boolean getValue() {
+            calls.incrementAndGet();
+            return value;
+        }
+    }
+
+    private static LeafNode[] leavesOf(boolean[] assignment) {
+        LeafNode[] leaves = new LeafNode[assignment.length];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = new CountingLeaf(assignment[i], new AtomicInteger());
+        }
+        return leaves;
+    }
+
+    // Compares the diagram with the bytecode evaluation over random assignments.
+    private static void check(BddCircuit bdd, BytecodeCircuit bytecode, Random random) throws InterruptedException {
+        for (int round = 0; round < 50; round++) {
+            boolean[] assignment = new boolean[bdd.getLeafCount()];
+            for (int i = 0; i < assignment.length; i++) {
+                assignment[i] = random.nextBoolean();
+            }
+            assert (bdd.evaluate(assignment) == bytecode.evaluate(leavesOf(assignment)));
+        }
+    }
+
+    private static int[] shuffled(Random random, int size) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        return order;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        Random random = new Random(31);
+
+        // Test 1: Random circuits, with the default order, a random one and a limit too small.
+        RandomCircuits generator = new RandomCircuits(37);
+        for (int i = 0; i < 60; i++) {
+            CompiledCircuit compiled = CompiledCircuit.compile(generator.generate(i < 30 ? 15 : 200, 6));
+            BytecodeCircuit bytecode = BytecodeCircuit.compile(compiled);
+            BddCircuit bdd = BddCircuit.compile(compiled, null, BddCircuit.DEFAULT_NODE_LIMIT);
+            assert (bdd.usesDiagram());
+            check(bdd, bytecode, random);
+            check(BddCircuit.compile(compiled, shuffled(random, compiled.getLeafCount()),
+                    BddCircuit.DEFAULT_NODE_LIMIT), bytecode, random);
+            if (bdd.size() > 3) {
+                BddCircuit tree = BddCircuit.compile(compiled, null, 3);
+                assert (!tree.usesDiagram());
+                assert (tree.size() == 0);
+                check(tree, bytecode, random);
+            }
+        }
+
+        // Test 2: Thresholds against every count.
+        for (int n : new int[] {1, 2, 5, 9}) {
+            CircuitNode[] children = new CircuitNode[n];
+            for (int i = 0; i < n; i++) {
+                children[i] = CircuitNode.mk(false);
+            }
+            for (int threshold = 0; threshold <= n + 1; threshold++) {
+                for (NodeType type : new NodeType[] {NodeType.GT, NodeType.LT}) {
+                    CompiledCircuit compiled = CompiledCircuit.compile(
+                            new Circuit(CircuitNode.mk(type, threshold, children)));
+                    BddCircuit bdd = BddCircuit.compile(compiled, null, BddCircuit.DEFAULT_NODE_LIMIT);
+                    for (int trueCount = 0; trueCount <= n; trueCount++) {
+                        boolean[] assignment = new boolean[n];
+                        for (int i = 0; i < trueCount; i++) {
+                            assignment[i] = true;
+                        }
+                        boolean expected = type == NodeType.GT ? trueCount > threshold : trueCount < threshold;
+                        assert (bdd.evaluate(assignment) == expected);
+                    }
+                }
+            }
+        }
+
+        // Test 3: Equal subfunctions are reduced: AND(x, NOT(NOT(x))) is a single test of x.
+        CircuitNode x = CircuitNode.mk(true);
+        BddCircuit same = BddCircuit.compile(new Circuit(CircuitNode.mk(NodeType.AND,
+                x, CircuitNode.mk(NodeType.NOT, CircuitNode.mk(NodeType.NOT, x)))));
+        assert (same.size() == 3);
+        assert (same.evaluate());
+        // x OR NOT x needs no test at all.
+        BddCircuit tautology = BddCircuit.compile(new Circuit(CircuitNode.mk(NodeType.OR,
+                x, CircuitNode.mk(NodeType.NOT, x))));
+        assert (tautology.size() == 2);
+
+        // Test 4: Only leaves on the path are called, each at most once.
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger other = new AtomicInteger();
+        CircuitNode[] rest = new CircuitNode[20];
+        for (int i = 0; i < rest.length; i++) {
+            rest[i] = new CountingLeaf(true, other);
+        }
+        CountingLeaf a = new CountingLeaf(false, first);
+        Circuit c = new Circuit(CircuitNode.mk(NodeType.AND, a,
+                CircuitNode.mk(NodeType.GT, 10, rest), CircuitNode.mk(NodeType.OR, rest)));
+        BddCircuit bdd = BddCircuit.compile(c);
+        assert (!bdd.evaluate());
+        assert (first.get() == 1);
+        assert (other.get() == 0);
+
+        // The same leaf shared by many nodes is still called once.
+        AtomicInteger shared = new AtomicInteger();
+        CountingLeaf s = new CountingLeaf(true, shared);
+        assert (BddCircuit.compile(new Circuit(CircuitNode.mk(NodeType.AND, s,
+                CircuitNode.mk(NodeType.OR, s, CircuitNode.mk(NodeType.NOT, s)), s))).evaluate());
+        assert (shared.get() == 1);
+
+        // Test 5: Orders that are not permutations are rejected.
+        CompiledCircuit two = CompiledCircuit.compile(new Circuit(CircuitNode.mk(NodeType.AND,
+                CircuitNode.mk(true), CircuitNode.mk(false))));
+        for (int[] order : new int[][] {{0}, {0, 0}, {0, 2}}) {
+            try {
+                BddCircuit.compile(two, order, BddCircuit.DEFAULT_NODE_LIMIT);
+                assert (false);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+        assert (!BddCircuit.compile(two, new int[] {1, 0}, BddCircuit.DEFAULT_NODE_LIMIT).evaluate());
+
+        System.out.println("End of TestBdd");
+    }
+}
@@ -0,0 +1,102 @@
+package cp2024.test;
+
+import cp2024.bench.RandomCircuits;
+import cp2024.circuit.*;
+import cp2024.solution.BitSlicedCircuit;
+import cp2024.solution.BytecodeCircuit;
+import cp2024.solution.CompiledCircuit;
+import cp2024.solution.InterningCircuitBuilder;
+import java.util.BitSet;
+import java.util.Random;
+
+public class TestBitSlicedCircuit {
+
+    // Leaf with the value of the current row.
+    private static class RowLeaf extends LeafNode {
+        private final boolean value;
+
+        private RowLeaf(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean getValue() {
+            return value;
+        }
+    }
+
+    private static boolean[][] randomRows(Random random, int rows, int leaves) {
+        boolean[][] assignments = new boolean[rows][leaves];
+        for (int row = 0; row < rows; row++) {
+            for (int leaf = 0; leaf < leaves; leaf++) {
+                assignments[row][leaf] = random.nextBoolean();
+            }
+        }
+        return assignments;
+    }
+
+    // Evaluates every row separately.
+    private static void check(Circuit c, boolean[][] assignments) throws InterruptedException {
+        CompiledCircuit compiled = CompiledCircuit.compile(c);
+        BitSet result = BitSlicedCircuit.compile(compiled).evaluate(assignments);
+        BytecodeCircuit bytecode = BytecodeCircuit.compile(compiled);
+        for (int row = 0; row < assignments.length; row++) {
+            LeafNode[] leaves = new LeafNode[assignments[row].length];
+            for (int leaf = 0; leaf < leaves.length; leaf++) {
+                leaves[leaf] = new RowLeaf(assignments[row][leaf]);
+            }
+            assert (result.get(row) == bytecode.evaluate(leaves));
+        }
+        assert (result.length() <= assignments.length);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        Random random = new Random(23);
+
+        // Test 1: Random circuits over random rows, including a partial last word.
+        RandomCircuits generator = new RandomCircuits(29);
+        for (int i = 0; i < 50; i++) {
+            Circuit c = generator.generate(i < 25 ? 15 : 500, 8);
+            int leaves = CompiledCircuit.compile(c).getLeafCount();
+            check(c, randomRows(random, 64 * (1 + i % 3) + i % 5 * 13, leaves));
+        }
+
+        // Test 2: Every threshold against every count, wide enough for several counter bits.
+        for (int n : new int[] {1, 2, 3, 7, 8, 9, 20}) {
+            CircuitNode[] children = new CircuitNode[n];
+            for (int i = 0; i < n; i++) {
+                children[i] = CircuitNode.mk(false);
+            }
+            // Row r has the first r % (n + 1) leaves true.
+            boolean[][] assignments = new boolean[130][n];
+            for (int row = 0; row < assignments.length; row++) {
+                for (int leaf = 0; leaf < row % (n + 1); leaf++) {
+                    assignments[row][leaf] = true;
+                }
+            }
+            for (int threshold = 0; threshold <= n + 1; threshold++) {
+                check(new Circuit(CircuitNode.mk(NodeType.GT, threshold, children)), assignments);
+                check(new Circuit(CircuitNode.mk(NodeType.LT, threshold, children)), assignments);
+            }
+        }
+
+        // Test 3: Shared nodes are computed once per word, and leaves are never called.
+        InterningCircuitBuilder builder = new InterningCircuitBuilder();
+        CircuitNode shared = builder.mk(NodeType.GT, 1, builder.mk(true), builder.mk(false), builder.mk(true));
+        Circuit dag = new Circuit(builder.mk(NodeType.IF, shared, builder.mk(NodeType.NOT, shared), shared));
+        check(dag, randomRows(random, 200, 2));
+        BitSet none = BitSlicedCircuit.compile(dag).evaluate(new long[][] {{0L}, {0L}}, 64);
+        assert (none.isEmpty());
+
+        // Test 4: Rows must cover all leaves.
+        try {
+            BitSlicedCircuit.compile(dag).evaluate(new long[][] {{0L}}, 64);
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        System.out.println("End of TestBitSlicedCircuit");
+    }
+}
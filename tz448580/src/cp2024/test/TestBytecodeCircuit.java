@@ -0,0 +1,165 @@
+package cp2024.test;
+
+import cp2024.bench.RandomCircuits;
+import cp2024.circuit.*;
+import cp2024.demo.SequentialSolver;
+import cp2024.solution.BytecodeCircuit;
+import cp2024.solution.BytecodeCircuitSolver;
+import cp2024.solution.InterningCircuitBuilder;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestBytecodeCircuit {
+
+    // Leaf that counts its calls.
+    private static class CountingLeaf extends LeafNode {
+        private final boolean value;
+        private int calls = 0;
+
+        private CountingLeaf(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean getValue() {
+            calls++;
+            return value;
+        }
+
+        @Override
+        public boolean mayBlock() {
+            return false;
+        }
+    }
+
+    private static CircuitNode[] leaves(int count, boolean value) {
+        CircuitNode[] leaves = new CircuitNode[count];
+        for (int i = 0; i < count; i++) {
+            leaves[i] = CircuitNode.mk(value);
+        }
+        return leaves;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        SequentialSolver sequential = new SequentialSolver();
+
+        // Test 1: Same values as SequentialSolver, for small and large circuits.
+        RandomCircuits generator = new RandomCircuits(17);
+        for (int i = 0; i < 200; i++) {
+            Circuit c = generator.generate(i < 100 ? 20 : 3000, 6);
+            BytecodeCircuit bytecode = BytecodeCircuit.compile(c);
+            assert (bytecode.evaluate() == sequential.solve(c).getValue());
+        }
+
+        // Test 2: Every threshold against every number of true children.
+        for (int n = 1; n <= 5; n++) {
+            for (int trueCount = 0; trueCount <= n; trueCount++) {
+                CircuitNode[] children = new CircuitNode[n];
+                for (int i = 0; i < n; i++) {
+                    children[i] = CircuitNode.mk(i < trueCount);
+                }
+                for (int threshold = -1; threshold <= n + 1; threshold++) {
+                    boolean gt = BytecodeCircuit.compile(new Circuit(CircuitNode.mk(NodeType.GT, Math.max(0, threshold), children))).evaluate();
+                    assert (gt == trueCount > Math.max(0, threshold));
+                    boolean lt = BytecodeCircuit.compile(new Circuit(CircuitNode.mk(NodeType.LT, Math.max(0, threshold), children))).evaluate();
+                    assert (lt == trueCount < Math.max(0, threshold));
+                }
+            }
+        }
+
+        // Test 3: Short-circuiting, and other leaves for the same shape.
+        CountingLeaf first = new CountingLeaf(false);
+        CountingLeaf second = new CountingLeaf(true);
+        BytecodeCircuit and = BytecodeCircuit.compile(new Circuit(CircuitNode.mk(NodeType.AND, first, second)));
+        assert (!and.evaluate());
+        assert (first.calls == 1 && second.calls == 0);
+        CountingLeaf yes = new CountingLeaf(true);
+        assert (and.evaluate(new LeafNode[] {yes, yes}));
+        assert (yes.calls == 2);
+        try {
+            and.evaluate(new LeafNode[] {yes});
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        // Test 4: Shared nodes get methods of their own, large nodes are split.
+        InterningCircuitBuilder builder = new InterningCircuitBuilder();
+        CircuitNode shared = builder.mk(NodeType.OR, builder.mk(false), builder.mk(NodeType.NOT, builder.mk(false)));
+        Circuit dag = new Circuit(builder.mk(NodeType.AND, shared, builder.mk(NodeType.NOT, shared)));
+        BytecodeCircuit bytecode = BytecodeCircuit.compile(dag);
+        assert (!bytecode.evaluate());
+        assert (bytecode.getMethodCount() == 2);
+        Circuit wide = new Circuit(CircuitNode.mk(NodeType.GT, 499, leaves(1000, true)));
+        assert (BytecodeCircuit.compile(wide).evaluate());
+
+        // Test 5: Nodes too wide for a class file are rejected, the solver still solves them.
+        Circuit tooWide = new Circuit(CircuitNode.mk(NodeType.LT, 5000, leaves(10000, true)));
+        try {
+            BytecodeCircuit.compile(tooWide);
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        BytecodeCircuitSolver solver = new BytecodeCircuitSolver();
+        assert (!solver.solve(tooWide).getValue());
+        assert (solver.solve(bytecode).getValue() == sequential.solve(dag).getValue());
+
+        // Test 6: Circuits with slow leaves are solved in parallel.
+        Circuit slow = new Circuit(CircuitNode.mk(NodeType.AND,
+                CircuitNode.mk(true, Duration.ofMillis(300)),
+                CircuitNode.mk(true, Duration.ofMillis(300)),
+                CircuitNode.mk(true, Duration.ofMillis(300))));
+        assert (BytecodeCircuit.compile(slow).mayBlock());
+        long start = System.nanoTime();
+        assert (solver.solve(slow).getValue());
+        assert ((System.nanoTime() - start) / 1_000_000 < 800);
+
+        // Test 7: cancel() stops a circuit solved by the fallback solver too.
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CircuitNode blocking = new LeafNode() {
+            @Override
+            public boolean getValue() throws InterruptedException {
+                try {
+                    Thread.sleep(100_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return true;
+            }
+        };
+        CircuitValue cancelled = solver.solve(new Circuit(CircuitNode.mk(NodeType.NOT, blocking)));
+        Thread.sleep(100);
+        assert (cancelled.cancel());
+        try {
+            cancelled.getValue();
+            assert (false);
+        } catch (InterruptedException e) {
+            // Expected.
+        }
+        assert (interrupted.await(5, TimeUnit.SECONDS));
+
+        // Test 8: stop() interrupts the evaluation.
+        Circuit endless = new Circuit(CircuitNode.mk(NodeType.NOT, CircuitNode.mk(true, Duration.ofSeconds(100))));
+        CircuitValue value = solver.solve(endless);
+        Thread.sleep(100);
+        solver.stop();
+        try {
+            value.getValue();
+            assert (false);
+        } catch (InterruptedException e) {
+            // Expected.
+        }
+        try {
+            solver.solve(dag).getValue();
+            assert (false);
+        } catch (InterruptedException e) {
+            // Expected.
+        }
+
+        System.out.println("End of TestBytecodeCircuit");
+    }
+}
@@ -0,0 +1,91 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.solution.ForkJoinCircuitSolver;
+import cp2024.solution.ParallelCircuitSolver;
+import cp2024.solution.VirtualThreadCircuitSolver;
+import java.time.Duration;
+
+public class TestCancel {
+
+    // Wide circuit whose leaves would sleep for a long time.
+    private static Circuit slowCircuit() {
+        CircuitNode[] leaves = new CircuitNode[50];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = CircuitNode.mk(true, Duration.ofSeconds(100));
+        }
+        return new Circuit(CircuitNode.mk(NodeType.AND,
+                CircuitNode.mk(NodeType.OR, leaves),
+                CircuitNode.mk(true, Duration.ofSeconds(100))));
+    }
+
+    // Number of threads still evaluating a sleepy leaf (idle pool threads don't count).
+    private static int threadsInLeaves() {
+        int count = 0;
+        for (StackTraceElement[] stack : Thread.getAllStackTraces().values()) {
+            for (StackTraceElement frame : stack) {
+                if (frame.getClassName().equals(SleepyLeafNode.class.getName())) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void cancel(String name, CircuitSolver solver) throws InterruptedException {
+        CircuitValue cancelled = solver.solve(slowCircuit());
+        CircuitValue other = solver.solve(new Circuit(CircuitNode.mk(NodeType.OR,
+                CircuitNode.mk(false, Duration.ofMillis(300)),
+                CircuitNode.mk(true, Duration.ofMillis(300)))));
+
+        // A thread waiting for the value is woken up by cancel().
+        boolean[] interrupted = new boolean[1];
+        Thread waiter = new Thread(() -> {
+            try {
+                cancelled.getValue();
+            } catch (InterruptedException e) {
+                interrupted[0] = true;
+            }
+        });
+        waiter.start();
+        Thread.sleep(100);
+
+        long start = System.nanoTime();
+        assert (cancelled.cancel());
+        waiter.join(5000);
+        assert (!waiter.isAlive());
+        assert (interrupted[0]);
+        try {
+            cancelled.getValue();
+            assert (false);
+        } catch (InterruptedException e) {
+            // Expected.
+        }
+        // Cancelling again does nothing.
+        assert (!cancelled.cancel());
+
+        // Other circuits are unaffected.
+        assert (other.getValue());
+        assert (!other.cancel());
+
+        // Leaves of the cancelled circuit are interrupted instead of sleeping on.
+        while (threadsInLeaves() > 0 && System.nanoTime() - start < Duration.ofSeconds(5).toNanos()) {
+            Thread.sleep(10);
+        }
+        System.out.println("[" + name + "] threads in leaves after cancel: " + threadsInLeaves()
+                + ", torn down in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        assert (threadsInLeaves() == 0);
+
+        solver.stop();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        cancel("thread-per-node", new ParallelCircuitSolver());
+        cancel("pooled", new ParallelCircuitSolver(4));
+        cancel("virtual-thread", new VirtualThreadCircuitSolver());
+        cancel("fork-join", new ForkJoinCircuitSolver(4));
+        System.out.println("End of TestCancel");
+    }
+
+}
@@ -0,0 +1,97 @@
+package cp2024.test;
+
+import cp2024.bench.RandomCircuits;
+import cp2024.circuit.*;
+import cp2024.demo.SequentialSolver;
+import cp2024.solution.CompiledCircuit;
+import cp2024.solution.CompiledCircuitSolver;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+
+public class TestCompiledCircuit {
+
+    public static void main(String[] args) throws InterruptedException {
+
+        // Test 1: Layout of a small circuit.
+        Circuit c = new Circuit(CircuitNode.mk(NodeType.AND,
+                CircuitNode.mk(NodeType.GT, 1,
+                        CircuitNode.mk(true),
+                        CircuitNode.mk(false),
+                        CircuitNode.mk(true)),
+                CircuitNode.mk(NodeType.NOT, CircuitNode.mk(false))));
+        CompiledCircuit compiled = CompiledCircuit.compile(c);
+        assert (compiled.size() == 7);
+        assert (compiled.getLeafCount() == 4);
+        assert (compiled.getType(0) == NodeType.AND);
+        assert (compiled.getChildCount(0) == 2);
+        assert (compiled.getChild(0, 0) == 1);
+        assert (compiled.getChild(0, 1) == 5);
+        assert (compiled.getType(1) == NodeType.GT);
+        assert (compiled.getThreshold(1) == 1);
+        assert (compiled.getLeafIndex(2) == 0);
+        assert (compiled.getLeafIndex(6) == 3);
+        assert (compiled.getLeafIndex(5) == -1);
+        assert (compiled.evaluate());
+        System.out.println("Layout OK");
+
+        // Test 2: Same values as SequentialSolver on random circuits.
+        SequentialSolver sequential = new SequentialSolver();
+        RandomCircuits generator = new RandomCircuits(3);
+        for (int i = 0; i < 500; i++) {
+            c = generator.generate(1 + i % 200, 6);
+            boolean expected = sequential.solve(c).getValue();
+            compiled = CompiledCircuit.compile(c);
+            assert (compiled.evaluate() == expected);
+            for (int node = 0; node < compiled.size(); node++) {
+                assert (compiled.getType(node) != NodeType.LEAF || compiled.getChildCount(node) == 0);
+            }
+        }
+        System.out.println("Random circuits OK");
+
+        // Test 3: Repeated evaluation allocates nothing.
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        compiled = CompiledCircuit.compile(generator.generate(1000, 8));
+        boolean value = compiled.evaluate();
+        for (int i = 0; i < 1000; i++) {
+            compiled.evaluate();
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1000; i++) {
+            assert (compiled.evaluate() == value);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        System.out.println("Allocated in 1000 evaluations: " + allocated + " B");
+        assert (allocated == 0);
+
+        // Test 4: The solver short-circuits, and stop() interrupts slow leaves.
+        CompiledCircuitSolver solver = new CompiledCircuitSolver();
+        c = new Circuit(CircuitNode.mk(NodeType.OR,
+                CircuitNode.mk(true),
+                CircuitNode.mk(false, Duration.ofSeconds(100))));
+        assert (solver.solve(c).getValue());
+        assert (!solver.solve(CompiledCircuit.compile(new Circuit(CircuitNode.mk(NodeType.LT, 1,
+                CircuitNode.mk(true),
+                CircuitNode.mk(false, Duration.ofSeconds(100)))))).getValue());
+
+        CircuitValue slow = solver.solve(new Circuit(CircuitNode.mk(NodeType.NOT,
+                CircuitNode.mk(true, Duration.ofSeconds(100)))));
+        long start = System.nanoTime();
+        solver.stop();
+        try {
+            slow.getValue();
+            assert (false);
+        } catch (InterruptedException e) {
+            // Expected.
+        }
+        assert (System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+        try {
+            solver.solve(c).getValue();
+            assert (false);
+        } catch (InterruptedException e) {
+            // Expected.
+        }
+
+        System.out.println("End of TestCompiledCircuit");
+    }
+}
@@ -0,0 +1,83 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.solution.ParallelCircuitSolver;
+import cp2024.solution.ParallelCircuitValue;
+import cp2024.solution.VirtualThreadCircuitSolver;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+public class TestDeadline {
+
+    private static Circuit slowCircuit(Duration delay) {
+        return new Circuit(CircuitNode.mk(NodeType.AND,
+                CircuitNode.mk(true),
+                CircuitNode.mk(NodeType.OR,
+                        CircuitNode.mk(false, delay),
+                        CircuitNode.mk(true, delay))));
+    }
+
+    private static void deadline(String name, ParallelCircuitSolver solver) throws InterruptedException {
+
+        // Test 1: A missed deadline stops the circuit and reports a timeout.
+        long start = System.nanoTime();
+        CircuitValue value = solver.solve(slowCircuit(Duration.ofSeconds(100)), Duration.ofMillis(200));
+        try {
+            value.getValue();
+            assert (false);
+        } catch (InterruptedException e) {
+            // Expected.
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("[" + name + "] timed out after " + elapsed + " ms");
+        assert (elapsed >= 150 && elapsed < 5000);
+        assert (((ParallelCircuitValue) value).isTimedOut());
+        try {
+            value.getValue(Duration.ofSeconds(1));
+            assert (false);
+        } catch (TimeoutException e) {
+            System.out.println("[" + name + "] getValue(timeout): " + e.getMessage());
+        }
+
+        // Test 2: A timed getValue() gives up, but the computation goes on.
+        value = solver.solve(slowCircuit(Duration.ofMillis(500)));
+        try {
+            value.getValue(Duration.ofMillis(50));
+            assert (false);
+        } catch (TimeoutException e) {
+            System.out.println("[" + name + "] getValue(timeout): " + e.getMessage());
+        }
+        try {
+            assert (value.getValue(Duration.ofSeconds(5)));
+        } catch (TimeoutException e) {
+            assert (false);
+        }
+        assert (!((ParallelCircuitValue) value).isTimedOut());
+
+        // Test 3: A deadline that is met doesn't change the value.
+        value = solver.solve(slowCircuit(Duration.ofMillis(50)), Duration.ofSeconds(10));
+        assert (value.getValue());
+
+        solver.stop();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        deadline("thread-per-node", new ParallelCircuitSolver());
+        deadline("pooled", new ParallelCircuitSolver(2));
+
+        // Timed getValue() of the other solvers.
+        CircuitSolver solver = new VirtualThreadCircuitSolver();
+        CircuitValue value = solver.solve(slowCircuit(Duration.ofMillis(500)));
+        try {
+            value.getValue(Duration.ofMillis(50));
+            assert (false);
+        } catch (TimeoutException e) {
+            System.out.println("[virtual-thread] getValue(timeout) timed out");
+        }
+        assert (value.cancel());
+        solver.stop();
+
+        System.out.println("End of TestDeadline");
+    }
+
+}
@@ -0,0 +1,83 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.solution.ForkJoinCircuitSolver;
+import java.time.Duration;
+
+public class TestForkJoinSolver {
+
+    public static void main(String[] args) throws InterruptedException {
+
+        ForkJoinCircuitSolver solver = new ForkJoinCircuitSolver();
+
+        // Test 1: Short-circuit OR cancels the slow leaf.
+        Circuit c = new Circuit(CircuitNode.mk(NodeType.OR,
+                CircuitNode.mk(false, Duration.ofSeconds(100)),
+                CircuitNode.mk(true, Duration.ofSeconds(1))));
+        System.out.println("Solving 1...");
+        long start = System.nanoTime();
+        boolean value = solver.solve(c).getValue();
+        System.out.println("Solved 1: " + value);
+        assert (value);
+        assert (System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+
+        // Test 2: IF with both branches equal doesn't wait for the condition.
+        c = new Circuit(CircuitNode.mk(NodeType.IF,
+                CircuitNode.mk(true, Duration.ofSeconds(100)),
+                CircuitNode.mk(false),
+                CircuitNode.mk(NodeType.NOT, CircuitNode.mk(true))));
+        System.out.println("Solving 2...");
+        value = solver.solve(c).getValue();
+        System.out.println("Solved 2: " + value);
+        assert (!value);
+
+        // Test 3: Thresholds.
+        c = new Circuit(CircuitNode.mk(NodeType.AND,
+                CircuitNode.mk(NodeType.GT, 1,
+                        CircuitNode.mk(true),
+                        CircuitNode.mk(false, Duration.ofSeconds(100)),
+                        CircuitNode.mk(true)),
+                CircuitNode.mk(NodeType.LT, 2,
+                        CircuitNode.mk(false),
+                        CircuitNode.mk(false),
+                        CircuitNode.mk(true, Duration.ofSeconds(100)))));
+        System.out.println("Solving 3...");
+        value = solver.solve(c).getValue();
+        System.out.println("Solved 3: " + value);
+        assert (value);
+
+        // Test 4: Many leaves sleeping at the same time.
+        CircuitNode[] leaves = new CircuitNode[1000];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = CircuitNode.mk(true, Duration.ofSeconds(1));
+        }
+        c = new Circuit(CircuitNode.mk(NodeType.AND, leaves));
+        System.out.println("Solving 4...");
+        start = System.nanoTime();
+        value = solver.solve(c).getValue();
+        System.out.println("Solved 4: " + value + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        assert (value);
+
+        // Test 5: Stop interrupts pending values and keeps computed ones.
+        CircuitValue computed = solver.solve(new Circuit(CircuitNode.mk(true)));
+        CircuitValue pending = solver.solve(new Circuit(CircuitNode.mk(true, Duration.ofSeconds(100))));
+        assert (computed.getValue());
+        solver.stop();
+        try {
+            pending.getValue();
+            assert (false);
+        } catch (InterruptedException e) {
+            System.out.println("Pending value interrupted");
+        }
+        try {
+            solver.solve(new Circuit(CircuitNode.mk(true))).getValue();
+            assert (false);
+        } catch (InterruptedException e) {
+            System.out.println("New circuit interrupted");
+        }
+        System.out.println("Computed value after stop: " + computed.getValue());
+
+        System.out.println("End of TestForkJoinSolver");
+    }
+
+}
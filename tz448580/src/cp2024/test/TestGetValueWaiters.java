@@ -0,0 +1,68 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.solution.ParallelCircuitSolver;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestGetValueWaiters {
+
+    public static void main(String[] args) throws InterruptedException {
+
+        CircuitSolver solver = new ParallelCircuitSolver();
+        CircuitValue value = solver.solve(new Circuit(CircuitNode.mk(true, Duration.ofSeconds(2))));
+
+        AtomicInteger gotValue = new AtomicInteger(0);
+        AtomicInteger interrupted = new AtomicInteger(0);
+        Thread[] waiters = new Thread[10];
+        for (int i = 0; i < waiters.length; i++) {
+            waiters[i] = new Thread(() -> {
+                try {
+                    if (value.getValue()) {
+                        gotValue.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                }
+            });
+            waiters[i].start();
+        }
+
+        // Test 1: Interrupting one waiter doesn't affect the others.
+        Thread.sleep(500);
+        waiters[0].interrupt();
+        for (Thread waiter : waiters) {
+            waiter.join();
+        }
+        System.out.println("Got value: " + gotValue.get() + ", interrupted: " + interrupted.get());
+        assert (gotValue.get() == waiters.length - 1);
+        assert (interrupted.get() == 1);
+
+        // Test 2: Polling a computed value.
+        long start = System.nanoTime();
+        for (int i = 0; i < 10_000_000; i++) {
+            assert (value.getValue());
+        }
+        System.out.println("10M getValue() calls: " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        // Test 3: Waiters of a pending value are interrupted by stop().
+        CircuitValue pending = solver.solve(new Circuit(CircuitNode.mk(true, Duration.ofSeconds(100))));
+        Thread waiter = new Thread(() -> {
+            try {
+                pending.getValue();
+                System.out.println("Pending value returned after stop");
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+            }
+        });
+        waiter.start();
+        Thread.sleep(500);
+        solver.stop();
+        waiter.join();
+        assert (interrupted.get() == 2);
+        assert (value.getValue());
+
+        System.out.println("End of TestGetValueWaiters");
+    }
+
+}
@@ -0,0 +1,136 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.demo.SequentialSolver;
+import cp2024.solution.InterningCircuitBuilder;
+import cp2024.solution.ParallelCircuitSolver;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+public class TestInterning {
+
+    // Number of nodes of the tree: shared nodes are counted once per reference.
+    private static long treeSize(CircuitNode node) throws InterruptedException {
+        long size = 1;
+        for (CircuitNode arg : node.getArgs()) {
+            size += treeSize(arg);
+        }
+        return size;
+    }
+
+    // Number of distinct node objects.
+    private static int distinctNodes(CircuitNode node) throws InterruptedException {
+        Set<CircuitNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        collect(node, seen);
+        return seen.size();
+    }
+
+    private static void collect(CircuitNode node, Set<CircuitNode> seen) throws InterruptedException {
+        if (seen.add(node)) {
+            for (CircuitNode arg : node.getArgs()) {
+                collect(arg, seen);
+            }
+        }
+    }
+
+    // A rule set: every rule repeats the same conditions over a few inputs.
+    private static CircuitNode rules(InterningCircuitBuilder b, int count) {
+        CircuitNode[] rules = new CircuitNode[count];
+        for (int i = 0; i < count; i++) {
+            CircuitNode condition = b.mk(NodeType.GT, 1,
+                    b.mk(true), b.mk(false), b.mk(i % 3 == 0));
+            rules[i] = b.mk(NodeType.AND,
+                    b.mk(NodeType.OR, b.mk(false), condition),
+                    b.mk(NodeType.NOT, b.mk(NodeType.LT, 2, b.mk(i % 5 == 0), b.mk(true), condition)));
+        }
+        return b.mk(NodeType.GT, count / 2, rules);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        InterningCircuitBuilder b = new InterningCircuitBuilder();
+
+        // Test 1: Identical subcircuits are the same object.
+        CircuitNode x = b.mk(NodeType.AND, b.mk(true), b.mk(NodeType.NOT, b.mk(false)));
+        CircuitNode y = b.mk(NodeType.AND, b.mk(true), b.mk(NodeType.NOT, b.mk(false)));
+        assert (x == y);
+        assert (b.mk(true) == b.mk(true));
+        assert (b.mk(true) != b.mk(false));
+        assert (b.mk(true, Duration.ofMillis(10)) == b.mk(true, Duration.ofMillis(10)));
+        assert (b.mk(true, Duration.ofMillis(10)) != b.mk(true));
+        assert (b.mk(NodeType.GT, 1, b.mk(true), b.mk(true)) != b.mk(NodeType.GT, 0, b.mk(true), b.mk(true)));
+        assert (b.mk(NodeType.GT, 1, b.mk(true), b.mk(true)) != b.mk(NodeType.LT, 1, b.mk(true), b.mk(true)));
+        // Order of children matters.
+        assert (b.mk(NodeType.OR, b.mk(true), b.mk(false)) != b.mk(NodeType.OR, b.mk(false), b.mk(true)));
+
+        // Test 2: Changing the varargs array afterwards doesn't change the node.
+        CircuitNode[] children = {b.mk(true), b.mk(false)};
+        CircuitNode z = b.mk(NodeType.OR, children);
+        children[0] = b.mk(false);
+        assert (z.getArgs()[0] == b.mk(true));
+        assert (z != b.mk(NodeType.OR, children));
+
+        // Test 3: Invalid nodes still throw and aren't remembered.
+        try {
+            b.mk(NodeType.AND, b.mk(true));
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        // Test 4: A repetitive rule set shrinks by an order of magnitude and keeps its value.
+        InterningCircuitBuilder rulesBuilder = new InterningCircuitBuilder();
+        Circuit interned = new Circuit(rules(rulesBuilder, 1000));
+        long tree = treeSize(interned.getRoot());
+        int distinct = distinctNodes(interned.getRoot());
+        System.out.println("Rule set: " + tree + " nodes as a tree, " + distinct + " distinct nodes, "
+                + rulesBuilder.getHits() + " of " + rulesBuilder.getRequests() + " mk() calls shared");
+        assert (distinct * 10 < tree);
+        assert (distinct == rulesBuilder.size());
+
+        boolean expected = new SequentialSolver().solve(interned).getValue();
+        ParallelCircuitSolver solver = new ParallelCircuitSolver(4);
+        assert (solver.solve(interned).getValue() == expected);
+        solver.stop();
+
+        // Test 5: intern() merges repeated subcircuits of an existing circuit over shared leaves.
+        CircuitNode leaf = CircuitNode.mk(true);
+        CircuitNode plain = CircuitNode.mk(NodeType.OR,
+                CircuitNode.mk(NodeType.NOT, leaf),
+                CircuitNode.mk(NodeType.NOT, leaf));
+        Circuit merged = new InterningCircuitBuilder().intern(new Circuit(plain));
+        assert (merged.getRoot().getArgs()[0] == merged.getRoot().getArgs()[1]);
+        assert (distinctNodes(merged.getRoot()) == 3);
+        assert (!new SequentialSolver().solve(merged).getValue());
+
+        // Test 6: A deep DAG is interned once per node, not once per path.
+        CircuitNode chain = leaf;
+        for (int i = 0; i < 60; i++) {
+            chain = CircuitNode.mk(i % 2 == 0 ? NodeType.AND : NodeType.OR, chain, chain);
+        }
+        InterningCircuitBuilder chainBuilder = new InterningCircuitBuilder();
+        Circuit internedChain = chainBuilder.intern(new Circuit(chain));
+        // The leaf is interned as well.
+        assert (chainBuilder.getRequests() == 61);
+        assert (distinctNodes(internedChain.getRoot()) == 61);
+
+        // Test 7: Circuits made with CircuitNode.mk() share subexpressions over constant leaves.
+        CircuitNode repeated = CircuitNode.mk(NodeType.AND,
+                CircuitNode.mk(NodeType.OR, CircuitNode.mk(true), CircuitNode.mk(false)),
+                CircuitNode.mk(NodeType.OR, CircuitNode.mk(true), CircuitNode.mk(false)));
+        InterningCircuitBuilder constants = new InterningCircuitBuilder();
+        Circuit collapsed = constants.intern(new Circuit(repeated));
+        assert (collapsed.getRoot().getArgs()[0] == collapsed.getRoot().getArgs()[1]);
+        assert (collapsed.getRoot().getArgs()[0].getArgs()[0] == constants.mk(true));
+        assert (distinctNodes(collapsed.getRoot()) == 4);
+        assert (new SequentialSolver().solve(collapsed).getValue());
+        // Leaves that may block are kept, and never called.
+        CircuitNode slow = CircuitNode.mk(true, Duration.ofSeconds(100));
+        CircuitNode overSlow = constants.intern(CircuitNode.mk(NodeType.NOT, slow));
+        assert (overSlow.getArgs()[0] == slow);
+
+        System.out.println("End of TestInterning");
+    }
+}
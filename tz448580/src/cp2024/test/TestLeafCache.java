@@ -0,0 +1,153 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.demo.SequentialSolver;
+import cp2024.solution.CachingLeafNode;
+import cp2024.solution.LeafValueCache;
+import cp2024.solution.ParallelCircuitSolver;
+import cp2024.solution.SolverOptions;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestLeafCache {
+
+    // Slow leaf that counts its calls, like a remote lookup.
+    private static class RemoteLeaf extends LeafNode {
+        private final boolean value;
+        private final Duration delay;
+        private final AtomicInteger calls = new AtomicInteger(0);
+
+        private RemoteLeaf(boolean value, Duration delay) {
+            this.value = value;
+            this.delay = delay;
+        }
+
+        @Override
+        public boolean getValue() throws InterruptedException {
+            calls.incrementAndGet();
+            Thread.sleep(delay.toMillis());
+            return value;
+        }
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        // Test 1: Appearances of a leaf in a circuit load it once, later solves hit the cache.
+        LeafValueCache cache = new LeafValueCache(100, Duration.ofMillis(1000));
+        RemoteLeaf remote = new RemoteLeaf(true, Duration.ofMillis(200));
+        CircuitNode[] appearances = new CircuitNode[10];
+        for (int i = 0; i < appearances.length; i++) {
+            appearances[i] = CircuitNode.mk(NodeType.NOT, CircuitNode.mk(NodeType.NOT, remote));
+        }
+        Circuit c = new Circuit(CircuitNode.mk(NodeType.AND, appearances));
+
+        for (ParallelCircuitSolver solver : new ParallelCircuitSolver[] {
+                new ParallelCircuitSolver(SolverOptions.builder().leafCache(cache).build()),
+                new ParallelCircuitSolver(SolverOptions.builder().poolSize(4).leafCache(cache).build())}) {
+            long start = System.nanoTime();
+            assert (solver.solve(c).getValue());
+            long first = millisSince(start);
+            start = System.nanoTime();
+            assert (solver.solve(c).getValue());
+            long second = millisSince(start);
+            System.out.println("First solve: " + first + " ms, second solve: " + second + " ms, calls: "
+                    + remote.calls.get() + ", " + cache.getMetrics());
+            assert (remote.calls.get() == 1);
+            assert (second < 100);
+            solver.stop();
+
+            // Expired values are loaded again.
+            Thread.sleep(1100);
+            remote.calls.set(0);
+        }
+        assert (cache.getMetrics().getMisses() == 2);
+
+        // Test 2: A hit doesn't wait for a load of another leaf.
+        RemoteLeaf slow = new RemoteLeaf(false, Duration.ofSeconds(2));
+        RemoteLeaf fast = new RemoteLeaf(true, Duration.ZERO);
+        assert (cache.getValue(fast));
+        Thread loader = new Thread(() -> {
+            try {
+                cache.getValue(slow);
+            } catch (InterruptedException e) {
+                // Interrupted below.
+            }
+        });
+        loader.start();
+        Thread.sleep(100);
+        long start = System.nanoTime();
+        assert (cache.getValue(fast));
+        assert (millisSince(start) < 100);
+
+        // Test 3: A waiting thread takes over the load of an interrupted thread.
+        AtomicBoolean waiterValue = new AtomicBoolean(true);
+        Thread waiter = new Thread(() -> {
+            try {
+                waiterValue.set(cache.getValue(slow));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        waiter.start();
+        Thread.sleep(100);
+        assert (slow.calls.get() == 1);
+        loader.interrupt();
+        waiter.join();
+        assert (!waiterValue.get());
+        assert (slow.calls.get() == 2);
+
+        // Test 4: Least recently used values are evicted beyond the limit.
+        LeafValueCache small = new LeafValueCache(2, Duration.ofMinutes(1));
+        RemoteLeaf a = new RemoteLeaf(true, Duration.ZERO);
+        RemoteLeaf b = new RemoteLeaf(true, Duration.ZERO);
+        RemoteLeaf d = new RemoteLeaf(true, Duration.ZERO);
+        small.getValue(a);
+        small.getValue(b);
+        small.getValue(a);
+        small.getValue(d);
+        assert (small.getMetrics().getEvictions() == 1);
+        small.getValue(a);
+        assert (a.calls.get() == 1);
+        small.getValue(b);
+        assert (b.calls.get() == 2);
+
+        // Test 5: Per-leaf time to live works with any solver.
+        RemoteLeaf shortLived = new RemoteLeaf(true, Duration.ZERO);
+        CircuitNode cached = new CachingLeafNode(shortLived, Duration.ofMillis(100), small);
+        c = new Circuit(CircuitNode.mk(NodeType.AND, cached, cached));
+        assert (new SequentialSolver().solve(c).getValue());
+        assert (shortLived.calls.get() == 1);
+        Thread.sleep(150);
+        assert (new SequentialSolver().solve(c).getValue());
+        assert (shortLived.calls.get() == 2);
+
+        // Test 6: Leaves with the same cache key are loaded separately, a fast one doesn't wait for a slow one.
+        LeafValueCache keyed = new LeafValueCache(100, Duration.ofMinutes(1));
+        CircuitNode slowTrue = CircuitNode.mk(true, Duration.ofSeconds(2));
+        CircuitNode fastTrue = CircuitNode.mk(true);
+        assert (((LeafNode) slowTrue).getCacheKey().equals(((LeafNode) fastTrue).getCacheKey()));
+        Thread slowLoader = new Thread(() -> {
+            try {
+                keyed.getValue((LeafNode) slowTrue);
+            } catch (InterruptedException e) {
+                // Interrupted below.
+            }
+        });
+        slowLoader.start();
+        Thread.sleep(100);
+        start = System.nanoTime();
+        assert (keyed.getValue((LeafNode) fastTrue));
+        assert (millisSince(start) < 100);
+        assert (keyed.getMetrics().getHits() == 0);
+        assert (keyed.getMetrics().getMisses() == 2);
+        slowLoader.interrupt();
+        slowLoader.join();
+
+        System.out.println("End of TestLeafCache");
+    }
+}
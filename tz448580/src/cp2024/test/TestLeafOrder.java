@@ -0,0 +1,131 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.demo.SequentialSolver;
+import cp2024.solution.LeafStatistics;
+import cp2024.solution.ParallelCircuitSolver;
+import cp2024.solution.SolverOptions;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestLeafOrder {
+
+    // Leaf that sleeps and counts its calls.
+    private static class TimedLeaf extends LeafNode {
+        private final boolean value;
+        private final long millis;
+        private final AtomicInteger calls;
+
+        private TimedLeaf(boolean value, long millis, AtomicInteger calls) {
+            this.value = value;
+            this.millis = millis;
+            this.calls = calls;
+        }
+
+        @Override
+        public boolean getValue() throws InterruptedException {
+            calls.incrementAndGet();
+            Thread.sleep(millis);
+            return value;
+        }
+    }
+
+    private static final long MS = 1_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+
+        // Test 1: Order by expected time to decide the parent.
+        LeafStatistics statistics = new LeafStatistics(0.5);
+        AtomicInteger unused = new AtomicInteger();
+        TimedLeaf slowTrue = new TimedLeaf(true, 0, unused);
+        TimedLeaf fastFalse = new TimedLeaf(false, 0, unused);
+        TimedLeaf fastTrue = new TimedLeaf(true, 0, unused);
+        statistics.record(slowTrue, 50 * MS, true);
+        statistics.record(fastFalse, MS, false);
+        statistics.record(fastTrue, 2 * MS, true);
+        assert (statistics.getExpectedNanos(slowTrue) == 50 * MS);
+        assert (statistics.getTrueProbability(fastFalse) == 0);
+        statistics.record(fastFalse, 3 * MS, true);
+        assert (statistics.getExpectedNanos(fastFalse) == 2 * MS);
+        assert (statistics.getTrueProbability(fastFalse) == 0.5);
+        statistics.record(fastFalse, 2 * MS, false);
+
+        CircuitNode inner = CircuitNode.mk(NodeType.NOT, fastTrue);
+        CircuitNode[] children = {slowTrue, fastFalse, fastTrue, inner};
+        // AND: the leaf most likely false per time goes first, inner nodes before all leaves.
+        assert (Arrays.equals(statistics.startOrder(NodeType.AND, children), new int[] {3, 1, 2, 0}));
+        // OR: true leaves per time.
+        assert (Arrays.equals(statistics.startOrder(NodeType.OR, children), new int[] {3, 2, 1, 0}));
+        // GTx, LTx: by latency alone, ties keep their order.
+        assert (Arrays.equals(statistics.startOrder(NodeType.GT, children), new int[] {3, 1, 2, 0}));
+        assert (statistics.startOrder(NodeType.IF, new CircuitNode[] {slowTrue, fastFalse, fastTrue}) == null);
+        assert (statistics.startOrder(NodeType.NOT, new CircuitNode[] {slowTrue}) == null);
+
+        // A new leaf object is estimated by its class.
+        TimedLeaf unknown = new TimedLeaf(true, 0, unused);
+        assert (!Double.isNaN(statistics.getExpectedNanos(unknown)));
+        assert (Double.isNaN(new LeafStatistics().getExpectedNanos(unknown)));
+
+        // Test 2: Once measured, a fast deciding leaf runs before slow ones it makes unnecessary.
+        for (boolean ordered : new boolean[] {false, true}) {
+            AtomicInteger slowCalls = new AtomicInteger();
+            AtomicInteger fastCalls = new AtomicInteger();
+            CircuitNode[] leaves = new CircuitNode[6];
+            for (int i = 0; i < 5; i++) {
+                leaves[i] = new TimedLeaf(false, 20, slowCalls);
+            }
+            leaves[5] = new TimedLeaf(true, 1, fastCalls);
+            Circuit c = new Circuit(CircuitNode.mk(NodeType.OR, leaves));
+            SolverOptions.Builder options = SolverOptions.builder().poolSize(1);
+            if (ordered) {
+                options.leafStatistics(new LeafStatistics());
+            }
+            ParallelCircuitSolver solver = new ParallelCircuitSolver(options.build());
+            // The first solve starts every leaf in the circuit's order.
+            assert (solver.solve(c).getValue());
+            assert (slowCalls.get() == 5);
+            slowCalls.set(0);
+            assert (solver.solve(c).getValue());
+            assert (ordered ? slowCalls.get() == 0 : slowCalls.get() == 5);
+            solver.stop();
+        }
+
+        // Test 3: Values don't depend on the order.
+        LeafStatistics shared = new LeafStatistics();
+        ParallelCircuitSolver solver = new ParallelCircuitSolver(
+                SolverOptions.builder().poolSize(2).leafStatistics(shared).build());
+        SequentialSolver sequential = new SequentialSolver();
+        Random random = new Random(61);
+        CircuitNode[] pool = new CircuitNode[8];
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = new TimedLeaf(random.nextBoolean(), random.nextInt(3), calls);
+        }
+        for (int round = 0; round < 30; round++) {
+            CircuitNode[] picked = new CircuitNode[2 + random.nextInt(pool.length - 1)];
+            for (int i = 0; i < picked.length; i++) {
+                picked[i] = pool[random.nextInt(pool.length)];
+            }
+            CircuitNode root = switch (round % 4) {
+                case 0 -> CircuitNode.mk(NodeType.AND, picked);
+                case 1 -> CircuitNode.mk(NodeType.OR, picked);
+                case 2 -> CircuitNode.mk(NodeType.GT, random.nextInt(picked.length + 1), picked);
+                default -> CircuitNode.mk(NodeType.LT, random.nextInt(picked.length + 1), picked);
+            };
+            Circuit c = new Circuit(CircuitNode.mk(NodeType.IF, pool[0], root, CircuitNode.mk(NodeType.NOT, root)));
+            assert (solver.solve(c).getValue() == sequential.solve(c).getValue());
+        }
+        solver.stop();
+
+        // Test 4: Statistics need a pool.
+        try {
+            SolverOptions.builder().leafStatistics(new LeafStatistics()).build();
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        System.out.println("End of TestLeafOrder");
+    }
+}
@@ -0,0 +1,65 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.solution.ParallelCircuitSolver;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+
+public class TestNestedIfThreads {
+
+    // IF nodes nested in the condition, depth levels deep.
+    private static CircuitNode nestedIf(int depth) {
+        if (depth == 0) {
+            return CircuitNode.mk(true);
+        }
+        return CircuitNode.mk(NodeType.IF,
+                nestedIf(depth - 1),
+                CircuitNode.mk(depth % 2 == 0),
+                CircuitNode.mk(depth % 2 == 1));
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        CircuitSolver solver = new ParallelCircuitSolver();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        // Test 1: One thread per node, IF nodes don't start helper threads.
+        int depth = 20;
+        long startedBefore = threads.getTotalStartedThreadCount();
+        System.out.println("Solving 1...");
+        boolean value = solver.solve(new Circuit(nestedIf(depth))).getValue();
+        long started = threads.getTotalStartedThreadCount() - startedBefore;
+        System.out.println("Solved 1: " + value + ", threads started: " + started);
+        assert (value == (depth % 2 == 0));
+        // Circuit thread plus one thread per node.
+        assert (started <= 1 + 3L * depth + 1);
+
+        // Test 2: Equal branches decide the node before the condition.
+        Circuit c = new Circuit(CircuitNode.mk(NodeType.IF,
+                CircuitNode.mk(true, Duration.ofSeconds(100)),
+                CircuitNode.mk(false),
+                CircuitNode.mk(NodeType.NOT, CircuitNode.mk(true))));
+        System.out.println("Solving 2...");
+        long start = System.nanoTime();
+        value = solver.solve(c).getValue();
+        System.out.println("Solved 2: " + value);
+        assert (!value);
+        assert (System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+
+        // Test 3: Known condition selects a branch before the other one finishes.
+        c = new Circuit(CircuitNode.mk(NodeType.IF,
+                CircuitNode.mk(false),
+                CircuitNode.mk(true, Duration.ofSeconds(100)),
+                CircuitNode.mk(true)));
+        System.out.println("Solving 3...");
+        start = System.nanoTime();
+        value = solver.solve(c).getValue();
+        System.out.println("Solved 3: " + value);
+        assert (value);
+        assert (System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+
+        solver.stop();
+        System.out.println("End of TestNestedIfThreads");
+    }
+
+}
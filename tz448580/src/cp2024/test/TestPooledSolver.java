@@ -0,0 +1,107 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.solution.ParallelCircuitSolver;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+
+public class TestPooledSolver {
+
+    private static boolean solveAndGet(CircuitSolver solver, Circuit c) {
+        try {
+            return solver.solve(c).getValue();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted");
+        }
+    }
+
+    public static void main(String[] args) {
+
+        // Fewer pool threads than leaves in most of the circuits below.
+        CircuitSolver solver = new ParallelCircuitSolver(2);
+
+        // Test 1: Short-circuit AND with a slow leaf.
+        Circuit c = new Circuit(CircuitNode.mk(NodeType.AND,
+                CircuitNode.mk(true),
+                CircuitNode.mk(false, Duration.ofSeconds(1)),
+                CircuitNode.mk(true, Duration.ofSeconds(100))));
+        System.out.println("Solving 1...");
+        long start = System.nanoTime();
+        boolean value = solveAndGet(solver, c);
+        System.out.println("Solved 1: " + value);
+        assert (!value);
+        assert (System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+
+        // Test 2: Short-circuit OR, the slow leaf holds one of the pool threads.
+        c = new Circuit(CircuitNode.mk(NodeType.OR,
+                CircuitNode.mk(false, Duration.ofSeconds(100)),
+                CircuitNode.mk(false),
+                CircuitNode.mk(true)));
+        System.out.println("Solving 2...");
+        value = solveAndGet(solver, c);
+        System.out.println("Solved 2: " + value);
+        assert (value);
+
+        // Test 3: Thresholds and IF.
+        c = new Circuit(CircuitNode.mk(NodeType.IF,
+                CircuitNode.mk(NodeType.GT, 1,
+                        CircuitNode.mk(true),
+                        CircuitNode.mk(false),
+                        CircuitNode.mk(true)),
+                CircuitNode.mk(NodeType.LT, 2,
+                        CircuitNode.mk(true),
+                        CircuitNode.mk(NodeType.NOT, CircuitNode.mk(true))),
+                CircuitNode.mk(false, Duration.ofSeconds(100))));
+        System.out.println("Solving 3...");
+        value = solveAndGet(solver, c);
+        System.out.println("Solved 3: " + value);
+        assert (value);
+
+        // Test 4: A wide circuit doesn't create a thread per node.
+        CircuitNode[] leaves = new CircuitNode[2000];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = CircuitNode.mk(NodeType.NOT, CircuitNode.mk(i % 2 == 0));
+        }
+        c = new Circuit(CircuitNode.mk(NodeType.GT, 999, leaves));
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long startedBefore = threads.getTotalStartedThreadCount();
+        System.out.println("Solving 4...");
+        value = solveAndGet(solver, c);
+        long started = threads.getTotalStartedThreadCount() - startedBefore;
+        System.out.println("Solved 4: " + value + ", threads started: " + started);
+        assert (value);
+        assert (started <= 2);
+
+        // Test 5: Stop interrupts pending values and keeps computed ones.
+        CircuitValue computed = solver.solve(new Circuit(CircuitNode.mk(true)));
+        CircuitValue pending = solver.solve(new Circuit(CircuitNode.mk(true, Duration.ofSeconds(100))));
+        try {
+            assert (computed.getValue());
+        } catch (InterruptedException e) {
+            assert (false);
+        }
+        solver.stop();
+        try {
+            pending.getValue();
+            System.out.println("Pending value returned after stop");
+            assert (false);
+        } catch (InterruptedException e) {
+            System.out.println("Pending value interrupted");
+        }
+        try {
+            solver.solve(new Circuit(CircuitNode.mk(true))).getValue();
+            assert (false);
+        } catch (InterruptedException e) {
+            System.out.println("New circuit interrupted");
+        }
+        try {
+            System.out.println("Computed value after stop: " + computed.getValue());
+        } catch (InterruptedException e) {
+            assert (false);
+        }
+
+        System.out.println("End of TestPooledSolver");
+    }
+
+}
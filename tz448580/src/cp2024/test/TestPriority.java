@@ -0,0 +1,85 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.solution.OverflowPolicy;
+import cp2024.solution.ParallelCircuitSolver;
+import cp2024.solution.Priority;
+import cp2024.solution.RejectedCircuitValue;
+import cp2024.solution.SolveRequest;
+import cp2024.solution.SolverOptions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+public class TestPriority {
+
+    private static final SolveRequest HIGH = SolveRequest.builder().priority(Priority.HIGH).build();
+    private static final SolveRequest LOW = SolveRequest.builder().priority(Priority.LOW).build();
+
+    private static Circuit slowCircuit(boolean value, Duration delay) {
+        return new Circuit(CircuitNode.mk(NodeType.OR,
+                CircuitNode.mk(false),
+                CircuitNode.mk(value, delay)));
+    }
+
+    private static boolean isPending(CircuitValue value) throws InterruptedException {
+        try {
+            value.getValue(Duration.ofMillis(1));
+            return false;
+        } catch (TimeoutException e) {
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException, TimeoutException {
+
+        // Test 1: A queued HIGH circuit is admitted before an older LOW one.
+        ParallelCircuitSolver solver = new ParallelCircuitSolver(SolverOptions.builder()
+                .maxInFlightCircuits(1)
+                .build());
+        CircuitValue running = solver.solve(slowCircuit(true, Duration.ofMillis(200)));
+        CircuitValue low = solver.solve(slowCircuit(true, Duration.ofMillis(300)), LOW);
+        CircuitValue high = solver.solve(slowCircuit(false, Duration.ofMillis(300)), HIGH);
+        assert (running.getValue());
+        assert (!high.getValue());
+        System.out.println("HIGH done, LOW pending: " + isPending(low));
+        assert (isPending(low));
+        assert (low.getValue());
+        solver.stop();
+
+        // Test 2: SHED_OLDEST never sheds a circuit of higher priority.
+        solver = new ParallelCircuitSolver(SolverOptions.builder()
+                .maxInFlightCircuits(1)
+                .maxQueuedSolves(1)
+                .overflowPolicy(OverflowPolicy.SHED_OLDEST)
+                .build());
+        running = solver.solve(slowCircuit(true, Duration.ofMillis(200)));
+        high = solver.solve(slowCircuit(true, Duration.ofMillis(10)), HIGH);
+        CircuitValue rejected = solver.solve(slowCircuit(true, Duration.ofMillis(10)), LOW);
+        assert (rejected instanceof RejectedCircuitValue);
+        assert (high.getValue());
+        System.out.println("Metrics 2: " + solver.getMetrics());
+        solver.stop();
+
+        // Test 3: On the pool, HIGH node tasks overtake queued LOW ones.
+        solver = new ParallelCircuitSolver(SolverOptions.builder().poolSize(1).build());
+        List<CircuitValue> batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            batch.add(solver.solve(slowCircuit(true, Duration.ofMillis(50)), LOW));
+        }
+        long start = System.nanoTime();
+        assert (!solver.solve(slowCircuit(false, Duration.ofMillis(10)), HIGH).getValue());
+        long highMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("HIGH circuit behind 20 LOW ones solved in " + highMillis + " ms");
+        // 20 LOW circuits would take 1 s on a single thread.
+        assert (highMillis < 500);
+        for (CircuitValue value : batch) {
+            assert (value.getValue());
+        }
+        solver.stop();
+
+        System.out.println("End of TestPriority");
+    }
+
+}
@@ -0,0 +1,194 @@
+package cp2024.test;
+
+import cp2024.bench.RandomCircuits;
+import cp2024.circuit.*;
+import cp2024.demo.SequentialSolver;
+import cp2024.solution.CostModel;
+import cp2024.solution.CostOrderedSolver;
+import cp2024.solution.LeafStatistics;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestSequentialOrder {
+
+    // Leaf with a fixed value, counting its calls.
+    private static class CountingLeaf extends LeafNode {
+        private final boolean value;
+        private final AtomicInteger calls;
+
+        private CountingLeaf(boolean value, AtomicInteger calls) {
+            this.value = value;
+            this.calls = calls;
+        }
+
+        @Override
+        public boolean getValue() {
+            calls.incrementAndGet();
+            return value;
+        }
+    }
+
+    // Expected cost and probability of GTx / LTx visited in the order, over all assignments.
+    private static double[] enumerate(boolean gt, int threshold, int[] order, double[] nanos, double[] probabilities) {
+        int n = order.length;
+        double cost = 0;
+        double trueProbability = 0;
+        for (int mask = 0; mask < 1 << n; mask++) {
+            double probability = 1;
+            for (int i = 0; i < n; i++) {
+                probability *= (mask >>> i & 1) == 1 ? probabilities[i] : 1 - probabilities[i];
+            }
+            int gotTrue = 0;
+            double paid = 0;
+            for (int step = 0; step < n; step++) {
+                int remaining = n - step;
+                boolean open = gt ? gotTrue <= threshold && gotTrue + remaining > threshold
+                                  : gotTrue < threshold && gotTrue + remaining >= threshold;
+                if (!open) {
+                    break;
+                }
+                paid += nanos[order[step]];
+                gotTrue += mask >>> order[step] & 1;
+            }
+            int all = Integer.bitCount(mask);
+            cost += probability * paid;
+            if (gt ? all > threshold : all < threshold) {
+                trueProbability += probability;
+            }
+        }
+        return new double[] {cost, trueProbability};
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        Random random = new Random(71);
+
+        // Test 1: AND and OR go by cost / P(short-circuit), with the expected cost of that order.
+        LeafStatistics statistics = new LeafStatistics(1);
+        AtomicInteger unused = new AtomicInteger();
+        CountingLeaf cheapTrue = new CountingLeaf(true, unused);
+        CountingLeaf cheapFalse = new CountingLeaf(false, unused);
+        CountingLeaf dearFalse = new CountingLeaf(false, unused);
+        statistics.record(cheapTrue, 10, true);
+        statistics.record(cheapFalse, 10, false);
+        statistics.record(dearFalse, 100, false);
+        CostModel model = new CostModel(statistics);
+        CircuitNode and = CircuitNode.mk(NodeType.AND, cheapTrue, dearFalse, cheapFalse);
+        assert (Arrays.equals(model.order(and), new int[] {2, 1, 0}));
+        assert (model.getExpectedNanos(and) == 10);
+        assert (model.getTrueProbability(and) == 0);
+        CircuitNode or = CircuitNode.mk(NodeType.OR, dearFalse, cheapFalse, cheapTrue);
+        assert (Arrays.equals(model.order(or), new int[] {2, 1, 0}));
+        assert (model.getExpectedNanos(or) == 10);
+        assert (model.getTrueProbability(or) == 1);
+        assert (model.order(CircuitNode.mk(NodeType.NOT, and)) == null);
+
+        // Test 2: GTx / LTx estimates match enumeration of all assignments, for leaves always
+        // true or always false.
+        for (int round = 0; round < 200; round++) {
+            int n = 1 + random.nextInt(8);
+            LeafStatistics known = new LeafStatistics(1);
+            CircuitNode[] leaves = new CircuitNode[n];
+            double[] nanos = new double[n];
+            double[] probabilities = new double[n];
+            for (int i = 0; i < n; i++) {
+                leaves[i] = new CountingLeaf(true, unused);
+                nanos[i] = 1 + random.nextInt(100);
+                boolean value = random.nextBoolean();
+                known.record((LeafNode) leaves[i], (long) nanos[i], value);
+                probabilities[i] = value ? 1 : 0;
+            }
+            boolean gt = random.nextBoolean();
+            int threshold = random.nextInt(n + 2);
+            CircuitNode node = CircuitNode.mk(gt ? NodeType.GT : NodeType.LT, threshold, leaves);
+            CostModel knownModel = new CostModel(known);
+            double[] expected = enumerate(gt, threshold, knownModel.order(node), nanos, probabilities);
+            assert (Math.abs(knownModel.getExpectedNanos(node) - expected[0]) < 1e-6);
+            assert (Math.abs(knownModel.getTrueProbability(node) - expected[1]) < 1e-9);
+        }
+
+        // Test 3: Fractional probabilities, checked by enumeration too.
+        for (int round = 0; round < 100; round++) {
+            int n = 1 + random.nextInt(7);
+            LeafStatistics learned = new LeafStatistics(0.5);
+            CircuitNode[] leaves = new CircuitNode[n];
+            double[] nanos = new double[n];
+            double[] probabilities = new double[n];
+            for (int i = 0; i < n; i++) {
+                leaves[i] = new CountingLeaf(true, unused);
+                nanos[i] = 1 + random.nextInt(100);
+                // Averages over true, false: 1/2 after the second, 1/4 or 3/4 after a third sample.
+                learned.record((LeafNode) leaves[i], (long) nanos[i], true);
+                learned.record((LeafNode) leaves[i], (long) nanos[i], false);
+                probabilities[i] = 0.5;
+                if (random.nextBoolean()) {
+                    boolean value = random.nextBoolean();
+                    learned.record((LeafNode) leaves[i], (long) nanos[i], value);
+                    probabilities[i] = value ? 0.75 : 0.25;
+                }
+            }
+            boolean gt = random.nextBoolean();
+            int threshold = random.nextInt(n + 2);
+            CircuitNode node = CircuitNode.mk(gt ? NodeType.GT : NodeType.LT, threshold, leaves);
+            CostModel learnedModel = new CostModel(learned);
+            double[] expected = enumerate(gt, threshold, learnedModel.order(node), nanos, probabilities);
+            assert (Math.abs(learnedModel.getExpectedNanos(node) - expected[0]) < 1e-6);
+            assert (Math.abs(learnedModel.getTrueProbability(node) - expected[1]) < 1e-9);
+        }
+
+        // Test 4: GTx and LTx stop once decided.
+        AtomicInteger calls = new AtomicInteger();
+        CircuitNode[] trues = new CircuitNode[10];
+        for (int i = 0; i < trues.length; i++) {
+            trues[i] = new CountingLeaf(true, calls);
+        }
+        CostOrderedSolver stopping = new CostOrderedSolver(new LeafStatistics());
+        assert (stopping.solve(new Circuit(CircuitNode.mk(NodeType.GT, 2, trues))).getValue());
+        assert (calls.getAndSet(0) == 3);
+        assert (!stopping.solve(new Circuit(CircuitNode.mk(NodeType.LT, 4, trues))).getValue());
+        assert (calls.getAndSet(0) == 4);
+        assert (!stopping.solve(new Circuit(CircuitNode.mk(NodeType.GT, 10, trues))).getValue());
+        assert (calls.getAndSet(0) == 0);
+
+        // Test 5: Same values as in the circuit's order, with statistics learned along the way.
+        RandomCircuits generator = new RandomCircuits(73);
+        SequentialSolver plain = new SequentialSolver();
+        CostOrderedSolver ordered = new CostOrderedSolver(new LeafStatistics());
+        for (int i = 0; i < 200; i++) {
+            Circuit c = generator.generate(i < 100 ? 15 : 200, 6);
+            boolean value = plain.solve(c).getValue();
+            assert (ordered.solve(c).getValue() == value);
+            assert (ordered.solve(c).getValue() == value);
+        }
+
+        // Test 6: Fewer leaf calls once the solver has learned which leaves short-circuit.
+        AtomicInteger plainCalls = new AtomicInteger();
+        AtomicInteger orderedCalls = new AtomicInteger();
+        CircuitNode[][] groups = new CircuitNode[2][20];
+        for (int i = 0; i < 20; i++) {
+            // Mostly true children of an AND, the false ones at the end.
+            groups[0][i] = new CountingLeaf(i < 17, plainCalls);
+            groups[1][i] = new CountingLeaf(i < 17, orderedCalls);
+        }
+        Circuit plainCircuit = new Circuit(CircuitNode.mk(NodeType.AND, groups[0]));
+        Circuit orderedCircuit = new Circuit(CircuitNode.mk(NodeType.AND, groups[1]));
+        LeafStatistics learning = new LeafStatistics();
+        CostOrderedSolver learner = new CostOrderedSolver(learning);
+        // Every leaf is seen once, on its own.
+        for (CircuitNode leaf : groups[1]) {
+            learner.solve(new Circuit(leaf)).getValue();
+        }
+        orderedCalls.set(0);
+        for (int round = 0; round < 10; round++) {
+            assert (!plain.solve(plainCircuit).getValue());
+            assert (!learner.solve(orderedCircuit).getValue());
+        }
+        System.out.println("Leaf calls in the circuit's order: " + plainCalls.get()
+                + ", ordered by cost / P(short-circuit): " + orderedCalls.get());
+        assert (plainCalls.get() == 180);
+        assert (orderedCalls.get() == 10);
+
+        System.out.println("End of TestSequentialOrder");
+    }
+}
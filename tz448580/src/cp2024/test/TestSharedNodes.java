@@ -0,0 +1,170 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.solution.CompiledCircuit;
+import cp2024.solution.ParallelCircuitSolver;
+import cp2024.solution.SolverOptions;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestSharedNodes {
+
+    // Leaf that counts how many times it was evaluated.
+    private static class CountingLeaf extends LeafNode {
+        private final boolean value;
+        private final Duration delay;
+        private final AtomicInteger calls = new AtomicInteger(0);
+        private final AtomicInteger finished = new AtomicInteger(0);
+        private final AtomicInteger interrupted = new AtomicInteger(0);
+
+        private CountingLeaf(boolean value, Duration delay) {
+            this.value = value;
+            this.delay = delay;
+        }
+
+        @Override
+        public boolean getValue() throws InterruptedException {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(delay.toMillis());
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                throw e;
+            }
+            finished.incrementAndGet();
+            return value;
+        }
+    }
+
+    private static ParallelCircuitSolver sharingSolver() {
+        return new ParallelCircuitSolver(SolverOptions.builder().poolSize(4).shareSubcircuits(true).build());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        // Test 1: A subcircuit under many parents is evaluated once per solve.
+        CountingLeaf leaf = new CountingLeaf(true, Duration.ofMillis(10));
+        CircuitNode shared = CircuitNode.mk(NodeType.AND, leaf, CircuitNode.mk(true));
+        CircuitNode[] parents = new CircuitNode[20];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = CircuitNode.mk(NodeType.NOT, CircuitNode.mk(NodeType.NOT, shared));
+        }
+        Circuit dag = new Circuit(CircuitNode.mk(NodeType.GT, 19, parents));
+
+        ParallelCircuitSolver solver = sharingSolver();
+        assert (solver.solve(dag).getValue());
+        assert (leaf.calls.get() == 1);
+        // Every solve computes it again.
+        assert (solver.solve(dag).getValue());
+        assert (leaf.calls.get() == 2);
+        solver.stop();
+
+        ParallelCircuitSolver plain = new ParallelCircuitSolver(4);
+        assert (plain.solve(dag).getValue());
+        assert (leaf.calls.get() == 22);
+        plain.stop();
+        System.out.println("Shared node evaluated once per solve");
+
+        // Test 2: A shared node isn't cancelled while another parent still needs it.
+        leaf = new CountingLeaf(true, Duration.ofMillis(300));
+        dag = new Circuit(CircuitNode.mk(NodeType.AND,
+                CircuitNode.mk(NodeType.OR, CircuitNode.mk(true), leaf),
+                CircuitNode.mk(NodeType.NOT, CircuitNode.mk(NodeType.NOT, leaf))));
+        solver = sharingSolver();
+        assert (solver.solve(dag).getValue());
+        assert (leaf.calls.get() == 1);
+        assert (leaf.finished.get() == 1);
+        solver.stop();
+
+        // Test 3: It is cancelled once no parent needs it.
+        leaf = new CountingLeaf(false, Duration.ofSeconds(100));
+        CircuitNode slow = CircuitNode.mk(NodeType.AND, leaf, leaf);
+        dag = new Circuit(CircuitNode.mk(NodeType.OR,
+                CircuitNode.mk(true, Duration.ofMillis(100)),
+                slow,
+                CircuitNode.mk(NodeType.NOT, slow)));
+        solver = sharingSolver();
+        long start = System.nanoTime();
+        assert (solver.solve(dag).getValue());
+        while (leaf.interrupted.get() == 0) {
+            Thread.sleep(10);
+            assert (System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+        }
+        assert (leaf.calls.get() == 1);
+        assert (leaf.finished.get() == 0);
+        solver.stop();
+        System.out.println("Shared node cancelled after its last parent");
+
+        // Test 4: Cancelling the circuit stops shared nodes.
+        solver = sharingSolver();
+        CircuitValue value = solver.solve(new Circuit(CircuitNode.mk(NodeType.AND, slow, slow)));
+        Thread.sleep(100);
+        assert (value.cancel());
+        try {
+            value.getValue();
+            assert (false);
+        } catch (InterruptedException e) {
+            // Expected.
+        }
+        solver.stop();
+
+        // Test 5: Compiled circuits keep a shared node once and evaluate it once.
+        leaf = new CountingLeaf(true, Duration.ZERO);
+        shared = CircuitNode.mk(NodeType.OR, CircuitNode.mk(false), leaf);
+        CompiledCircuit compiled = CompiledCircuit.compile(new Circuit(
+                CircuitNode.mk(NodeType.AND, shared, shared, CircuitNode.mk(NodeType.NOT,
+                        CircuitNode.mk(NodeType.NOT, shared)))));
+        assert (compiled.hasSharedNodes());
+        assert (compiled.size() == 6);
+        assert (compiled.evaluate());
+        assert (leaf.calls.get() == 1);
+
+        // Test 6: Sharing needs the pooled engine.
+        try {
+            SolverOptions.builder().shareSubcircuits(true).build();
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        // Test 7: A shared child that reports while its new parent is still expanding decides
+        // the parent; no other child of the parent may be started after that.
+        solver = sharingSolver();
+        CountingLeaf[] late = new CountingLeaf[3000];
+        for (int i = 0; i < late.length; i++) {
+            late[i] = new CountingLeaf(false, Duration.ofMillis(1));
+        }
+        for (int round = 0; round < 100; round++) {
+            long spinNanos = round % 20 * 25_000L;
+            LeafNode first = new LeafNode() {
+                @Override
+                public boolean getValue() {
+                    long until = System.nanoTime() + spinNanos;
+                    while (System.nanoTime() < until) {
+                        Thread.onSpinWait();
+                    }
+                    return true;
+                }
+            };
+            CircuitNode[] children = new CircuitNode[late.length + 1];
+            children[0] = first;
+            System.arraycopy(late, 0, children, 1, late.length);
+            dag = new Circuit(CircuitNode.mk(NodeType.AND, first, CircuitNode.mk(NodeType.OR, children)));
+            assert (solver.solve(dag).getValue());
+            Thread.sleep(5);
+            int before = 0;
+            for (CountingLeaf l : late) {
+                before += l.calls.get();
+            }
+            Thread.sleep(20);
+            int after = 0;
+            for (CountingLeaf l : late) {
+                after += l.calls.get();
+            }
+            assert (after == before) : "Children started after round " + round;
+        }
+        solver.stop();
+
+        System.out.println("End of TestSharedNodes");
+    }
+}
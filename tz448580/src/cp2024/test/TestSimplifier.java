@@ -0,0 +1,142 @@
+package cp2024.test;
+
+import cp2024.bench.RandomCircuits;
+import cp2024.circuit.*;
+import cp2024.demo.SequentialSolver;
+import cp2024.solution.CircuitSimplifier;
+import cp2024.solution.ParallelCircuitSolver;
+import cp2024.solution.SolverOptions;
+import java.time.Duration;
+import java.util.Random;
+
+public class TestSimplifier {
+
+    // Leaf whose value may change, so it's never folded.
+    private static class InputLeaf extends LeafNode {
+        private final boolean value;
+
+        private InputLeaf(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean getValue() {
+            return value;
+        }
+    }
+
+    // Random circuit over constants and inputs.
+    private static CircuitNode randomNode(Random random, int depth) {
+        if (depth == 0 || random.nextInt(5) == 0) {
+            return random.nextBoolean() ? CircuitNode.mk(random.nextBoolean()) : new InputLeaf(random.nextBoolean());
+        }
+        int type = random.nextInt(6);
+        if (type == 0) {
+            return CircuitNode.mk(NodeType.NOT, randomNode(random, depth - 1));
+        }
+        if (type == 1) {
+            return CircuitNode.mk(NodeType.IF,
+                    randomNode(random, depth - 1), randomNode(random, depth - 1), randomNode(random, depth - 1));
+        }
+        int arity = 2 + random.nextInt(3);
+        CircuitNode[] children = new CircuitNode[arity];
+        for (int i = 0; i < arity; i++) {
+            children[i] = randomNode(random, depth - 1);
+        }
+        return switch (type) {
+            case 2 -> CircuitNode.mk(NodeType.AND, children);
+            case 3 -> CircuitNode.mk(NodeType.OR, children);
+            case 4 -> CircuitNode.mk(NodeType.GT, random.nextInt(arity + 1), children);
+            default -> CircuitNode.mk(NodeType.LT, random.nextInt(arity + 2), children);
+        };
+    }
+
+    private static CircuitNode simplified(CircuitNode node) throws InterruptedException {
+        return new CircuitSimplifier().simplify(new Circuit(node)).getCircuit().getRoot();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        SequentialSolver sequential = new SequentialSolver();
+        InputLeaf x = new InputLeaf(true);
+        InputLeaf y = new InputLeaf(false);
+
+        // Test 1: Single rules.
+        assert (simplified(CircuitNode.mk(NodeType.NOT, CircuitNode.mk(NodeType.NOT, x))) == x);
+        CircuitNode and = simplified(CircuitNode.mk(NodeType.AND, x, CircuitNode.mk(NodeType.AND, y, x), CircuitNode.mk(true)));
+        assert (and.getType() == NodeType.AND && and.getArgs().length == 3);
+        assert (simplified(CircuitNode.mk(NodeType.OR, x, CircuitNode.mk(true))).getType() == NodeType.LEAF);
+        CircuitNode lt = simplified(CircuitNode.mk(NodeType.NOT, CircuitNode.mk(NodeType.GT, 1, x, y)));
+        assert (lt.getType() == NodeType.LT && ((ThresholdNode) lt).getThreshold() == 2);
+        CircuitNode gt = simplified(CircuitNode.mk(NodeType.NOT, CircuitNode.mk(NodeType.LT, 1, x, y)));
+        assert (gt.getType() == NodeType.GT && ((ThresholdNode) gt).getThreshold() == 0);
+        // Two true constants are counted in advance: more than 2 of (true, true, x, y) <=> more than 0 of (x, y).
+        gt = simplified(CircuitNode.mk(NodeType.GT, 2, CircuitNode.mk(true), x, CircuitNode.mk(true), y));
+        assert (gt.getType() == NodeType.GT && ((ThresholdNode) gt).getThreshold() == 0 && gt.getArgs().length == 2);
+        // Decided by arity.
+        assert (sequential.solve(new Circuit(simplified(CircuitNode.mk(NodeType.GT, 2, x, y)))).getValue() == false);
+        assert (simplified(CircuitNode.mk(NodeType.GT, 2, x, y)).getType() == NodeType.LEAF);
+        assert (simplified(CircuitNode.mk(NodeType.LT, 0, x, y)).getType() == NodeType.LEAF);
+        assert (simplified(CircuitNode.mk(NodeType.LT, 3, x, y)).getType() == NodeType.LEAF);
+        assert (simplified(CircuitNode.mk(NodeType.IF, CircuitNode.mk(false), x, y)) == y);
+        assert (simplified(CircuitNode.mk(NodeType.IF, y, x, x)) == x);
+        assert (simplified(CircuitNode.mk(NodeType.IF, y, CircuitNode.mk(true), CircuitNode.mk(false))) == y);
+
+        // Test 2: Leaves that may block are never called, and never folded.
+        CircuitNode slow = CircuitNode.mk(true, Duration.ofSeconds(10));
+        long start = System.nanoTime();
+        assert (simplified(CircuitNode.mk(NodeType.AND, slow, CircuitNode.mk(true))) == slow);
+        assert ((System.nanoTime() - start) / 1_000_000 < 1000);
+
+        // Test 3: Simplified circuits have the same values.
+        Random random = new Random(7);
+        CircuitSimplifier simplifier = new CircuitSimplifier();
+        for (int i = 0; i < 1000; i++) {
+            Circuit c = new Circuit(randomNode(random, 6));
+            CircuitSimplifier.Result result = simplifier.simplify(c);
+            assert (result.getNodesAfter() <= result.getNodesBefore());
+            assert (sequential.solve(result.getCircuit()).getValue() == sequential.solve(c).getValue());
+        }
+        System.out.println("Removed " + simplifier.getRemovedNodes() + " nodes from "
+                + simplifier.getSimplifiedCircuits() + " circuits");
+        assert (simplifier.getRemovedNodes() > 0);
+
+        // Test 4: Circuits with constant leaves only are folded completely.
+        Circuit constant = new RandomCircuits(5).generate(1000, 4);
+        CircuitSimplifier.Result result = new CircuitSimplifier().simplify(constant);
+        assert (result.getNodesAfter() == 1);
+        assert (sequential.solve(result.getCircuit()).getValue() == sequential.solve(constant).getValue());
+
+        // Test 5: Solvers simplify circuits when asked to.
+        for (SolverOptions options : new SolverOptions[] {
+                SolverOptions.builder().simplify(true).build(),
+                SolverOptions.builder().poolSize(2).simplify(true).build()}) {
+            ParallelCircuitSolver solver = new ParallelCircuitSolver(options);
+            random = new Random(11);
+            for (int i = 0; i < 100; i++) {
+                Circuit c = new Circuit(randomNode(random, 5));
+                assert (solver.solve(c).getValue() == sequential.solve(c).getValue());
+            }
+            assert (solver.solve(constant).getValue() == sequential.solve(constant).getValue());
+            assert (solver.getRemovedNodes() >= result.getRemovedNodes());
+            solver.stop();
+        }
+
+        // Test 6: A queued circuit is simplified only once it is admitted, and a cancelled one never.
+        for (int poolSize : new int[] {0, 2}) {
+            ParallelCircuitSolver solver = new ParallelCircuitSolver(SolverOptions.builder()
+                    .poolSize(poolSize).maxInFlightCircuits(1).simplify(true).build());
+            CircuitValue running = solver.solve(new Circuit(CircuitNode.mk(true, Duration.ofMillis(200))));
+            CircuitValue cancelled = solver.solve(constant);
+            CircuitValue queued = solver.solve(constant);
+            assert (solver.getRemovedNodes() == 0);
+            assert (cancelled.cancel());
+            assert (running.getValue());
+            assert (queued.getValue() == sequential.solve(constant).getValue());
+            assert (solver.getRemovedNodes() == result.getRemovedNodes());
+            solver.stop();
+        }
+
+        System.out.println("End of TestSimplifier");
+    }
+}
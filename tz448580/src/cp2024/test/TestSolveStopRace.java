@@ -0,0 +1,65 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.solution.ParallelCircuitSolver;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestSolveStopRace {
+
+    private static class Worker implements Runnable {
+
+        private final CircuitSolver solver;
+        private final AtomicInteger solved;
+        private final AtomicInteger interrupted;
+
+        public Worker(CircuitSolver solver, AtomicInteger solved, AtomicInteger interrupted) {
+            this.solver = solver;
+            this.solved = solved;
+            this.interrupted = interrupted;
+        }
+
+        @Override
+        public void run() {
+            Circuit c = new Circuit(CircuitNode.mk(NodeType.AND,
+                    CircuitNode.mk(true),
+                    CircuitNode.mk(NodeType.NOT, CircuitNode.mk(false))));
+            while (true) {
+                try {
+                    assert (solver.solve(c).getValue());
+                    solved.incrementAndGet();
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void race(String name, CircuitSolver solver) throws InterruptedException {
+        AtomicInteger solved = new AtomicInteger(0);
+        AtomicInteger interrupted = new AtomicInteger(0);
+        Thread[] workers = new Thread[8];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(new Worker(solver, solved, interrupted));
+            workers[i].start();
+        }
+
+        Thread.sleep(500);
+        solver.stop();
+
+        // Every solve() racing with stop() must either finish or be interrupted.
+        for (Thread worker : workers) {
+            worker.join(5000);
+            assert (!worker.isAlive());
+        }
+        System.out.println("[" + name + "] Solved: " + solved.get() + ", interrupted workers: " + interrupted.get());
+        assert (interrupted.get() == workers.length);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        race("thread-per-node", new ParallelCircuitSolver());
+        race("pooled", new ParallelCircuitSolver(4));
+        System.out.println("End of TestSolveStopRace");
+    }
+
+}
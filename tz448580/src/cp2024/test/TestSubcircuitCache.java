@@ -0,0 +1,125 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.solution.CacheMetrics;
+import cp2024.solution.ParallelCircuitSolver;
+import cp2024.solution.SolverOptions;
+import cp2024.solution.SubcircuitCache;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestSubcircuitCache {
+
+    // Leaf whose value may change between solves, so it declares no cache key.
+    private static class VolatileLeaf extends LeafNode {
+        private final AtomicInteger calls = new AtomicInteger(0);
+
+        @Override
+        public boolean getValue() {
+            return calls.incrementAndGet() % 2 == 0;
+        }
+    }
+
+    // A fresh object graph every time: AND(OR(slow, false), GT1(true, slow, true)).
+    private static Circuit slowCircuit(boolean swapped) {
+        CircuitNode or = CircuitNode.mk(NodeType.OR,
+                CircuitNode.mk(true, Duration.ofMillis(300)),
+                CircuitNode.mk(false));
+        CircuitNode gt = CircuitNode.mk(NodeType.GT, 1,
+                CircuitNode.mk(true),
+                CircuitNode.mk(true, Duration.ofMillis(300)),
+                CircuitNode.mk(true));
+        return new Circuit(swapped ? CircuitNode.mk(NodeType.AND, gt, or) : CircuitNode.mk(NodeType.AND, or, gt));
+    }
+
+    private static long solveMillis(CircuitSolver solver, Circuit c, boolean expected) throws InterruptedException {
+        long start = System.nanoTime();
+        assert (solver.solve(c).getValue() == expected);
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        SubcircuitCache cache = new SubcircuitCache(1 << 20);
+        SolverOptions options = SolverOptions.builder().poolSize(4).subcircuitCache(cache).build();
+        ParallelCircuitSolver solver = new ParallelCircuitSolver(options);
+
+        // Test 1: The second solve of an equal circuit is answered from the cache.
+        long first = solveMillis(solver, slowCircuit(false), true);
+        long second = solveMillis(solver, slowCircuit(false), true);
+        System.out.println("First solve: " + first + " ms, second solve: " + second + " ms, " + cache.getMetrics());
+        assert (first >= 300);
+        assert (second < 150);
+        assert (cache.getMetrics().getHits() >= 1);
+
+        // Test 2: Order of children of AND doesn't matter, and other solvers share the cache.
+        ParallelCircuitSolver other = new ParallelCircuitSolver(options);
+        long hits = cache.getMetrics().getHits();
+        assert (solveMillis(other, slowCircuit(true), true) < 150);
+        assert (cache.getMetrics().getHits() > hits);
+        other.stop();
+
+        // Test 3: The order of IF children does matter.
+        Circuit ifCircuit = new Circuit(CircuitNode.mk(NodeType.IF,
+                CircuitNode.mk(true), CircuitNode.mk(true, Duration.ofMillis(100)), CircuitNode.mk(false)));
+        assert (solver.solve(ifCircuit).getValue());
+        ifCircuit = new Circuit(CircuitNode.mk(NodeType.IF,
+                CircuitNode.mk(true), CircuitNode.mk(false), CircuitNode.mk(true, Duration.ofMillis(100))));
+        assert (!solver.solve(ifCircuit).getValue());
+
+        // Test 4: Subcircuits over leaves without a cache key are never cached.
+        VolatileLeaf leaf = new VolatileLeaf();
+        Circuit volatileCircuit = new Circuit(CircuitNode.mk(NodeType.AND, leaf, CircuitNode.mk(true)));
+        CacheMetrics before = cache.getMetrics();
+        boolean value = solver.solve(volatileCircuit).getValue();
+        assert (solver.solve(volatileCircuit).getValue() != value);
+        assert (cache.getMetrics().getSize() == before.getSize());
+        assert (cache.getMetrics().getHits() + cache.getMetrics().getMisses() == before.getHits() + before.getMisses());
+        solver.stop();
+
+        // Test 5: Entries are evicted to stay within the budget.
+        SubcircuitCache small = new SubcircuitCache(1000);
+        solver = new ParallelCircuitSolver(SolverOptions.builder().poolSize(2).subcircuitCache(small).build());
+        for (int i = 0; i < 50; i++) {
+            CircuitNode[] leaves = new CircuitNode[i + 2];
+            for (int j = 0; j < leaves.length; j++) {
+                leaves[j] = CircuitNode.mk(j % 2 == 0);
+            }
+            // More than half of the leaves are true.
+            assert (solver.solve(new Circuit(CircuitNode.mk(NodeType.GT, i / 2, leaves))).getValue());
+        }
+        CacheMetrics metrics = small.getMetrics();
+        System.out.println("Small cache: " + metrics);
+        assert (metrics.getEvictions() > 0);
+        assert (metrics.getWeight() <= 1000);
+        solver.stop();
+
+        // Test 6: The cache needs the pooled engine.
+        try {
+            SolverOptions.builder().subcircuitCache(cache).build();
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        // Test 7: Lookups of a DAG take time per node, not per path.
+        CircuitNode chain = CircuitNode.mk(true);
+        for (int i = 0; i < 24; i++) {
+            chain = CircuitNode.mk(NodeType.AND, chain,
+                    CircuitNode.mk(NodeType.NOT, CircuitNode.mk(NodeType.NOT, chain)));
+        }
+        Circuit dag = new Circuit(chain);
+        SubcircuitCache dagCache = new SubcircuitCache(64 << 20);
+        solver = new ParallelCircuitSolver(SolverOptions.builder()
+                .poolSize(2).shareSubcircuits(true).subcircuitCache(dagCache).build());
+        solveMillis(solver, dag, true);
+        long dagHits = dagCache.getMetrics().getHits();
+        long dagMillis = solveMillis(solver, dag, true);
+        System.out.println("Second solve of a DAG with 2^24 paths: " + dagMillis + " ms");
+        assert (dagCache.getMetrics().getHits() > dagHits);
+        assert (dagMillis < 200);
+        solver.stop();
+
+        System.out.println("End of TestSubcircuitCache");
+    }
+}
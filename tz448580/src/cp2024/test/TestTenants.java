@@ -0,0 +1,165 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.solution.ParallelCircuitSolver;
+import cp2024.solution.SolveRequest;
+import cp2024.solution.SolverOptions;
+import cp2024.solution.TenantMetrics;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestTenants {
+
+    private static SolveRequest tenant(String key) {
+        return SolveRequest.builder().tenant(key).build();
+    }
+
+    // AND of leaves that all have to be evaluated.
+    private static Circuit wideCircuit(int leaves, Duration delay) {
+        CircuitNode[] children = new CircuitNode[leaves];
+        for (int i = 0; i < leaves; i++) {
+            children[i] = CircuitNode.mk(true, delay);
+        }
+        return new Circuit(CircuitNode.mk(NodeType.AND, children));
+    }
+
+    // Leaf that sleeps and counts its calls.
+    private static class CountingLeaf extends LeafNode {
+        private final AtomicInteger calls;
+
+        private CountingLeaf(AtomicInteger calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public boolean getValue() throws InterruptedException {
+            Thread.sleep(2);
+            calls.incrementAndGet();
+            return true;
+        }
+    }
+
+    private static boolean isDone(CircuitValue value) throws InterruptedException {
+        try {
+            value.getValue(Duration.ZERO);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        // Test 1: A tenant never runs more leaves than its cap, even with free pool threads.
+        ParallelCircuitSolver solver = new ParallelCircuitSolver(SolverOptions.builder()
+                .poolSize(8)
+                .maxLeavesPerTenant(2)
+                .build());
+        long start = System.nanoTime();
+        CircuitValue value = solver.solve(wideCircuit(10, Duration.ofMillis(100)), tenant("greedy"));
+        int maxRunningLeaves = 0;
+        while (!isDone(value)) {
+            TenantMetrics metrics = solver.getTenantMetrics().get("greedy");
+            maxRunningLeaves = Math.max(maxRunningLeaves, metrics.getRunningLeaves());
+            Thread.sleep(5);
+        }
+        assert (value.getValue());
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Max running leaves: " + maxRunningLeaves + ", solved in " + elapsed + " ms");
+        assert (maxRunningLeaves <= 2);
+        assert (elapsed >= 450);
+        solver.stop();
+
+        // Test 2: A small tenant isn't stuck behind the backlog of a big one.
+        solver = new ParallelCircuitSolver(SolverOptions.builder().poolSize(1).build());
+        List<CircuitValue> backlog = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            backlog.add(solver.solve(wideCircuit(5, Duration.ofMillis(10)), tenant("big")));
+        }
+        start = System.nanoTime();
+        assert (solver.solve(wideCircuit(2, Duration.ofMillis(10)), tenant("small")).getValue());
+        elapsed = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Small tenant behind 100 leaves of a big one solved in " + elapsed + " ms");
+        // The whole backlog takes 1 s on a single thread.
+        assert (elapsed < 500);
+        for (CircuitValue backlogValue : backlog) {
+            assert (backlogValue.getValue());
+        }
+        solver.stop();
+
+        // Test 3: Weights split the pool between tenants with backlogs.
+        solver = new ParallelCircuitSolver(SolverOptions.builder()
+                .poolSize(1)
+                .tenantWeight("gold", 3)
+                .build());
+        CircuitValue gold = solver.solve(wideCircuit(200, Duration.ofMillis(2)), tenant("gold"));
+        CircuitValue bronze = solver.solve(wideCircuit(200, Duration.ofMillis(2)), tenant("bronze"));
+        Thread.sleep(300);
+        TenantMetrics goldMetrics = solver.getTenantMetrics().get("gold");
+        TenantMetrics bronzeMetrics = solver.getTenantMetrics().get("bronze");
+        double ratio = (double) goldMetrics.getLeavesExecuted() / Math.max(1, bronzeMetrics.getLeavesExecuted());
+        System.out.println("Leaves executed, gold: " + goldMetrics.getLeavesExecuted()
+                + ", bronze: " + bronzeMetrics.getLeavesExecuted());
+        assert (ratio > 2 && ratio < 4.5);
+        assert (gold.getValue() && bronze.getValue());
+
+        // Test 4: Counters. The last leaf reports the value before it counts as finished.
+        while (solver.getTenantMetrics().values().stream().anyMatch(m -> m.getRunningNodes() > 0)) {
+            Thread.sleep(1);
+        }
+        for (TenantMetrics metrics : solver.getTenantMetrics().values()) {
+            System.out.println(metrics);
+            assert (metrics.getSubmitted() == 1);
+            assert (metrics.getCompleted() == 1);
+            assert (metrics.getLeavesExecuted() == 200);
+            assert (metrics.getMaxLatency().toMillis() > 0);
+        }
+        solver.stop();
+
+        // Test 5: A cancelled backlog doesn't cost its tenant its share of the pool.
+        solver = new ParallelCircuitSolver(SolverOptions.builder().poolSize(1).build());
+        AtomicInteger aCalls = new AtomicInteger();
+        AtomicInteger bCalls = new AtomicInteger();
+        CircuitNode[] aLeaves = new CircuitNode[50];
+        CircuitNode[] bLeaves = new CircuitNode[50];
+        for (int i = 0; i < 50; i++) {
+            aLeaves[i] = new CountingLeaf(aCalls);
+            bLeaves[i] = new CountingLeaf(bCalls);
+        }
+        CircuitValue cancelled = solver.solve(wideCircuit(300, Duration.ofMillis(2)), tenant("a"));
+        CircuitValue b = solver.solve(new Circuit(CircuitNode.mk(NodeType.AND, bLeaves)), tenant("b"));
+        Thread.sleep(20);
+        assert (cancelled.cancel());
+        int bBefore = bCalls.get();
+        CircuitValue a = solver.solve(new Circuit(CircuitNode.mk(NodeType.AND, aLeaves)), tenant("a"));
+        Thread.sleep(60);
+        int aDone = aCalls.get();
+        int bDone = bCalls.get() - bBefore;
+        System.out.println("Leaves after the cancelled backlog, a: " + aDone + ", b: " + bDone);
+        assert (bDone > 0 && aDone * 2 >= bDone);
+        assert (a.getValue() && b.getValue());
+        TenantMetrics aMetrics = solver.getTenantMetrics().get("a");
+        assert (aMetrics.getQueuedNodes() == 0);
+        // Only the leaves that ran before the cancel count as executed.
+        assert (aMetrics.getLeavesExecuted() < 100);
+        solver.stop();
+
+        // Test 6: Idle tenants are dropped as new ones come.
+        for (int poolSize : new int[] {0, 2}) {
+            solver = new ParallelCircuitSolver(SolverOptions.builder().poolSize(poolSize).build());
+            for (int i = 0; i < 100; i++) {
+                assert (solver.solve(wideCircuit(2, Duration.ZERO), tenant("once-" + i)).getValue());
+                // The last leaf reports the value before it counts as finished.
+                Thread.sleep(1);
+            }
+            System.out.println("Tenants kept after 100 one-off tenants: " + solver.getTenantMetrics().size());
+            assert (solver.getTenantMetrics().size() <= 2);
+            solver.stop();
+        }
+
+        System.out.println("End of TestTenants");
+    }
+}
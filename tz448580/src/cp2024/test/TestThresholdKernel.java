@@ -0,0 +1,77 @@
+package cp2024.test;
+
+import cp2024.circuit.*;
+import cp2024.solution.BitSlicedCircuit;
+import cp2024.solution.CompiledCircuit;
+import cp2024.solution.ScalarThresholdKernel;
+import cp2024.solution.ThresholdKernel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Compile the vector kernel (see ThresholdKernel.VECTOR_KERNEL) and run with
+ * --add-modules jdk.incubator.vector to test it, otherwise only the fallback
+ * is checked.
+ */
+public class TestThresholdKernel {
+
+    public static void main(String[] args) throws InterruptedException {
+
+        ThresholdKernel best = ThresholdKernel.best();
+        System.out.println("Best kernel: " + best.getClass().getSimpleName());
+        ThresholdKernel scalar = ScalarThresholdKernel.INSTANCE;
+        Random random = new Random(41);
+
+        // Test 1: Both kernels write the same words, for any width, threshold and number of words.
+        int block = 16;
+        for (int round = 0; round < 500; round++) {
+            int count = 1 + random.nextInt(random.nextBoolean() ? 10 : 700);
+            int words = 1 + random.nextInt(block);
+            // Node 0 is the threshold node, nodes 1 .. count its children.
+            long[] values = new long[(count + 1) * block];
+            for (int i = block; i < values.length; i++) {
+                values[i] = random.nextInt(4) == 0 ? -1L : random.nextLong();
+            }
+            int[] children = new int[count];
+            for (int i = 0; i < count; i++) {
+                children[i] = 1 + i;
+            }
+            int bits = 32 - Integer.numberOfLeadingZeros(count);
+            int threshold = random.nextInt(count + 2);
+            boolean gt = random.nextBoolean();
+            long[] expected = values.clone();
+            scalar.evaluate(gt, threshold, children, 0, count, expected, 0, block, words, new long[bits * block]);
+            long[] actual = values.clone();
+            best.evaluate(gt, threshold, children, 0, count, actual, 0, block, words, new long[bits * block]);
+            assert (Arrays.equals(expected, actual));
+            // Checks the scalar kernel against counting bit by bit.
+            for (int bit = 0; bit < 64 * words; bit++) {
+                int trueChildren = 0;
+                for (int i = 1; i <= count; i++) {
+                    trueChildren += (int) (values[i * block + bit / 64] >>> (bit % 64) & 1);
+                }
+                boolean value = (expected[bit / 64] >>> (bit % 64) & 1) == 1;
+                assert (value == (gt ? trueChildren > threshold : trueChildren < threshold));
+            }
+        }
+
+        // Test 2: Wide nodes in bit-sliced circuits.
+        CircuitNode[] leaves = new CircuitNode[300];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = CircuitNode.mk(false);
+        }
+        CompiledCircuit compiled = CompiledCircuit.compile(new Circuit(CircuitNode.mk(NodeType.OR,
+                CircuitNode.mk(NodeType.GT, 150, leaves), CircuitNode.mk(NodeType.LT, 100, leaves))));
+        long[][] leafWords = new long[compiled.getLeafCount()][20];
+        for (long[] leaf : leafWords) {
+            for (int w = 0; w < leaf.length; w++) {
+                leaf[w] = random.nextLong();
+            }
+        }
+        BitSet expected = BitSlicedCircuit.compile(compiled, scalar).evaluate(leafWords, 1250);
+        assert (BitSlicedCircuit.compile(compiled, best).evaluate(leafWords, 1250).equals(expected));
+
+        System.out.println("End of TestThresholdKernel");
+    }
+}
@@ -0,0 +1,148 @@
+package cp2024.test;
+
+import cp2024.bench.RandomCircuits;
+import cp2024.circuit.*;
+import cp2024.solution.CompiledCircuit;
+import cp2024.solution.CompiledCircuitSolver;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestVariables {
+
+    // The circuit with every leaf replaced by a variable, numbered in the order found.
+    private static CircuitNode withVariables(CircuitNode node, List<Boolean> values) throws InterruptedException {
+        if (node instanceof LeafNode) {
+            values.add(((LeafNode) node).getValue());
+            return CircuitNode.var(values.size() - 1);
+        }
+        CircuitNode[] args = node.getArgs();
+        CircuitNode[] replaced = new CircuitNode[args.length];
+        for (int i = 0; i < args.length; i++) {
+            replaced[i] = withVariables(args[i], values);
+        }
+        return node instanceof ThresholdNode
+                ? CircuitNode.mk(node.getType(), ((ThresholdNode) node).getThreshold(), replaced)
+                : CircuitNode.mk(node.getType(), replaced);
+    }
+
+    // The circuit with variable i replaced by a constant leaf of bindings[i].
+    private static CircuitNode bound(CircuitNode node, boolean[] bindings) throws InterruptedException {
+        if (node instanceof VariableLeaf) {
+            return CircuitNode.mk(bindings[((VariableLeaf) node).getIndex()]);
+        } else if (node instanceof LeafNode) {
+            return node;
+        }
+        CircuitNode[] args = node.getArgs();
+        CircuitNode[] replaced = new CircuitNode[args.length];
+        for (int i = 0; i < args.length; i++) {
+            replaced[i] = bound(args[i], bindings);
+        }
+        return node instanceof ThresholdNode
+                ? CircuitNode.mk(node.getType(), ((ThresholdNode) node).getThreshold(), replaced)
+                : CircuitNode.mk(node.getType(), replaced);
+    }
+
+    private static boolean[] randomBindings(Random random, int count) {
+        boolean[] bindings = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            bindings[i] = random.nextBoolean();
+        }
+        return bindings;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        Random random = new Random(47);
+
+        // Test 1: A circuit over variables gives the results of circuits with constants,
+        // its original values included.
+        RandomCircuits generator = new RandomCircuits(53);
+        for (int i = 0; i < 40; i++) {
+            List<Boolean> values = new ArrayList<>();
+            Circuit original = generator.generate(i < 20 ? 15 : 300, 6);
+            CircuitNode root = withVariables(original.getRoot(), values);
+            CompiledCircuit compiled = CompiledCircuit.compile(new Circuit(root));
+            assert (compiled.getVariableCount() == values.size());
+            boolean[] originalBindings = new boolean[values.size()];
+            for (int v = 0; v < originalBindings.length; v++) {
+                originalBindings[v] = values.get(v);
+            }
+            assert (compiled.evaluate(originalBindings) == CompiledCircuit.compile(original).evaluate());
+            for (int round = 0; round < 20; round++) {
+                boolean[] bindings = randomBindings(random, values.size());
+                assert (compiled.evaluate(bindings)
+                        == CompiledCircuit.compile(new Circuit(bound(root, bindings))).evaluate());
+            }
+        }
+
+        // Test 2: One compiled circuit evaluated concurrently with different bindings,
+        // variables shared by several nodes and mixed with ordinary leaves.
+        CircuitNode[] variables = new CircuitNode[12];
+        for (int v = 0; v < variables.length; v++) {
+            variables[v] = CircuitNode.var(v);
+        }
+        CircuitNode root = CircuitNode.mk(NodeType.OR,
+                CircuitNode.mk(NodeType.GT, 5, variables),
+                CircuitNode.mk(NodeType.AND, CircuitNode.mk(true), variables[0],
+                        CircuitNode.mk(NodeType.NOT, variables[11])),
+                CircuitNode.mk(NodeType.IF, variables[3], CircuitNode.var(4), CircuitNode.mk(false)));
+        CompiledCircuit shared = CompiledCircuit.compile(new Circuit(root));
+        assert (shared.getVariableCount() == 12);
+        AtomicInteger mismatches = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            long seed = 59 + t;
+            threads[t] = new Thread(() -> {
+                Random local = new Random(seed);
+                try {
+                    for (int round = 0; round < 2000; round++) {
+                        boolean[] bindings = randomBindings(local, 12);
+                        boolean expected = CompiledCircuit.compile(new Circuit(bound(root, bindings))).evaluate();
+                        if (shared.evaluate(bindings) != expected) {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    mismatches.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assert (mismatches.get() == 0);
+
+        // Test 3: The solver copies the bindings before returning.
+        CompiledCircuitSolver solver = new CompiledCircuitSolver();
+        CompiledCircuit and = CompiledCircuit.compile(new Circuit(
+                CircuitNode.mk(NodeType.AND, CircuitNode.var(0), CircuitNode.var(1))));
+        boolean[] bindings = {true, true};
+        CircuitValue first = solver.solve(and, bindings);
+        bindings[1] = false;
+        CircuitValue second = solver.solve(and, bindings);
+        CircuitValue third = solver.solve(new Circuit(CircuitNode.mk(NodeType.NOT, CircuitNode.var(0))), bindings);
+        assert (first.getValue());
+        assert (!second.getValue());
+        assert (!third.getValue());
+
+        // Test 4: Too few bindings, and variables evaluated without bindings.
+        try {
+            solver.solve(and, new boolean[1]);
+            assert (false);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            and.evaluate();
+            assert (false);
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+        solver.stop();
+
+        System.out.println("End of TestVariables");
+    }
+}